@@ -0,0 +1,921 @@
+// StoreChecks.java - Correctness checks that need no database server
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Checks the logic that lives in Java rather than in SQL against in-process stand-ins for the
+ * databases, so it runs anywhere:
+ *
+ *   java -cp "out:lib/*" StoreChecks
+ *
+ * - ConnectionPool over a stub JDBC driver: never more physical connections than maxSize
+ *   under contention, every borrow served, and a timeout once the pool stays exhausted
+ * - updateStudentIfVersion on the in-memory engine: concurrent read-modify-write loops that
+ *   retry on CONFLICT lose no update (the MySQL version of this runs in StudentBenchmarks)
+ * - InMemoryStudentStore's write-ahead log: a reopened store holds what was written, a torn
+ *   tail is cut off, a snapshot replaces the segments it covers, and after a log failure the
+ *   store refuses every call while a reopen recovers what did reach the log
+ * - WriteBehindQueue over a stub with unique emails: coalescing never reorders a write past a
+ *   later one it could clash with, while repeated updates still collapse and add-then-delete
+ *   still cancels
+ * - FastValidator against the InputValidator regexes on generated inputs near the length
+ *   limits (bench.validator.cases, default 1,000,000), the same check StudentBenchmarks runs
+ *   before timing them
+ * - ShardedStudentStore over stub shards: id routing and balance, cross-shard email
+ *   uniqueness and its rollback, merged listings, pages and searches, and cursor cleanup
+ * - ReadRouter over a stub JDBC driver: least-outstanding replica choice, read-your-writes
+ *   pinning across threads and through X-Consistency-Token values, and which failures mark a
+ *   replica down, fall back to the primary or recover
+ *
+ * Stops with an exception at the first failed check.
+ */
+public class StoreChecks {
+    public static void main(String[] args) throws Exception {
+        StubDriver driver = new StubDriver();
+        DriverManager.registerDriver(driver);
+        checkPoolBounds(driver);
+        checkNoLostUpdates();
+        checkWalRecovery();
+        checkWriteBehindOrdering();
+        int cases = Integer.getInteger("bench.validator.cases", 1_000_000);
+        StudentBenchmarks.checkValidatorEquivalence(cases);
+        System.out.println("FastValidator: agrees with the regexes on " + cases + " generated inputs OK");
+        checkSharding();
+        checkReadRouting(driver);
+        DriverManager.deregisterDriver(driver);
+        System.out.println("All store checks passed");
+    }
+
+    static void check(boolean condition, String message) {
+        if (!condition) {
+            throw new IllegalStateException("Check failed: " + message);
+        }
+    }
+
+    // Stands in for one shard's database: rows and the email registry live in maps
+    static final class StubShard extends DatabaseManager {
+        final int index;
+        final Map<Integer, Student> rows = new TreeMap<>();
+        final Map<String, Integer> registry = new HashMap<>();
+        long nextBlock = -1;
+        int closedStreams;
+        boolean failStreams;
+
+        StubShard(int index) throws SQLException {
+            super(null, new DatabaseMetrics(false), null, false);
+            this.index = index;
+        }
+
+        // Emails starting with "bad" break a CHECK constraint, like an invalid age would
+        private static SQLException checkViolation() {
+            return new SQLException("Check constraint 'students_chk_1' is violated.", "HY000", 3819);
+        }
+
+        private static Student copyOf(Student student) {
+            Student copy = new Student(student.getId(), student.getName(), student.getEmail(),
+                    student.getAge(), student.getCourse());
+            copy.setVersion(student.getVersion());
+            return copy;
+        }
+
+        private synchronized List<Student> inNameOrder() {
+            return rows.values().stream().map(StubShard::copyOf).sorted(ShardedStudentStore.SHARD_NAME_ORDER).toList();
+        }
+
+        // inNameOrder already sorts the way a shard does after this call
+        @Override
+        void sortNamesByCodePoint() {
+        }
+
+        @Override
+        public void warmUp() {
+        }
+
+        @Override
+        synchronized long allocateIdBlock(int shardIndex, int shardCount, int blockSize) {
+            check(shardIndex == index, "shard " + index + " asked for the blocks of shard " + shardIndex);
+            if (nextBlock < 0) {
+                long maxId = rows.keySet().stream().mapToLong(Integer::longValue).max().orElse(0);
+                nextBlock = Math.max(0, Math.ceilDiv(maxId / blockSize + 1 - shardIndex, shardCount));
+            }
+            return nextBlock++ * shardCount + shardIndex;
+        }
+
+        @Override
+        synchronized BatchResult registerEmails(List<Student> students) {
+            BatchResult result = new BatchResult(students.size());
+            for (int i = 0; i < students.size(); i++) {
+                String email = students.get(i).getEmail().toLowerCase();
+                if (registry.containsKey(email)) {
+                    result.recordFailure(i, new SQLException("Duplicate entry '" + email + "'", "23000", 1062));
+                } else {
+                    registry.put(email, students.get(i).getId());
+                    result.recordSuccess();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        synchronized BatchResult unregisterEmails(List<Student> students) {
+            BatchResult result = new BatchResult(students.size());
+            for (Student student : students) {
+                registry.remove(student.getEmail().toLowerCase(), student.getId());
+                result.recordSuccess();
+            }
+            return result;
+        }
+
+        @Override
+        synchronized BatchResult addStudentsWithIds(List<Student> students) {
+            BatchResult result = new BatchResult(students.size());
+            for (int i = 0; i < students.size(); i++) {
+                Student student = students.get(i);
+                if (student.getEmail().startsWith("bad") || rows.containsKey(student.getId())) {
+                    result.recordFailure(i, checkViolation());
+                } else {
+                    rows.put(student.getId(), copyOf(student));
+                    result.recordSuccess();
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public synchronized Student getStudentById(int id) {
+            Student row = rows.get(id);
+            return row == null ? null : copyOf(row);
+        }
+
+        @Override
+        Student loadStudentById(int id) {
+            return getStudentById(id);
+        }
+
+        @Override
+        public Stream<Student> streamStudents() throws SQLException {
+            if (failStreams) {
+                throw new SQLException("Shard " + index + " is down");
+            }
+            return inNameOrder().stream().onClose(() -> {
+                synchronized (this) {
+                    closedStreams++;
+                }
+            });
+        }
+
+        @Override
+        public StudentPage getStudentsPage(String pageToken, int pageSize) {
+            List<Student> rest = new ArrayList<>(inNameOrder());
+            if (pageToken != null) {
+                Student after = StudentPage.decodeToken(pageToken);
+                rest.removeIf(row -> ShardedStudentStore.SHARD_NAME_ORDER.compare(row, after) <= 0);
+            }
+            if (rest.size() <= pageSize) {
+                return new StudentPage(rest, null);
+            }
+            List<Student> page = new ArrayList<>(rest.subList(0, pageSize));
+            return new StudentPage(page, StudentPage.encodeToken(page.get(pageSize - 1)));
+        }
+
+        @Override
+        public List<Student> searchStudentsByName(String name) {
+            return inNameOrder().stream()
+                    .filter(row -> row.getName().toLowerCase().contains(name.toLowerCase()))
+                    .toList();
+        }
+
+        @Override
+        public synchronized int countStudents() {
+            return rows.size();
+        }
+
+        @Override
+        public synchronized boolean updateStudent(Student student) throws SQLException {
+            if (student.getEmail().startsWith("bad")) {
+                throw checkViolation();
+            }
+            Student current = rows.get(student.getId());
+            if (current == null) {
+                return false;
+            }
+            Student row = copyOf(student);
+            row.setVersion(current.getVersion() + 1);
+            rows.put(row.getId(), row);
+            return true;
+        }
+
+        @Override
+        public synchronized UpdateResult updateStudentIfVersion(Student student, int expectedVersion) {
+            Student current = rows.get(student.getId());
+            if (current == null) {
+                return UpdateResult.NOT_FOUND;
+            }
+            if (current.getVersion() != expectedVersion) {
+                return UpdateResult.CONFLICT;
+            }
+            Student row = copyOf(student);
+            row.setVersion(expectedVersion + 1);
+            rows.put(row.getId(), row);
+            student.setVersion(expectedVersion + 1);
+            return UpdateResult.UPDATED;
+        }
+
+        @Override
+        public UpdateResult updateChangedFields(Student original, Student updated) {
+            return updateStudentIfVersion(updated, original.getVersion());
+        }
+
+        @Override
+        public synchronized boolean deleteStudent(int id) {
+            return rows.remove(id) != null;
+        }
+
+        @Override
+        public String getStatistics() {
+            return "";
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    static void checkNoLostUpdates() throws Exception {
+        int writers = 16;
+        int updatesEach = 40;
+        int[] ids = new int[8];
+        try (InMemoryStudentStore store = new InMemoryStudentStore(null, false, Long.MAX_VALUE, new DatabaseMetrics(false))) {
+            for (int i = 0; i < ids.length; i++) {
+                Student student = new Student("Writer Target " + i, "target" + i + "@example.lk", 18, "CS");
+                store.addStudent(student);
+                ids[i] = student.getId();
+            }
+
+            // Each writer visits the rows round-robin, so every row gets the same number of increments
+            AtomicInteger conflicts = new AtomicInteger();
+            try (ExecutorService executor = Executors.newFixedThreadPool(writers)) {
+                for (int w = 0; w < writers; w++) {
+                    int offset = w;
+                    executor.submit(() -> {
+                        for (int n = 0; n < updatesEach; n++) {
+                            int id = ids[(offset + n) % ids.length];
+                            while (true) {
+                                Student student = store.getStudentById(id);
+                                student.setAge(student.getAge() + 1);
+                                // Widens the window between read and write so writers actually collide
+                                Thread.yield();
+                                if (store.updateStudentIfVersion(student, student.getVersion()) == UpdateResult.UPDATED) {
+                                    break;
+                                }
+                                conflicts.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+            }
+
+            int applied = 0;
+            for (int id : ids) {
+                Student student = store.getStudentById(id);
+                check(student.getAge() - 18 == student.getVersion(), "lost update on student " + id + ": age "
+                        + student.getAge() + ", version " + student.getVersion());
+                applied += student.getVersion();
+            }
+            check(applied == writers * updatesEach, "expected " + writers * updatesEach + " updates, found " + applied);
+            System.out.println("updateStudentIfVersion: " + applied + " updates, " + conflicts.get()
+                    + " conflicts retried, none lost OK");
+        }
+    }
+
+    // Every row with all its fields, so two stores can be compared
+    private static Map<Integer, String> contentsOf(InMemoryStudentStore store) throws SQLException {
+        Map<Integer, String> contents = new TreeMap<>();
+        for (Student student : store.getAllStudents()) {
+            contents.put(student.getId(), student.getName() + "|" + student.getEmail() + "|" + student.getAge()
+                    + "|" + student.getCourse() + "|" + student.getVersion());
+        }
+        return contents;
+    }
+
+    private static List<Path> segmentsIn(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.getFileName().toString().matches("wal-\\d+\\.log")).sorted().toList();
+        }
+    }
+
+    // Adds count students, updates every third and deletes every fifth
+    private static void writeRows(InMemoryStudentStore store, String prefix, int count) throws SQLException {
+        List<Student> added = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Student student = new Student("Logged Student", prefix + i + "@example.lk", 18 + i % 10, "CS");
+            store.addStudent(student);
+            added.add(student);
+        }
+        for (int i = 0; i < count; i += 3) {
+            Student student = added.get(i);
+            student.setAge(student.getAge() + 1);
+            store.updateStudent(student);
+        }
+        for (int i = 0; i < count; i += 5) {
+            store.deleteStudent(added.get(i).getId());
+        }
+    }
+
+    static void checkWalRecovery() throws Exception {
+        Path directory = Files.createTempDirectory("store-checks-wal");
+        DatabaseMetrics metrics = new DatabaseMetrics(false);
+        try {
+            Map<Integer, String> expected;
+            try (InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                writeRows(store, "first", 60);
+                expected = contentsOf(store);
+            }
+            try (InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                check(contentsOf(store).equals(expected), "reopened store replays the log");
+                writeRows(store, "second", 30);
+                expected = contentsOf(store);
+            }
+
+            // A crash mid-append leaves a header whose payload never made it
+            List<Path> segments = segmentsIn(directory);
+            try (FileChannel out = FileChannel.open(segments.get(segments.size() - 1), StandardOpenOption.APPEND)) {
+                out.write(ByteBuffer.allocate(13).putInt(200).putInt(0x5eed).put(new byte[] {1, 2, 3, 4, 5}).flip());
+            }
+            try (InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                check(contentsOf(store).equals(expected), "torn tail dropped, every intact record kept");
+                store.addStudent(new Student("After Tear", "aftertear@example.lk", 20, "CS"));
+                expected = contentsOf(store);
+            }
+            try (InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                check(contentsOf(store).equals(expected), "writes after a torn tail survive the next reopen");
+
+                // The snapshot covers every segment so far; the writes after it go to a new one
+                store.compact();
+                writeRows(store, "third", 30);
+                expected = contentsOf(store);
+            }
+            check(Files.exists(directory.resolve("students.snapshot")), "snapshot written");
+            check(segmentsIn(directory).size() == 1, "compaction left " + segmentsIn(directory) + " segments");
+            try (InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                check(contentsOf(store).equals(expected), "snapshot plus later segment restore the store");
+            }
+
+            // Closing the log's file under the store stands in for a failing disk
+            InMemoryStudentStore store = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics);
+            Field logField = InMemoryStudentStore.class.getDeclaredField("log");
+            logField.setAccessible(true);
+            Object log = logField.get(store);
+            Field channelField = log.getClass().getDeclaredField("channel");
+            channelField.setAccessible(true);
+            ((FileChannel) channelField.get(log)).close();
+            List<String> refused = new ArrayList<>();
+            for (String call : List.of("add", "get", "list", "delete")) {
+                try {
+                    switch (call) {
+                        case "add" -> store.addStudent(new Student("Lost Write", "lost@example.lk", 20, "CS"));
+                        case "get" -> store.getStudentById(expected.keySet().iterator().next());
+                        case "list" -> store.getAllStudents();
+                        default -> store.deleteStudent(expected.keySet().iterator().next());
+                    }
+                } catch (SQLException e) {
+                    if ("58030".equals(e.getSQLState())) {
+                        refused.add(call);
+                    }
+                }
+            }
+            check(refused.size() == 4, "after a log failure only " + refused + " were refused");
+            try {
+                store.close();
+            } catch (SQLException e) {
+                // The log's file is already closed
+            }
+            try (InMemoryStudentStore reopened = new InMemoryStudentStore(directory, true, Long.MAX_VALUE, metrics)) {
+                check(contentsOf(reopened).equals(expected), "reopen after a log failure recovers the logged rows");
+            }
+            System.out.println("InMemoryStudentStore: replay, torn tail, snapshot and stop on log failure OK");
+        } finally {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    // Applies write-behind groups to maps with a unique email index, logging what reached it
+    static final class StubWriteTarget extends DatabaseManager {
+        final Map<Integer, Student> rows = new HashMap<>();
+        final Map<String, Integer> emails = new HashMap<>();
+        final List<String> applied = new ArrayList<>();
+        int nextId = 100;
+
+        StubWriteTarget() throws SQLException {
+            super(null, new DatabaseMetrics(false), null, false);
+        }
+
+        synchronized void seed(int id, String email) {
+            rows.put(id, new Student(id, "Seeded " + id, email, 20, "CS"));
+            emails.put(email, id);
+        }
+
+        @Override
+        synchronized BatchResult applyWrites(List<Write> writes) {
+            BatchResult result = new BatchResult(writes.size());
+            for (int i = 0; i < writes.size(); i++) {
+                Student student = writes.get(i).student();
+                Integer owner = emails.get(student.getEmail());
+                Student old = rows.get(student.getId());
+                switch (writes.get(i).kind()) {
+                    case INSERT -> {
+                        if (owner != null) {
+                            result.recordFailure(i, new SQLException("Duplicate entry", "23000", 1062));
+                            continue;
+                        }
+                        student.setId(nextId++);
+                        rows.put(student.getId(), student);
+                        emails.put(student.getEmail(), student.getId());
+                    }
+                    case UPDATE -> {
+                        if (old == null) {
+                            result.recordUnmatched(i);
+                            continue;
+                        }
+                        if (owner != null && owner != student.getId()) {
+                            result.recordFailure(i, new SQLException("Duplicate entry", "23000", 1062));
+                            continue;
+                        }
+                        emails.remove(old.getEmail());
+                        rows.put(student.getId(), student);
+                        emails.put(student.getEmail(), student.getId());
+                    }
+                    case DELETE -> {
+                        if (old == null) {
+                            result.recordUnmatched(i);
+                            continue;
+                        }
+                        rows.remove(student.getId());
+                        emails.remove(old.getEmail());
+                    }
+                }
+                result.recordSuccess();
+                applied.add(writes.get(i).kind() + " " + student.getId());
+            }
+            return result;
+        }
+    }
+
+    static void checkWriteBehindOrdering() throws Exception {
+        StubWriteTarget db = new StubWriteTarget();
+        db.seed(5, "first@example.lk");
+        db.seed(7, "steady@example.lk");
+        db.seed(9, "other@example.lk");
+        // Nothing is due before close(), so every call below waits in one queue
+        WriteBehindQueue queue = new WriteBehindQueue(db, 100, 60_000, 100);
+        List<CompletableFuture<Boolean>> calls = new ArrayList<>();
+
+        // Moving the second update behind the add would leave first@ taken when the add runs
+        calls.add(queue.updateStudent(new Student(5, "Seeded 5", "second@example.lk", 21, "CS")));
+        Student newcomer = new Student("Newcomer", "first@example.lk", 19, "CS");
+        calls.add(queue.addStudent(newcomer));
+        calls.add(queue.updateStudent(new Student(5, "Seeded 5", "second@example.lk", 22, "CS")));
+
+        // The same for an email freed by an update the queue cannot read the old value of
+        calls.add(queue.updateStudent(new Student(9, "Seeded 9", "third@example.lk", 21, "CS")));
+        calls.add(queue.updateStudent(new Student(5, "Seeded 5", "other@example.lk", 23, "CS")));
+        calls.add(queue.updateStudent(new Student(9, "Seeded 9", "third@example.lk", 22, "CS")));
+
+        // Writes with nothing queued after them still fold
+        for (int age = 30; age < 35; age++) {
+            calls.add(queue.updateStudent(new Student(7, "Seeded 7", "steady@example.lk", age, "CS")));
+        }
+        Student passing = new Student("Passing", "passing@example.lk", 19, "CS");
+        calls.add(queue.addStudent(passing));
+        calls.add(queue.deleteStudent(passing.getId()));
+        queue.close();
+
+        for (int i = 0; i < calls.size(); i++) {
+            check(calls.get(i).get(), "write-behind call " + i + " failed");
+        }
+        check(db.rows.get(5).getAge() == 23 && db.rows.get(5).getEmail().equals("other@example.lk"),
+                "student 5 ended as " + db.rows.get(5).getEmail() + ", age " + db.rows.get(5).getAge());
+        check(db.rows.get(9).getAge() == 22, "student 9 ended at age " + db.rows.get(9).getAge());
+        check(newcomer.getId() > 0 && db.rows.get(newcomer.getId()).getEmail().equals("first@example.lk"),
+                "newcomer got id " + newcomer.getId());
+        check(db.rows.get(7).getAge() == 34, "student 7 ended at age " + db.rows.get(7).getAge());
+        // The second update of 5 folds in place; those after update 9 cannot fold past it
+        List<String> expected = List.of("UPDATE 5", "INSERT " + newcomer.getId(), "UPDATE 9", "UPDATE 5",
+                "UPDATE 9", "UPDATE 7");
+        check(db.applied.equals(expected), "write-behind applied " + db.applied + ", expected " + expected);
+        System.out.println("WriteBehindQueue: " + calls.size() + " calls in " + db.applied.size()
+                + " writes, none reordered past a clashing write OK");
+    }
+
+    static void checkSharding() throws Exception {
+        List<StubShard> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            shards.add(new StubShard(i));
+        }
+        StubShard registry = shards.get(0);
+        ShardedStudentStore store = new ShardedStudentStore(new ArrayList<>(shards), 10, new DatabaseMetrics(false));
+
+        // Inserts land on the shard their id routes to, spread evenly, with ids unique across shards
+        Random random = new Random(1);
+        String[] names = {"Ann", "bob", "Carl", "dave", "Eve", "fay", "Gus", "hal"};
+        for (int i = 0; i < 40; i++) {
+            Student student = new Student(names[random.nextInt(names.length)] + " Perera", "s" + i + "@example.lk", 20, "CS");
+            check(store.addStudent(student) && student.getId() > 0, "insert " + i);
+            check(shards.get(store.shardOf(student.getId())).rows.containsKey(student.getId()),
+                    "id " + student.getId() + " stored on the shard it routes to");
+        }
+        Set<Integer> ids = new HashSet<>();
+        for (StubShard shard : shards) {
+            check(shard.rows.size() >= 13, "even spread, shard " + shard.index + " has " + shard.rows.size());
+            ids.addAll(shard.rows.keySet());
+        }
+        check(ids.size() == 40 && store.countStudents() == 40, "40 distinct ids");
+
+        // An email taken on one shard is refused on every shard
+        try {
+            store.addStudent(new Student("Dup", "S5@example.lk", 20, "CS"));
+            check(false, "duplicate email accepted");
+        } catch (SQLException e) {
+            check(e.getErrorCode() == 1062, "duplicate email reported as 1062");
+        }
+        check(store.countStudents() == 40, "no row for the duplicate");
+
+        // A row the shard rejects gives its email back
+        Student rejected = new Student("Bad", "bad@example.lk", 20, "CS");
+        try {
+            store.addStudent(rejected);
+            check(false, "rejected row accepted");
+        } catch (SQLException e) {
+            check(e.getErrorCode() == 3819, "shard error passed through");
+        }
+        check(!registry.registry.containsKey("bad@example.lk") && rejected.getId() == 0, "email released after rejection");
+
+        // The merge order is utf8mb4_bin's: code points, trailing spaces ignored, then id
+        Comparator<Student> order = ShardedStudentStore.SHARD_NAME_ORDER;
+        check(order.compare(new Student(1, "Zoe", "", 20, ""), new Student(2, "adam", "", 20, "")) < 0, "upper case first");
+        check(order.compare(new Student(2, "Ann ", "", 20, ""), new Student(1, "Ann", "", 20, "")) > 0, "trailing space ignored");
+        check(order.compare(new Student(1, "Ann\t", "", 20, ""), new Student(2, "Ann", "", 20, "")) < 0, "tab below the padding");
+        check(order.compare(new Student(1, "\uD83D\uDE00", "", 20, ""), new Student(2, "\uFFFD", "", 20, "")) > 0,
+                "supplementary characters above the BMP");
+
+        // Listings, pages and searches merge the shards in that order
+        List<Student> all = store.getAllStudents();
+        check(all.size() == 40, "listing has every row");
+        for (int i = 1; i < all.size(); i++) {
+            check(order.compare(all.get(i - 1), all.get(i)) < 0, "listing in (name, id) order");
+        }
+        for (StubShard shard : shards) {
+            check(shard.closedStreams == 1, "shard " + shard.index + " cursor closed");
+        }
+        List<Integer> paged = new ArrayList<>();
+        String token = null;
+        do {
+            StudentPage page = store.getStudentsPage(token, 7);
+            page.getStudents().forEach(student -> paged.add(student.getId()));
+            token = page.getNextPageToken();
+        } while (token != null);
+        check(paged.equals(all.stream().map(Student::getId).toList()), "pages add up to the listing");
+        long expectedMatches = all.stream().filter(student -> student.getName().toLowerCase().contains("b")).count();
+        check(store.searchStudentsByName("b").size() == expectedMatches, "search merges every shard");
+
+        // Changing an email moves the claim; a clash or a failed shard write leaves the old one
+        Student first = all.get(0);
+        check(store.updateStudent(new Student(first.getId(), first.getName(), "moved@example.lk", 21, "CS")), "update");
+        check(registry.registry.get("moved@example.lk") == first.getId()
+                && !registry.registry.containsKey(first.getEmail()), "claim moved with the email");
+        try {
+            store.updateStudent(new Student(first.getId(), first.getName(), "s7@example.lk", 21, "CS"));
+            check(false, "update onto a taken email accepted");
+        } catch (SQLException e) {
+            check(e.getErrorCode() == 1062, "clash reported as 1062");
+        }
+        try {
+            store.updateStudent(new Student(first.getId(), first.getName(), "bad2@example.lk", 21, "CS"));
+            check(false, "rejected update accepted");
+        } catch (SQLException e) {
+            // Expected
+        }
+        check(!registry.registry.containsKey("bad2@example.lk") && registry.registry.containsKey("moved@example.lk"),
+                "failed update released its new claim and kept the old one");
+
+        // Versioned updates claim the new email only when they win
+        Student current = store.getStudentById(first.getId());
+        Student stale = new Student(first.getId(), "New Name", "v@example.lk", 22, "CS");
+        check(store.updateStudentIfVersion(stale, current.getVersion() + 5) == UpdateResult.CONFLICT, "conflict");
+        check(!registry.registry.containsKey("v@example.lk"), "no claim kept after a conflict");
+        Student fresh = new Student(first.getId(), "New Name", "v@example.lk", 22, "CS");
+        check(store.updateStudentIfVersion(fresh, current.getVersion()) == UpdateResult.UPDATED, "versioned update");
+        check(registry.registry.containsKey("v@example.lk") && !registry.registry.containsKey("moved@example.lk"),
+                "versioned update moved the claim");
+
+        check(store.deleteStudent(first.getId()) && !registry.registry.containsKey("v@example.lk"), "delete releases the email");
+        check(!store.deleteStudent(first.getId()) && store.getStudentById(first.getId()) == null, "deleted row is gone");
+        check(store.getStudentById(-4) == null && store.getStudentById(999_999) == null, "unknown ids");
+
+        // Batches report rows that clash or that a shard rejects, and insert the rest
+        List<Student> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            batch.add(new Student("Batch", "b" + i + "@example.lk", 20, "CS"));
+        }
+        batch.set(3, new Student("Batch", "s9@example.lk", 20, "CS"));
+        batch.set(11, new Student("Batch", "bad3@example.lk", 20, "CS"));
+        batch.set(15, new Student("Batch", "b0@example.lk", 20, "CS"));
+        BatchResult result = store.addStudents(batch);
+        Set<Integer> failed = new TreeSet<>();
+        result.getFailures().forEach(failure -> failed.add(failure.index()));
+        check(result.getSucceeded() == 17 && failed.equals(Set.of(3, 11, 15)), "batch failures " + failed);
+        check(!registry.registry.containsKey("bad3@example.lk") && batch.get(11).getId() == 0, "batch released the rejected email");
+        check(store.countStudents() == 56, "count after the batch");
+
+        // A shard that cannot stream fails the listing and the cursors already open are closed
+        shards.get(2).failStreams = true;
+        try {
+            store.getAllStudents();
+            check(false, "listing with a shard down succeeded");
+        } catch (SQLException e) {
+            check(e.getMessage().equals("Shard 2 is down"), "shard error passed through");
+        }
+        check(shards.get(0).closedStreams == 2 && shards.get(1).closedStreams == 2, "open cursors closed after a failure");
+
+        store.close();
+        System.out.println("ShardedStudentStore: routing, email registry and merges OK");
+    }
+
+    /**
+     * Accepts jdbc:stub:* URLs and hands out connections that only answer isValid and count
+     * how many are open. Connecting to a URL in down fails with SQLState 08001, one in refusing
+     * with 28000 (access denied).
+     */
+    static final class StubDriver implements Driver {
+        final Set<String> down = ConcurrentHashMap.newKeySet();
+        final Set<String> refusing = ConcurrentHashMap.newKeySet();
+        final AtomicInteger open = new AtomicInteger();
+        final AtomicInteger peakOpen = new AtomicInteger();
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            if (down.contains(url)) {
+                throw new SQLException("Communications link failure", "08001");
+            }
+            if (refusing.contains(url)) {
+                throw new SQLException("Access denied", "28000", 1045);
+            }
+            peakOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+            return (Connection) Proxy.newProxyInstance(StoreChecks.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, (proxy, method, methodArgs) -> switch (method.getName()) {
+                        case "isValid" -> !down.contains(url) && !refusing.contains(url);
+                        case "isClosed" -> false;
+                        case "close" -> {
+                            open.decrementAndGet();
+                            yield null;
+                        }
+                        case "getAutoCommit" -> true;
+                        case "toString" -> url;
+                        case "hashCode" -> System.identityHashCode(proxy);
+                        case "equals" -> proxy == methodArgs[0];
+                        default -> null;
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return url.startsWith("jdbc:stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() {
+            return Logger.getLogger("StoreChecks");
+        }
+    }
+
+    private static ConnectionPool stubPool(String url) {
+        return new ConnectionPool(url, new Properties(), new ConnectionPool.Settings(4, 0, 200, 60_000, 600_000, 1, 60_000, 0));
+    }
+
+    private static String endpointOf(PooledConnection pc) {
+        return pc.getConnection().toString().substring("jdbc:stub:".length());
+    }
+
+    private static String readEndpoint(ReadRouter router) throws SQLException {
+        try (PooledConnection pc = router.borrowForRead()) {
+            return endpointOf(pc);
+        }
+    }
+
+    static void checkPoolBounds(StubDriver driver) throws Exception {
+        int borrowers = 32;
+        int borrowsEach = 50;
+        ConnectionPool pool = new ConnectionPool("jdbc:stub:pool", new Properties(),
+                new ConnectionPool.Settings(4, 0, 10_000, 60_000, 600_000, 1, 60_000, 0));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int b = 0; b < borrowers; b++) {
+                executor.submit(() -> {
+                    for (int i = 0; i < borrowsEach; i++) {
+                        try (PooledConnection pc = pool.borrow()) {
+                            check(pc.getConnection() != null, "borrowed a connection");
+                            Thread.sleep(0, 200_000);
+                        }
+                    }
+                    return null;
+                });
+            }
+        }
+        ConnectionPool.Stats stats = pool.stats();
+        check(driver.peakOpen.get() <= 4, "at most 4 connections open, saw " + driver.peakOpen.get());
+        check(stats.borrowed() == borrowers * borrowsEach && stats.timeouts() == 0, "every borrow served: " + stats);
+        check(stats.active() == 0 && stats.total() <= 4, "all returned: " + stats);
+
+        // Once every connection is held, a borrow waits acquireTimeoutMillis and gives up
+        ConnectionPool small = new ConnectionPool("jdbc:stub:small", new Properties(),
+                new ConnectionPool.Settings(2, 0, 100, 60_000, 600_000, 1, 60_000, 0));
+        PooledConnection a = small.borrow();
+        PooledConnection b = small.borrow();
+        long started = System.nanoTime();
+        try {
+            small.borrow().close();
+            check(false, "borrow from an exhausted pool succeeded");
+        } catch (SQLTransientConnectionException e) {
+            check(System.nanoTime() - started >= 90_000_000L, "gave up only after the acquire timeout");
+        }
+        a.close();
+        small.borrow().close();
+        b.close();
+
+        small.close();
+        pool.close();
+        check(driver.open.get() == 0, "closing the pools closed every connection");
+        System.out.println("ConnectionPool: bounded under " + borrowers + " borrowers, timeout when exhausted OK");
+    }
+
+    static void checkReadRouting(StubDriver driver) throws Exception {
+        ConnectionPool primary = stubPool("jdbc:stub:primary");
+        ReadRouter router = new ReadRouter(primary, List.of(stubPool("jdbc:stub:r1"), stubPool("jdbc:stub:r2")), 150, 0, false);
+
+        // Reads spread over the replicas, each going to the one with fewer reads in flight
+        PooledConnection first = router.borrowForRead();
+        PooledConnection second = router.borrowForRead();
+        check(!endpointOf(first).equals(endpointOf(second)) && endpointOf(first).startsWith("r")
+                && endpointOf(second).startsWith("r"), "two reads on two replicas");
+        String busy = endpointOf(first);
+        second.close();
+        for (int i = 0; i < 5; i++) {
+            check(!readEndpoint(router).equals(busy), "reads avoid the busy replica");
+        }
+        first.close();
+        check(router.stats().get(1).inFlight() == 0 && router.stats().get(2).inFlight() == 0, "in-flight counts return to 0");
+
+        // After a write, the writer's session reads from the primary, on any thread it moves to
+        router.noteWrite();
+        ReadSession writer = ReadSession.current();
+        check(readEndpoint(router).equals("primary"), "writer pinned to the primary");
+        String[] seen = new String[2];
+        Thread other = Thread.ofVirtual().start(() -> {
+            try {
+                seen[0] = readEndpoint(router);
+                ReadSession.Scope scope = writer.enter();
+                try {
+                    seen[1] = readEndpoint(router);
+                } finally {
+                    scope.close();
+                }
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        });
+        other.join();
+        check(!"primary".equals(seen[0]), "another client's reads stay on the replicas");
+        check("primary".equals(seen[1]), "the writer's session stays pinned on another thread");
+
+        // The token handed to HTTP clients restores the pin; a malformed one is ignored
+        ReadSession.Scope scope = ReadSession.fromToken(writer.token()).enter();
+        try {
+            check(readEndpoint(router).equals("primary"), "token pins to the primary");
+        } finally {
+            scope.close();
+        }
+        scope = ReadSession.fromToken("not-a-token").enter();
+        try {
+            check(!readEndpoint(router).equals("primary"), "malformed token ignored");
+        } finally {
+            scope.close();
+        }
+        Thread.sleep(200);
+        check(!readEndpoint(router).equals("primary"), "pin ends after readYourWritesMillis");
+
+        // Idle connections are revalidated after 500ms; wait past that before breaking a replica
+        long revalidateMillis = 600;
+
+        // A failure other than a lost connection falls back to the primary and leaves the replicas up
+        driver.refusing.addAll(List.of("jdbc:stub:r1", "jdbc:stub:r2"));
+        Thread.sleep(revalidateMillis);
+        check(readEndpoint(router).equals("primary"), "refused read falls back to the primary");
+        router.checkHealth();
+        check(router.stats().get(1).healthy() && router.stats().get(2).healthy(), "refusing replicas stay up");
+        driver.refusing.clear();
+
+        // An interrupted read is not retried on the primary, and marks nothing down
+        Thread.currentThread().interrupt();
+        try {
+            readEndpoint(router);
+            check(false, "interrupted read succeeded");
+        } catch (SQLException e) {
+            check(Thread.interrupted(), "interrupt status kept");
+        }
+        check(router.stats().get(1).healthy() && router.stats().get(2).healthy(), "interruption marks nothing down");
+
+        // A replica that cannot connect is marked down; with both down, reads go to the primary
+        driver.down.add("jdbc:stub:r1");
+        Thread.sleep(revalidateMillis);
+        for (int i = 0; i < 4; i++) {
+            check(!readEndpoint(router).equals("r1"), "reads avoid the replica that is down");
+        }
+        check(!router.stats().get(1).healthy() && router.stats().get(2).healthy(), "r1 marked down");
+        driver.down.add("jdbc:stub:r2");
+        Thread.sleep(revalidateMillis);
+        for (int i = 0; i < 4; i++) {
+            check(readEndpoint(router).equals("primary"), "no replica up, reads on the primary");
+        }
+        router.checkHealth();
+        check(!router.stats().get(1).healthy() && !router.stats().get(2).healthy(), "health check keeps them down");
+
+        // The health check brings them back once they answer
+        driver.down.clear();
+        router.checkHealth();
+        check(router.stats().get(1).healthy() && router.stats().get(2).healthy(), "replicas recovered");
+        check(!readEndpoint(router).equals("primary"), "reads back on the replicas");
+
+        // Exhausted replica pools overflow to the primary without being marked down
+        List<PooledConnection> held = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            held.add(router.borrowForRead());
+        }
+        check(held.stream().noneMatch(pc -> endpointOf(pc).equals("primary")), "both replica pools filled");
+        check(readEndpoint(router).equals("primary"), "exhausted replicas overflow to the primary");
+        check(router.stats().get(1).healthy() && router.stats().get(2).healthy(), "busy replicas stay up");
+        for (PooledConnection pc : held) {
+            pc.close();
+        }
+
+        router.close();
+        primary.close();
+        System.out.println("ReadRouter: selection, read-your-writes sessions and failover OK");
+    }
+}
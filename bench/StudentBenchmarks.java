@@ -0,0 +1,907 @@
+// StudentBenchmarks.java - Benchmark harness for the DatabaseManager and InputValidator hot paths
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Hand-rolled JMH-style harness: each benchmark is warmed up, then timed over several fixed-length
+ * iterations; the mean, a 99.9% confidence error and the allocated bytes per operation are
+ * written as JSON to bench.out so runs can be diffed.
+ *
+ * Database benchmarks run against whatever bench.db.url points at, typically an embedded
+ * database on the classpath standing in for MySQL:
+ *
+ *   java -cp "out:lib/*" -Dbench.db.url="jdbc:h2:mem:bench;MODE=MySQL;DB_CLOSE_DELAY=-1" StudentBenchmarks [regex]
+ *
+ * Without bench.db.url only the in-memory benchmarks run.
+ */
+public class StudentBenchmarks {
+    @FunctionalInterface
+    interface Op {
+        void run() throws Exception;
+    }
+
+    record Result(String benchmark, Map<String, String> params, String mode, double score, double scoreError,
+                  String unit, double bytesPerOp, int iterations) {}
+
+    // Consumes results so the JIT cannot drop the measured work
+    static volatile Object sink;
+
+    private static final String[] NAMES = {"Alice Perera", "Bimal Silva", "Chamari Fernando", "Dinesh Jayasuriya",
+            "Erandi Wickramasinghe", "Faris Mohamed", "Gayan Bandara", "Hiruni Dissanayake"};
+    private static final String[] COURSES = {"Computer Science", "Software Engineering", "Data Science",
+            "Information Systems", "Cyber Security"};
+
+    private final Pattern filter;
+    private final int warmupMillis = Integer.getInteger("bench.warmupMillis", 1000);
+    private final int measureMillis = Integer.getInteger("bench.measureMillis", 1000);
+    private final int iterations = Integer.getInteger("bench.iterations", 5);
+    private final List<Result> results = new ArrayList<>();
+    private final PrintStream console = System.out;
+
+    StudentBenchmarks(Pattern filter) {
+        this.filter = filter;
+    }
+
+    public static void main(String[] args) throws Exception {
+        StudentBenchmarks bench = new StudentBenchmarks(Pattern.compile(args.length > 0 ? args[0] : ".*"));
+
+        bench.runInMemoryBenchmarks();
+
+        String url = System.getProperty("bench.db.url");
+        if (url != null) {
+            for (String size : System.getProperty("bench.sizes", "1000,10000,100000").split(",")) {
+                bench.runDatabaseBenchmarks(url, Integer.parseInt(size.trim()));
+            }
+            bench.runStartupBenchmarks(System.getProperty("bench.startup.url", url));
+        } else {
+            System.out.println("bench.db.url not set; skipping database benchmarks");
+        }
+
+        Path out = Path.of(System.getProperty("bench.out", "bench-results.json"));
+        Files.writeString(out, bench.toJson(), StandardCharsets.UTF_8);
+        System.out.println("Results written to " + out.toAbsolutePath());
+    }
+
+    void runInMemoryBenchmarks() throws Exception {
+        measure("InputValidator.isValidEmail", Map.of(), () -> sink = InputValidator.isValidEmail("kasun.perera@example.lk"));
+        measure("InputValidator.isValidName", Map.of(), () -> sink = InputValidator.isValidName("Kasun Perera"));
+        measure("InputValidator.isValidCourse", Map.of(), () -> sink = InputValidator.isValidCourse("  Computer Science "));
+        runValidatorBenchmarks();
+        runMemoryStoreBenchmarks();
+        measure("Student.new", Map.of(), () -> sink = new Student(42, "Kasun Perera", "kasun@example.lk", 21, "Data Science"));
+
+        Student student = new Student(42, "Kasun Perera", "kasun@example.lk", 21, "Data Science");
+        measure("Student.toString", Map.of(), () -> sink = student.toString());
+
+        // Rendering goes to an autoflushing stream over the null device, like a redirected stdout
+        String nullDevice = System.getProperty("os.name").startsWith("Windows") ? "NUL" : "/dev/null";
+        PrintStream original = System.out;
+        try (PrintStream redirected = new PrintStream(new BufferedOutputStream(new FileOutputStream(nullDevice), 8192),
+                true, StandardCharsets.UTF_8)) {
+            System.setOut(redirected);
+            for (int size : new int[]{1_000, 100_000}) {
+                List<Student> rows = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    rows.add(randomStudent(i));
+                }
+                Map<String, String> params = Map.of("rows", String.valueOf(size));
+                measure("displayStudentTable.printf", params, () -> printfTable(rows));
+                measure("StudentDatabaseApp.displayStudentTable", params, () -> StudentDatabaseApp.displayStudentTable(rows));
+                for (StudentTableRenderer.Mode mode : new StudentTableRenderer.Mode[]{StudentTableRenderer.Mode.TSV,
+                        StudentTableRenderer.Mode.JSON}) {
+                    measure("StudentTableRenderer.render", Map.of("rows", String.valueOf(size), "mode", mode.name()),
+                            () -> StudentTableRenderer.forSystemOut(mode, rows.size()).render(rows, null));
+                }
+            }
+        } finally {
+            System.setOut(original);
+        }
+
+        // Cost of the per-call timer a DatabaseManager operation pays, recording three phases
+        for (boolean enabled : new boolean[]{true, false}) {
+            DatabaseMetrics metrics = new DatabaseMetrics(enabled);
+            measure("DatabaseMetrics.timer", Map.of("enabled", String.valueOf(enabled)), () -> {
+                DatabaseMetrics.Timer timer = metrics.start("getStudentById");
+                timer.lap(DatabaseMetrics.Phase.ACQUIRE);
+                timer.lap(DatabaseMetrics.Phase.PREPARE);
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                timer.rows(1);
+                timer.stop();
+            });
+        }
+    }
+
+    /**
+     * The embedded engine: lookups and searches against 100,000 rows, single-writer updates
+     * with the write-ahead log off, unsynced and fsynced, and fsynced insert throughput as
+     * concurrent writers start sharing fsyncs through group commit.
+     */
+    void runMemoryStoreBenchmarks() throws Exception {
+        if (Stream.of("InMemoryStudentStore.getStudentById", "InMemoryStudentStore.getStudentsPage",
+                        "InMemoryStudentStore.searchStudentsByName", "InMemoryStudentStore.updateStudent",
+                        "InMemoryStudentStore.addStudent.groupCommit")
+                .noneMatch(name -> filter.matcher(name).find())) {
+            return;
+        }
+        int size = 100_000;
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+        try (InMemoryStudentStore store = new InMemoryStudentStore(null, false, Long.MAX_VALUE, new DatabaseMetrics(true))) {
+            List<Student> rows = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                rows.add(randomStudent(i));
+            }
+            store.addStudents(rows);
+            measure("InMemoryStudentStore.getStudentById", params, () -> sink = store.getStudentById(randomId(1, size)));
+            measure("InMemoryStudentStore.getStudentsPage", params, () -> sink = store.getStudentsPage(null, 20));
+            measure("InMemoryStudentStore.searchStudentsByName", params,
+                    () -> sink = store.searchStudentsByName(NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)].substring(0, 4)));
+        }
+
+        for (String log : new String[]{"off", "nofsync", "fsync"}) {
+            Path dir = log.equals("off") ? null : Files.createTempDirectory("bench-store");
+            try (InMemoryStudentStore store = new InMemoryStudentStore(dir, log.equals("fsync"), 64L << 20,
+                    new DatabaseMetrics(true))) {
+                List<Student> rows = new ArrayList<>(10_000);
+                for (int i = 0; i < 10_000; i++) {
+                    rows.add(randomStudent(i));
+                }
+                store.addStudents(rows);
+                // Updates keep the row count fixed however many run, unlike inserts
+                measure("InMemoryStudentStore.updateStudent", Map.of("log", log), () -> {
+                    Student row = rows.get(ThreadLocalRandom.current().nextInt(rows.size()));
+                    row.setAge(18 + ThreadLocalRandom.current().nextInt(30));
+                    sink = store.updateStudent(row);
+                });
+            } finally {
+                deleteTree(dir);
+            }
+        }
+
+        for (int writers : new int[]{1, 4, 16, 64}) {
+            Path dir = Files.createTempDirectory("bench-store");
+            try (InMemoryStudentStore store = new InMemoryStudentStore(dir, true, 64L << 20, new DatabaseMetrics(false))) {
+                AtomicInteger next = new AtomicInteger();
+                measureThroughput("InMemoryStudentStore.addStudent.groupCommit", Map.of("writers", String.valueOf(writers)),
+                        writers, () -> store.addStudent(randomStudent(next.incrementAndGet())));
+            } finally {
+                deleteTree(dir);
+            }
+        }
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (dir == null) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // The printf-per-row loop displayStudentTable used before StudentTableRenderer, kept as the baseline
+    private static void printfTable(List<Student> students) {
+        System.out.println("\n" + "=".repeat(80));
+        System.out.printf("%-5s %-20s %-25s %-5s %-20s%n", "ID", "Name", "Email", "Age", "Course");
+        System.out.println("=".repeat(80));
+        for (Student student : students) {
+            System.out.printf("%-5d %-20s %-25s %-5d %-20s%n", student.getId(), truncate(student.getName(), 20),
+                    truncate(student.getEmail(), 25), student.getAge(), truncate(student.getCourse(), 20));
+        }
+        System.out.println("=".repeat(80));
+        System.out.println("Total students: " + students.size());
+    }
+
+    private static String truncate(String str, int maxLength) {
+        return str.length() <= maxLength ? str : str.substring(0, maxLength - 3) + "...";
+    }
+
+    void runDatabaseBenchmarks(String url, int size) throws Exception {
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+
+        int firstId;
+        try (DatabaseManager db = openDatabase(url, DatabaseConfig.getStatementCacheSize())) {
+            firstId = seed(url, db, size);
+
+            measure("DatabaseManager.getStudentById", params, () -> sink = db.getStudentById(randomId(firstId, size)));
+            measure("DatabaseManager.searchStudentsByName", params,
+                    () -> sink = db.searchStudentsByName(NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)].substring(0, 4)));
+            measure("DatabaseManager.typeAhead", params, () -> sink = db.typeAhead("pere", 10));
+            if (size <= 100_000) {
+                measure("DatabaseManager.getAllStudents", params, () -> sink = db.getAllStudents());
+            }
+            measure("DatabaseManager.getStudentsPage", params, () -> sink = db.getStudentsPage(null, 20));
+
+            int[] next = {size};
+            measure("DatabaseManager.addStudent", params, () -> sink = db.addStudent(randomStudent(next[0]++)));
+
+            runAsyncScaling(db, firstId, size);
+            runScanBenchmarks(url, db, size);
+            runReportBenchmarks(db, size);
+            runReplicaBenchmarks(db, firstId, size);
+            runExportBenchmarks(db, size);
+            runCommandModeBenchmarks(db);
+            runHttpBenchmarks(db, firstId, size);
+            runOptimisticUpdateStress(db, firstId);
+            runWriteBehindBenchmarks(db, size);
+        }
+
+        // Same lookup with the per-connection statement cache switched off
+        try (DatabaseManager uncached = openDatabase(url, 0)) {
+            measure("DatabaseManager.getStudentById", Map.of("rows", String.valueOf(size), "statementCache", "off"),
+                    () -> sink = uncached.getStudentById(randomId(firstId, size)));
+        }
+
+        // And with metrics recording switched off, to show what instrumentation costs end to end
+        try (DatabaseManager unmetered = openDatabase(url, DatabaseConfig.getStatementCacheSize(), new DatabaseMetrics(false))) {
+            measure("DatabaseManager.getStudentById", Map.of("rows", String.valueOf(size), "metrics", "off"),
+                    () -> sink = unmetered.getStudentById(randomId(firstId, size)));
+        }
+    }
+
+    /**
+     * Full-table scans: the old SELECT * with by-label getters, the column-index mapper with a
+     * new Student per row, and the mapper refilling one Student. Each op is one whole scan, so
+     * B/op divided by rows is the per-row allocation.
+     */
+    void runScanBenchmarks(String url, DatabaseManager db, int size) throws Exception {
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+        long[] checksum = {0};
+
+        try (Connection connection = DriverManager.getConnection(url,
+                System.getProperty("bench.db.user", ""), System.getProperty("bench.db.password", ""))) {
+            measure("scan.selectStarByLabel", params, () -> {
+                try (PreparedStatement pstmt = connection.prepareStatement("SELECT * FROM students ORDER BY name, id",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                    pstmt.setFetchSize(DatabaseConfig.getStreamFetchSize(url));
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            Student student = new Student(rs.getInt("id"), rs.getString("name"),
+                                    rs.getString("email"), rs.getInt("age"), rs.getString("course"));
+                            checksum[0] += student.getAge();
+                        }
+                    }
+                }
+            });
+        }
+        measure("DatabaseManager.forEachStudent", params, () -> db.forEachStudent(student -> checksum[0] += student.getAge()));
+        measure("DatabaseManager.scanStudents", params, () -> db.scanStudents(student -> checksum[0] += student.getAge()));
+        sink = checksum[0];
+    }
+
+    // Students-per-course report computed from getAllStudents versus the columnar snapshot
+    void runReportBenchmarks(DatabaseManager db, int size) throws Exception {
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+        if (size <= 100_000) {
+            measure("report.countByCourse.getAllStudents", params, () -> {
+                Map<String, Long> counts = new TreeMap<>();
+                for (Student student : db.getAllStudents()) {
+                    counts.merge(student.getCourse(), 1L, Long::sum);
+                }
+                sink = counts;
+            });
+        }
+        if (!filter.matcher("StudentSnapshot").find()) {
+            return;
+        }
+        StudentSnapshot snapshot = StudentSnapshot.load(db);
+        measure("StudentSnapshot.countByCourse", params, () -> sink = snapshot.countByCourse());
+        measure("StudentSnapshot.averageAgeByCourse", params, () -> sink = snapshot.averageAgeByCourse());
+        measure("StudentSnapshot.ageHistogram", params, () -> sink = snapshot.ageHistogram(5));
+        measure("StudentSnapshot.refresh", params, () -> sink = snapshot.refresh());
+        measure("StudentSnapshot.reload", params, snapshot::reload);
+    }
+
+    // Lookups served from the memory-mapped replica instead of the database
+    void runReplicaBenchmarks(DatabaseManager db, int firstId, int size) throws Exception {
+        if (!filter.matcher("MappedStudentReplica").find()) {
+            return;
+        }
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+        Path base = Files.createTempFile("bench-replica", "");
+        try {
+            measure("MappedStudentReplica.open", params, () -> {
+                try (MappedStudentReplica replica = MappedStudentReplica.open(base, db)) {
+                    sink = replica.size();
+                }
+            });
+            try (MappedStudentReplica replica = MappedStudentReplica.open(base, db)) {
+                measure("MappedStudentReplica.getStudentById", params,
+                        () -> sink = replica.getStudentById(randomId(firstId, size)));
+                measure("MappedStudentReplica.searchStudentsByNamePrefix", params,
+                        () -> sink = replica.searchStudentsByNamePrefix(NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)].substring(0, 4)));
+                measure("DatabaseManager.searchStudentsByNamePrefix", params,
+                        () -> sink = db.searchStudentsByNamePrefix(NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)].substring(0, 4)));
+                measure("MappedStudentReplica.sync", params, () -> sink = replica.sync());
+            }
+        } finally {
+            for (String suffix : new String[]{"", ".dat", ".idx"}) {
+                Files.deleteIfExists(Path.of(base + suffix));
+            }
+        }
+    }
+
+    // One full export per op in each format; divide rows by the score for rows/s
+    void runExportBenchmarks(DatabaseManager db, int size) throws Exception {
+        if (!filter.matcher("StudentExporter").find()) {
+            return;
+        }
+        StudentExporter exporter = new StudentExporter(db, new PrintStream(OutputStream.nullOutputStream()));
+        Path dir = Files.createTempDirectory("bench-export");
+        try {
+            for (String name : new String[]{"students.csv", "students.jsonl", "students.stuc", "students.csv.gz"}) {
+                Path file = dir.resolve(name);
+                measure("StudentExporter.exportTo", Map.of("rows", String.valueOf(size), "file", name),
+                        () -> sink = exporter.exportTo(file, StudentExporter.detectFormat(file),
+                                StudentExporter.detectCompression(file)));
+                Files.deleteIfExists(file);
+            }
+        } finally {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    /**
+     * One op runs a 10,000-line script of adds, gets and deletes through CommandMode: the
+     * batched run (writes grouped up to db.batch.size) against the same commands forced into
+     * one-row batches by a flush after every line.
+     */
+    void runCommandModeBenchmarks(DatabaseManager db) throws Exception {
+        if (!filter.matcher("CommandMode").find()) {
+            return;
+        }
+        int[] run = {0};
+        for (boolean batched : new boolean[]{true, false}) {
+            measure("CommandMode.run", Map.of("commands", "10000", "batched", String.valueOf(batched)), () -> {
+                StringBuilder script = new StringBuilder(10_000 * 48);
+                int prefix = run[0]++;
+                for (int i = 0; i < 5_000; i++) {
+                    Student student = randomStudent(i);
+                    script.append("add \"").append(student.getName()).append("\" cmd").append(prefix).append('-').append(i)
+                            .append("@example.lk ").append(student.getAge()).append(" \"").append(student.getCourse()).append("\"\n");
+                    if (!batched) {
+                        script.append("flush\n");
+                    }
+                }
+                StringWriter out = new StringWriter(1 << 20);
+                new CommandMode(db, out).run(new BufferedReader(new StringReader(script.toString())));
+                // Second half: read back, then delete, what was just added
+                List<String> ids = out.toString().lines().map(StudentJson::parseObject)
+                        .map(fields -> fields.get("id")).filter(id -> id != null).toList();
+                StringBuilder cleanup = new StringBuilder(10_000 * 24);
+                ids.forEach(id -> cleanup.append("get ").append(id).append('\n'));
+                ids.forEach(id -> cleanup.append(batched ? "delete " + id + "\n" : "delete " + id + "\nflush\n"));
+                new CommandMode(db, new StringWriter()).run(new BufferedReader(new StringReader(cleanup.toString())));
+            });
+        }
+    }
+
+    // Round trips through the embedded HTTP server over loopback, on one keep-alive connection
+    void runHttpBenchmarks(DatabaseManager db, int firstId, int size) throws Exception {
+        if (!filter.matcher("StudentHttpServer").find()) {
+            return;
+        }
+        Map<String, String> params = Map.of("rows", String.valueOf(size));
+        try (StudentHttpServer server = new StudentHttpServer(db, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                DatabaseConfig.getHttpMaxBodyBytes())) {
+            server.start();
+            String base = "http://127.0.0.1:" + server.getPort() + "/students";
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            measure("StudentHttpServer.getStudent", params, () -> sink = client.send(
+                    HttpRequest.newBuilder(URI.create(base + "/" + randomId(firstId, size))).build(),
+                    HttpResponse.BodyHandlers.ofByteArray()).body());
+            measure("StudentHttpServer.listStudents", params, () -> sink = client.send(
+                    HttpRequest.newBuilder(URI.create(base + "?pageSize=50")).build(),
+                    HttpResponse.BodyHandlers.ofByteArray()).body());
+            console.print(server.report());
+        }
+    }
+
+    /**
+     * Lost-update check: writer threads bump the age of a few shared rows with read-modify-write
+     * loops that retry on CONFLICT. Every UPDATED must show up in the final ages and versions,
+     * otherwise the run fails. Writers visit the rows round-robin so each row gets the same number
+     * of increments, which has to stay inside the age CHECK (1..149).
+     */
+    void runOptimisticUpdateStress(DatabaseManager db, int firstId) throws Exception {
+        if (!filter.matcher("DatabaseManager.updateStudentIfVersion").find()) {
+            return;
+        }
+        int writers = Integer.getInteger("bench.stress.writers", 16);
+        int updatesPerWriter = Integer.getInteger("bench.stress.updates", 40);
+        int[] ids = new int[8];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = firstId + i;
+        }
+        if ((long) writers * updatesPerWriter > ids.length * 100L) {
+            throw new IllegalArgumentException("bench.stress.writers * bench.stress.updates must be at most " + ids.length * 100);
+        }
+
+        int[] startAge = new int[ids.length];
+        int[] startVersion = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            Student student = db.loadStudentById(ids[i]);
+            startAge[i] = student.getAge();
+            student.setAge(18);
+            db.updateStudent(student);
+            startVersion[i] = db.loadStudentById(ids[i]).getVersion();
+        }
+
+        LongAdder conflicts = new LongAdder();
+        List<Thread> threads = new ArrayList<>(writers);
+        long started = System.nanoTime();
+        for (int w = 0; w < writers; w++) {
+            int offset = w;
+            threads.add(Thread.ofPlatform().start(() -> {
+                try {
+                    for (int n = 0; n < updatesPerWriter; n++) {
+                        int id = ids[(offset + n) % ids.length];
+                        while (true) {
+                            Student student = db.loadStudentById(id);
+                            student.setAge(student.getAge() + 1);
+                            if (db.updateStudentIfVersion(student, student.getVersion()) == UpdateResult.UPDATED) {
+                                break;
+                            }
+                            conflicts.increment();
+                        }
+                    }
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        int applied = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Student student = db.loadStudentById(ids[i]);
+            int ageDelta = student.getAge() - 18;
+            if (ageDelta != student.getVersion() - startVersion[i]) {
+                throw new IllegalStateException("Lost update on student " + ids[i] + ": age +" + ageDelta
+                        + ", version +" + (student.getVersion() - startVersion[i]));
+            }
+            applied += ageDelta;
+            student.setAge(startAge[i]);
+            db.updateStudent(student);
+        }
+        if (applied != writers * updatesPerWriter) {
+            throw new IllegalStateException("Expected " + writers * updatesPerWriter + " updates, found " + applied);
+        }
+
+        Map<String, String> params = Map.of("writers", String.valueOf(writers), "rows", String.valueOf(ids.length));
+        record(new Result("DatabaseManager.updateStudentIfVersion", params, "thrpt", applied / seconds, 0.0,
+                "ops/s", Double.NaN, 1));
+        console.printf("  %d updates, %d conflicts retried, no lost updates%n", applied, conflicts.sum());
+    }
+
+    /**
+     * Launches "Main --batch -c count" as a fresh JVM bench.startup.launches times and records
+     * Main.main to the first query served (from the -Dstartup.trace line) and the whole process
+     * wall time, with and without a dynamic AppCDS archive. The first launch of each mode is
+     * discarded: it migrates the schema and writes the archive. Use a file-backed
+     * bench.startup.url to see the schema-is-current path; an in-memory URL migrates every time.
+     */
+    /**
+     * Insert throughput with each writer committing its own row against the same writers
+     * going through WriteBehindQueue, which commits them in groups. Each queued call still
+     * waits for its commit, so both columns count durable writes.
+     */
+    void runWriteBehindBenchmarks(DatabaseManager db, int size) throws Exception {
+        AtomicInteger next = new AtomicInteger(10 * size);
+        for (int writers : new int[]{1, 16, 64}) {
+            Map<String, String> params = Map.of("rows", String.valueOf(size), "writers", String.valueOf(writers));
+            measureThroughput("DatabaseManager.addStudent.concurrent", params, writers,
+                    () -> db.addStudent(randomStudent(next.incrementAndGet())));
+            try (WriteBehindQueue queue = new WriteBehindQueue(db)) {
+                measureThroughput("WriteBehindQueue.addStudent", params, writers, () -> {
+                    if (!queue.addStudent(randomStudent(next.incrementAndGet())).get()) {
+                        throw new IllegalStateException("Queued add was not written");
+                    }
+                });
+                console.println("  " + queue.getStats());
+            }
+        }
+    }
+
+    void runStartupBenchmarks(String url) throws Exception {
+        if (!filter.matcher("Main.startup").find()) {
+            return;
+        }
+        int launches = Integer.getInteger("bench.startup.launches", 10);
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        Path archive = Files.createTempFile("bench-startup", ".jsa");
+        Files.delete(archive);
+        Pattern firstQuery = Pattern.compile("first query \\+([0-9.]+)ms");
+        try {
+            for (String mode : new String[]{"default", "appcds"}) {
+                List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                        "-Dstartup.trace=true", "-Ddb.url=" + url,
+                        "-Ddb.username=" + System.getProperty("bench.db.user", ""),
+                        "-Ddb.password=" + System.getProperty("bench.db.password", "")));
+                if (System.getProperty("bench.db.driver") != null) {
+                    command.add("-Ddb.driver=" + System.getProperty("bench.db.driver"));
+                }
+                if (mode.equals("appcds")) {
+                    command.add("-XX:+AutoCreateSharedArchive");
+                    command.add("-XX:SharedArchiveFile=" + archive);
+                }
+                command.addAll(List.of("Main", "--batch", "-c", "count"));
+
+                double[] toFirstQuery = new double[launches];
+                double[] wall = new double[launches];
+                for (int i = -1; i < launches; i++) {
+                    long started = System.nanoTime();
+                    Process process = new ProcessBuilder(command).redirectOutput(ProcessBuilder.Redirect.DISCARD).start();
+                    String stderr = new String(process.getErrorStream().readAllBytes(), StandardCharsets.UTF_8);
+                    if (process.waitFor() != 0) {
+                        throw new IllegalStateException("Startup run failed: " + stderr);
+                    }
+                    if (i < 0) {
+                        continue;
+                    }
+                    wall[i] = (System.nanoTime() - started) / 1e6;
+                    Matcher matcher = firstQuery.matcher(stderr);
+                    toFirstQuery[i] = matcher.find() ? Double.parseDouble(matcher.group(1)) : Double.NaN;
+                    if (i == 0) {
+                        console.print("  " + stderr.lines().filter(line -> line.startsWith("startup:")).findFirst().orElse("")
+                                + System.lineSeparator());
+                    }
+                }
+                recordMillis("Main.startup", Map.of("mode", mode, "until", "firstQuery"), toFirstQuery);
+                recordMillis("Main.startup", Map.of("mode", mode, "until", "exit"), wall);
+            }
+        } finally {
+            Files.deleteIfExists(archive);
+        }
+    }
+
+    private void recordMillis(String name, Map<String, String> params, double[] samples) {
+        double mean = 0;
+        for (double value : samples) {
+            mean += value / samples.length;
+        }
+        double variance = 0;
+        for (double value : samples) {
+            variance += (value - mean) * (value - mean) / Math.max(1, samples.length - 1);
+        }
+        record(new Result(name, params, "ss", mean, 3.29 * Math.sqrt(variance / samples.length), "ms",
+                Double.NaN, samples.length));
+    }
+
+    /**
+     * FastValidator against the regex rules: first a differential check over generated inputs
+     * (any disagreement fails the run), then one op = validating 10,000 import-like records,
+     * a quarter of them broken, record by record with the regexes, record by record with
+     * FastValidator, and in one validateAll call.
+     */
+    void runValidatorBenchmarks() throws Exception {
+        if (!filter.matcher("Validator").find()) {
+            return;
+        }
+        checkValidatorEquivalence(Integer.getInteger("bench.validator.cases", 1_000_000));
+
+        int count = 10_000;
+        String[] names = new String[count];
+        String[] emails = new String[count];
+        int[] ages = new int[count];
+        String[] courses = new String[count];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            Student student = randomStudent(i);
+            boolean broken = i % 4 == 0;
+            names[i] = broken && random.nextBoolean() ? student.getName() + "3" : student.getName();
+            emails[i] = broken && random.nextBoolean() ? student.getEmail().replace('@', '#') : student.getEmail();
+            ages[i] = broken && random.nextBoolean() ? 0 : student.getAge();
+            courses[i] = " " + student.getCourse() + " ";
+        }
+        int[] masks = new int[count];
+        Map<String, String> params = Map.of("records", String.valueOf(count));
+        measure("InputValidator.regex", params, () -> {
+            int invalid = 0;
+            for (int i = 0; i < count; i++) {
+                if (!InputValidator.isValidName(names[i]) || !InputValidator.isValidEmail(emails[i])
+                        || !InputValidator.isValidAge(ages[i]) || !InputValidator.isValidCourse(courses[i])) {
+                    invalid++;
+                }
+            }
+            sink = invalid;
+        });
+        measure("FastValidator.validate", params, () -> {
+            int invalid = 0;
+            for (int i = 0; i < count; i++) {
+                if (FastValidator.validate(names[i], emails[i], ages[i], courses[i]) != 0) {
+                    invalid++;
+                }
+            }
+            sink = invalid;
+        });
+        measure("FastValidator.validateAll", params,
+                () -> sink = FastValidator.validateAll(names, emails, ages, courses, count, masks));
+    }
+
+    // Random strings over the characters the rules care about, compared rule by rule
+    static void checkValidatorEquivalence(int cases) {
+        String alphabet = "aZ z@.+_-#3\t\n\r\u000B\f\u0085\u2028\u2029\u00e9\u0000~";
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        StringBuilder text = new StringBuilder(128);
+        for (int n = 0; n < cases; n++) {
+            text.setLength(0);
+            // Lengths cluster around the 2, 50 and 100 boundaries
+            int length = switch (random.nextInt(4)) {
+                case 0 -> random.nextInt(5);
+                case 1 -> 48 + random.nextInt(5);
+                case 2 -> 98 + random.nextInt(5);
+                default -> random.nextInt(110);
+            };
+            for (int i = 0; i < length; i++) {
+                text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            if (random.nextInt(8) == 0) {
+                text.appendCodePoint(0x1F600);
+            }
+            int age = random.nextInt(4) == 0 ? random.nextInt() : random.nextInt(-2, 152);
+            if (FastValidator.isValidAge(age) != InputValidator.isValidAge(age)) {
+                throw new IllegalStateException("FastValidator disagrees with InputValidator on age " + age);
+            }
+            checkSameVerdicts(text.toString());
+        }
+        for (String value : new String[]{null, "", "a@b", "@b", "a@", "a@b\n", "a@\n", "a@@b", "a.b@c@d",
+                "ab", "a", "A\tb", " ".repeat(50), "x".repeat(51), "  ab  ", " a ", "x".repeat(100), "x".repeat(101)}) {
+            checkSameVerdicts(value);
+        }
+    }
+
+    private static void checkSameVerdicts(String value) {
+        if (FastValidator.isValidName(value) != InputValidator.isValidName(value)
+                || FastValidator.isValidEmail(value) != InputValidator.isValidEmail(value)
+                || FastValidator.isValidCourse(value) != InputValidator.isValidCourse(value)) {
+            StringBuilder quoted = new StringBuilder();
+            StudentJson.appendString(quoted, value);
+            throw new IllegalStateException("FastValidator disagrees with InputValidator on " + quoted);
+        }
+    }
+
+    // Throughput of AsyncDatabaseManager lookups as the number of concurrent callers grows
+    void runAsyncScaling(DatabaseManager db, int firstId, int size) throws Exception {
+        if (!filter.matcher("AsyncDatabaseManager.getStudentById").find()) {
+            return;
+        }
+        try (AsyncDatabaseManager async = new AsyncDatabaseManager(db)) {
+            for (int callers : new int[]{1, 10, 100, 1_000, 10_000}) {
+                LongAdder completed = new LongAdder();
+                AtomicBoolean running = new AtomicBoolean(true);
+                List<Thread> threads = new ArrayList<>(callers);
+                for (int i = 0; i < callers; i++) {
+                    threads.add(Thread.ofVirtual().start(() -> {
+                        while (running.get()) {
+                            sink = async.getStudentById(randomId(firstId, size)).join();
+                            completed.increment();
+                        }
+                    }));
+                }
+
+                Thread.sleep(warmupMillis);
+                long before = completed.sum();
+                long started = System.nanoTime();
+                Thread.sleep((long) measureMillis * iterations);
+                double opsPerSecond = (completed.sum() - before) * 1e9 / (System.nanoTime() - started);
+                running.set(false);
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+
+                record(new Result("AsyncDatabaseManager.getStudentById",
+                        Map.of("rows", String.valueOf(size), "callers", String.valueOf(callers)),
+                        "thrpt", opsPerSecond, 0.0, "ops/s", Double.NaN, 1));
+            }
+        }
+    }
+
+    // Operations per second with threads platform threads running op back to back
+    void measureThroughput(String name, Map<String, String> params, int threads, Op op) throws Exception {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+        LongAdder completed = new LongAdder();
+        AtomicBoolean running = new AtomicBoolean(true);
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                try {
+                    while (running.get()) {
+                        op.run();
+                        completed.increment();
+                    }
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }));
+        }
+
+        Thread.sleep(warmupMillis);
+        long before = completed.sum();
+        long started = System.nanoTime();
+        Thread.sleep((long) measureMillis * iterations);
+        double opsPerSecond = (completed.sum() - before) * 1e9 / (System.nanoTime() - started);
+        running.set(false);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        record(new Result(name, params, "thrpt", opsPerSecond, 0.0, "ops/s", Double.NaN, 1));
+    }
+
+    void measure(String name, Map<String, String> params, Op op) throws Exception {
+        if (!filter.matcher(name).find()) {
+            return;
+        }
+
+        runFor(op, warmupMillis);
+
+        double[] nanosPerOp = new double[iterations];
+        double bytesPerOp = 0;
+        for (int i = 0; i < iterations; i++) {
+            long allocatedBefore = allocatedBytes();
+            long ops = 0;
+            long started = System.nanoTime();
+            long deadline = started + measureMillis * 1_000_000L;
+            long now;
+            do {
+                op.run();
+                ops++;
+                now = System.nanoTime();
+            } while (now < deadline);
+            nanosPerOp[i] = (double) (now - started) / ops;
+            bytesPerOp += (double) (allocatedBytes() - allocatedBefore) / ops / iterations;
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOp) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : nanosPerOp) {
+            variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+        }
+        double error = 3.29 * Math.sqrt(variance / iterations);
+
+        record(new Result(name, params, "avgt", mean, error, "ns/op", bytesPerOp, iterations));
+    }
+
+    private void record(Result result) {
+        results.add(result);
+        console.printf("%-45s %-35s %14.1f +- %-10.1f %-6s %10.1f B/op%n", result.benchmark(), result.params(),
+                result.score(), result.scoreError(), result.unit(), result.bytesPerOp());
+    }
+
+    private static void runFor(Op op, long millis) throws Exception {
+        long deadline = System.nanoTime() + millis * 1_000_000L;
+        while (System.nanoTime() < deadline) {
+            op.run();
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+
+    static DatabaseManager openDatabase(String url, int statementCacheSize) throws SQLException {
+        return openDatabase(url, statementCacheSize, new DatabaseMetrics(true));
+    }
+
+    static DatabaseManager openDatabase(String url, int statementCacheSize, DatabaseMetrics metrics) throws SQLException {
+        Properties info = new Properties();
+        info.setProperty("user", System.getProperty("bench.db.user", ""));
+        info.setProperty("password", System.getProperty("bench.db.password", ""));
+        ConnectionPool.Settings defaults = ConnectionPool.Settings.fromConfig();
+        ConnectionPool.Settings settings = new ConnectionPool.Settings(defaults.maxSize(), defaults.minIdle(),
+                defaults.acquireTimeoutMillis(), defaults.idleTimeoutMillis(), defaults.maxLifetimeMillis(),
+                defaults.validationTimeoutSeconds(), defaults.housekeepingIntervalMillis(), statementCacheSize);
+        return new DatabaseManager(new ConnectionPool(url, info, settings), metrics);
+    }
+
+    // Replaces the table contents with size generated rows and returns the first id assigned
+    static int seed(String url, DatabaseManager db, int size) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url,
+                System.getProperty("bench.db.user", ""), System.getProperty("bench.db.password", ""));
+             Statement stmt = connection.createStatement()) {
+            stmt.execute("DELETE FROM students");
+        }
+
+        int firstId = 0;
+        List<Student> batch = new ArrayList<>(10_000);
+        for (int i = 0; i < size; i++) {
+            batch.add(randomStudent(i));
+            if (batch.size() == 10_000 || i == size - 1) {
+                db.addStudents(batch);
+                if (firstId == 0) {
+                    firstId = batch.get(0).getId();
+                }
+                batch.clear();
+            }
+        }
+        return firstId;
+    }
+
+    static Student randomStudent(int n) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String name = NAMES[n % NAMES.length];
+        return new Student(name, "student" + n + "@example.lk", 18 + random.nextInt(30),
+                COURSES[random.nextInt(COURSES.length)]);
+    }
+
+    private static int randomId(int firstId, int size) {
+        return firstId + ThreadLocalRandom.current().nextInt(size);
+    }
+
+    String toJson() {
+        StringBuilder sb = new StringBuilder("[\n");
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append("  {\"benchmark\":");
+            StudentJson.appendString(sb, r.benchmark());
+            sb.append(",\"mode\":");
+            StudentJson.appendString(sb, r.mode());
+            sb.append(",\"params\":{");
+            int p = 0;
+            for (Map.Entry<String, String> param : new TreeMap<>(r.params()).entrySet()) {
+                if (p++ > 0) {
+                    sb.append(',');
+                }
+                StudentJson.appendString(sb, param.getKey());
+                sb.append(':');
+                StudentJson.appendString(sb, param.getValue());
+            }
+            sb.append("},\"primaryMetric\":{\"score\":").append(r.score())
+                    .append(",\"scoreError\":").append(r.scoreError())
+                    .append(",\"scoreUnit\":");
+            StudentJson.appendString(sb, r.unit());
+            sb.append("},\"secondaryMetrics\":{\"bytesPerOp\":")
+                    .append(Double.isNaN(r.bytesPerOp()) ? "null" : String.valueOf(r.bytesPerOp()))
+                    .append("},\"iterations\":").append(r.iterations()).append('}');
+            sb.append(i + 1 < results.size() ? ",\n" : "\n");
+        }
+        return sb.append("]\n").toString();
+    }
+}
@@ -0,0 +1,126 @@
+// AsyncDatabaseManager.java - CompletableFuture facade over DatabaseManager on virtual threads
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+class AsyncDatabaseManager implements AutoCloseable {
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    private final DatabaseManager dbManager;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int maxInFlight;
+    private final long defaultTimeoutMillis;
+
+    public AsyncDatabaseManager(DatabaseManager dbManager) {
+        this(dbManager, dbManager.getMaxConnections(), DatabaseConfig.getAsyncTimeoutMillis());
+    }
+
+    /**
+     * @param maxInFlight calls allowed to run at once; extra callers park cheaply on a semaphore
+     *                    instead of piling up on the connection pool's acquire timeout
+     */
+    AsyncDatabaseManager(DatabaseManager dbManager, int maxInFlight, long defaultTimeoutMillis) {
+        this.dbManager = dbManager;
+        this.permits = new Semaphore(maxInFlight, true);
+        this.maxInFlight = maxInFlight;
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+    }
+
+    public CompletableFuture<Boolean> addStudent(Student student) {
+        return submit(() -> dbManager.addStudent(student), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Student> getStudentById(int id) {
+        return getStudentById(id, defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Student> getStudentById(int id, long timeoutMillis) {
+        return submit(() -> dbManager.getStudentById(id), timeoutMillis);
+    }
+
+    public CompletableFuture<List<Student>> getAllStudents() {
+        return submit(dbManager::getAllStudents, defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> updateStudent(Student student) {
+        return submit(() -> dbManager.updateStudent(student), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> deleteStudent(int id) {
+        return submit(() -> dbManager.deleteStudent(id), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<List<Student>> searchStudentsByName(String name) {
+        return searchStudentsByName(name, defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<List<Student>> searchStudentsByName(String name, long timeoutMillis) {
+        return submit(() -> dbManager.searchStudentsByName(name), timeoutMillis);
+    }
+
+    public int getInFlight() {
+        return maxInFlight - permits.availablePermits();
+    }
+
+    public int getWaiting() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Runs the call on its own virtual thread. Cancelling the future, or hitting the timeout
+     * (0 = none), interrupts the thread: queued calls never reach the database and pool waits
+     * are abandoned, but a statement already executing runs to completion on the server.
+     */
+    private <T> CompletableFuture<T> submit(SqlCall<T> call, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // The caller's reads and writes share one read-your-writes session whichever thread runs them
+        ReadSession session = ReadSession.current();
+
+        Future<?> task = executor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                result.completeExceptionally(new CancellationException("Cancelled while waiting for a connection slot"));
+                return;
+            }
+            ReadSession.Scope scope = session.enter();
+            try {
+                if (!result.isDone()) {
+                    result.complete(call.call());
+                }
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            } finally {
+                scope.close();
+                permits.release();
+            }
+        });
+
+        result.whenComplete((value, error) -> {
+            if (error instanceof CancellationException || error instanceof TimeoutException) {
+                task.cancel(true);
+            }
+        });
+        if (timeoutMillis > 0) {
+            result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return result;
+    }
+
+    // Stops accepting calls and waits for in-flight ones; the DatabaseManager stays open
+    @Override
+    public void close() {
+        executor.close();
+    }
+}
@@ -0,0 +1,39 @@
+// BatchResult.java - Outcome of a batched insert/update/delete
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+class BatchResult {
+    // index is the position of the failed row in the submitted collection/array
+    record Failure(int index, SQLException error) {}
+
+    private final int submitted;
+    private int succeeded;
+    private final List<Integer> unmatched = new ArrayList<>();
+    private final List<Failure> failures = new ArrayList<>();
+
+    BatchResult(int submitted) {
+        this.submitted = submitted;
+    }
+
+    void recordSuccess() { succeeded++; }
+    void recordUnmatched(int index) { unmatched.add(index); }
+    void recordFailure(int index, SQLException error) { failures.add(new Failure(index, error)); }
+
+    public int getSubmitted() { return submitted; }
+    public int getSucceeded() { return succeeded; }
+
+    // Rows that ran without error but matched nothing (e.g. updating a deleted id)
+    public int getUnmatched() { return unmatched.size(); }
+    public List<Integer> getUnmatchedRows() { return Collections.unmodifiableList(unmatched); }
+
+    public List<Failure> getFailures() { return Collections.unmodifiableList(failures); }
+    public boolean hasFailures() { return !failures.isEmpty(); }
+
+    @Override
+    public String toString() {
+        return String.format("BatchResult{submitted=%d, succeeded=%d, unmatched=%d, failed=%d}",
+                submitted, succeeded, unmatched.size(), failures.size());
+    }
+}
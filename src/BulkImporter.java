@@ -0,0 +1,435 @@
+// BulkImporter.java - Streaming CSV / JSON-lines import with parallel validation
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+class BulkImporter {
+    private static final int LINES_PER_CHUNK = 1000;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+    private static final String[] CSV_COLUMNS = {"name", "email", "age", "course"};
+
+    enum Format { CSV, JSON_LINES }
+
+    // imported/rejected include rows from earlier runs when resuming; rowsPerSecond covers this run only
+    record Summary(long linesRead, long imported, long rejected, long elapsedMillis, double rowsPerSecond) {}
+
+    private record RawLine(long lineNumber, String text) {}
+
+    private record Chunk(List<RawLine> lines, long endOffset, long endLine) {}
+
+    private record Reject(long lineNumber, String reason, String text) {}
+
+    private record ValidatedChunk(List<Student> valid, long[] validLines, List<Reject> rejects,
+                                  long endOffset, long endLine) {}
+
+    private final StudentStore store;
+    private final PrintStream out;
+    private final int validatorThreads;
+
+    public BulkImporter(StudentStore store, PrintStream out) {
+        this.store = store;
+        this.out = out;
+        this.validatorThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    public static Format detectFormat(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".csv") ? Format.CSV : Format.JSON_LINES;
+    }
+
+    public static Path rejectsFile(Path file) { return file.resolveSibling(file.getFileName() + ".rejects"); }
+    public static Path checkpointFile(Path file) { return file.resolveSibling(file.getFileName() + ".checkpoint"); }
+
+    /**
+     * Streams the file through validation into batched inserts. With resume set, the import
+     * continues from the last checkpointed byte offset; rows committed just before a crash
+     * but after the last checkpoint come back as duplicate-email rejects.
+     */
+    public Summary importFile(Path file, boolean resume) throws IOException, SQLException {
+        Format format = detectFormat(file);
+        Path checkpoint = checkpointFile(file);
+
+        long startOffset = 0;
+        long startLine = 0;
+        long imported = 0;
+        long rejected = 0;
+        if (resume && Files.exists(checkpoint)) {
+            Properties saved = new Properties();
+            try (var in = Files.newInputStream(checkpoint)) {
+                saved.load(in);
+            }
+            startOffset = Long.parseLong(saved.getProperty("offset", "0"));
+            startLine = Long.parseLong(saved.getProperty("line", "0"));
+            imported = Long.parseLong(saved.getProperty("imported", "0"));
+            rejected = Long.parseLong(saved.getProperty("rejected", "0"));
+            out.printf("Resuming %s from line %d (byte offset %d)%n", file, startLine + 1, startOffset);
+        }
+
+        ExecutorService validators = Executors.newFixedThreadPool(validatorThreads, r -> {
+            Thread thread = new Thread(r, "import-validator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Chunks are queued in file order; the bound keeps memory constant and throttles the reader
+        BlockingQueue<Future<ValidatedChunk>> pending = new ArrayBlockingQueue<>(validatorThreads * 2);
+        Future<ValidatedChunk> endOfInput = CompletableFuture.completedFuture(null);
+
+        long started = System.nanoTime();
+        long lastProgress = started;
+        long importedAtStart = imported;
+        long linesRead = startLine;
+        StandardOpenOption rejectMode = startOffset > 0 ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile(file), StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.WRITE, rejectMode)) {
+
+            LineReader lines = new LineReader(channel);
+            int[] columns = format == Format.CSV ? readCsvHeader(lines) : null;
+            if (startOffset > 0) {
+                lines.seek(startOffset, startLine);
+            }
+
+            Thread reader = new Thread(() -> readChunks(lines, format, columns, validators, pending, endOfInput),
+                    "import-reader");
+            reader.setDaemon(true);
+            reader.start();
+
+            try {
+                while (true) {
+                    ValidatedChunk chunk = awaitChunk(pending.take());
+                    if (chunk == null) {
+                        break;
+                    }
+
+                    long chunkRejected = chunk.rejects().size();
+                    for (Reject reject : chunk.rejects()) {
+                        writeReject(rejects, reject);
+                    }
+
+                    if (!chunk.valid().isEmpty()) {
+                        BatchResult result = store.addStudents(chunk.valid());
+                        for (BatchResult.Failure failure : result.getFailures()) {
+                            Student student = chunk.valid().get(failure.index());
+                            writeReject(rejects, new Reject(chunk.validLines()[failure.index()],
+                                    describe(failure.error()), student.getEmail()));
+                        }
+                        chunkRejected += result.getFailures().size();
+                        imported += result.getSucceeded();
+                    }
+                    rejected += chunkRejected;
+                    linesRead = chunk.endLine();
+
+                    rejects.flush();
+                    saveCheckpoint(checkpoint, chunk.endOffset(), chunk.endLine(), imported, rejected);
+
+                    long now = System.nanoTime();
+                    if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                        lastProgress = now;
+                        out.printf("  ... line %d: %d imported, %d rejected (%.0f rows/s)%n",
+                                linesRead, imported, rejected, (imported - importedAtStart) * 1e9 / (now - started));
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Import interrupted", e);
+            } finally {
+                reader.interrupt();
+                validators.shutdownNow();
+            }
+        }
+
+        Files.deleteIfExists(checkpoint);
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+        return new Summary(linesRead, imported, rejected, elapsedNanos / 1_000_000,
+                (imported - importedAtStart) * 1e9 / elapsedNanos);
+    }
+
+    public void report(Path file, Summary summary) {
+        out.printf("Imported %d students from %s (%d rejected) in %.1fs, %.0f rows/s%n",
+                summary.imported(), file, summary.rejected(), summary.elapsedMillis() / 1000.0,
+                summary.rowsPerSecond());
+        if (summary.rejected() > 0) {
+            out.println("Rejected rows were written to " + rejectsFile(file));
+        }
+    }
+
+    private void readChunks(LineReader lines, Format format, int[] columns, ExecutorService validators,
+                            BlockingQueue<Future<ValidatedChunk>> pending, Future<ValidatedChunk> endOfInput) {
+        try {
+            while (true) {
+                List<RawLine> batch = new ArrayList<>(LINES_PER_CHUNK);
+                String text;
+                while (batch.size() < LINES_PER_CHUNK && (text = lines.readLine()) != null) {
+                    if (!text.isBlank()) {
+                        batch.add(new RawLine(lines.getLineNumber(), text));
+                    }
+                }
+                if (batch.isEmpty() && lines.isAtEnd()) {
+                    break;
+                }
+                Chunk chunk = new Chunk(batch, lines.getOffset(), lines.getLineNumber());
+                pending.put(validators.submit(() -> validate(chunk, format, columns)));
+            }
+            pending.put(endOfInput);
+        } catch (IOException e) {
+            postFailure(pending, e);
+        } catch (InterruptedException | RejectedExecutionException e) {
+            // The consumer gave up; nothing left to do
+        } catch (RuntimeException e) {
+            postFailure(pending, new IOException("Reading the import file failed", e));
+        }
+    }
+
+    // Waits for room like any chunk, so the consumer always gets a terminal entry unless it already gave up
+    private static void postFailure(BlockingQueue<Future<ValidatedChunk>> pending, IOException error) {
+        try {
+            pending.put(CompletableFuture.failedFuture(error));
+        } catch (InterruptedException e) {
+            // The consumer stopped waiting and interrupted this thread
+        }
+    }
+
+    // Parses the chunk into columns, then validates them in one FastValidator.validateAll pass
+    private ValidatedChunk validate(Chunk chunk, Format format, int[] columns) {
+        int size = chunk.lines().size();
+        String[] names = new String[size];
+        String[] emails = new String[size];
+        int[] ages = new int[size];
+        String[] courses = new String[size];
+        RawLine[] parsed = new RawLine[size];
+        List<Reject> rejects = new ArrayList<>();
+
+        int count = 0;
+        for (RawLine line : chunk.lines()) {
+            try {
+                if (format == Format.CSV) {
+                    String[] values = parseCsvLine(line.text());
+                    names[count] = column(values, columns[0]);
+                    emails[count] = column(values, columns[1]);
+                    ages[count] = parseAge(column(values, columns[2]));
+                    courses[count] = column(values, columns[3]);
+                } else {
+                    Map<String, String> fields = StudentJson.parseObject(line.text());
+                    names[count] = fields.get("name");
+                    emails[count] = fields.get("email");
+                    ages[count] = parseAge(fields.get("age"));
+                    courses[count] = fields.get("course");
+                }
+            } catch (IllegalArgumentException e) {
+                rejects.add(new Reject(line.lineNumber(), "malformed record: " + e.getMessage(), line.text()));
+                continue;
+            }
+            parsed[count++] = line;
+        }
+
+        int[] failures = new int[count];
+        int invalid = FastValidator.validateAll(names, emails, ages, courses, count, failures);
+
+        List<Student> valid = new ArrayList<>(count - invalid);
+        long[] validLines = new long[count - invalid];
+        for (int i = 0; i < count; i++) {
+            if (failures[i] != 0) {
+                rejects.add(new Reject(parsed[i].lineNumber(), FastValidator.describe(failures[i]), parsed[i].text()));
+            } else {
+                validLines[valid.size()] = parsed[i].lineNumber();
+                valid.add(new Student(names[i].trim(), emails[i].trim().toLowerCase(), ages[i], courses[i].trim()));
+            }
+        }
+        if (!rejects.isEmpty()) {
+            rejects.sort(Comparator.comparingLong(Reject::lineNumber));
+        }
+        return new ValidatedChunk(valid, validLines, rejects, chunk.endOffset(), chunk.endLine());
+    }
+
+    private ValidatedChunk awaitChunk(Future<ValidatedChunk> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Validation failed", e.getCause());
+        }
+    }
+
+    // Maps header names to positions; files without a header use name,email,age,course order
+    private int[] readCsvHeader(LineReader lines) throws IOException {
+        long offset = lines.getOffset();
+        String first = lines.readLine();
+        int[] positions = {0, 1, 2, 3};
+        if (first == null) {
+            return positions;
+        }
+
+        List<String> header = Arrays.stream(parseCsvLine(first))
+                .map(h -> h.trim().toLowerCase(Locale.ROOT))
+                .toList();
+        if (!header.contains("name") || !header.contains("email")) {
+            lines.seek(offset, 0);
+            return positions;
+        }
+        for (int i = 0; i < CSV_COLUMNS.length; i++) {
+            positions[i] = header.indexOf(CSV_COLUMNS[i]);
+        }
+        return positions;
+    }
+
+    private static int parseAge(String ageText) {
+        try {
+            return ageText == null ? -1 : Integer.parseInt(ageText.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String column(String[] values, int index) {
+        return index >= 0 && index < values.length ? values[index] : null;
+    }
+
+    // RFC 4180 style fields; quoted fields may contain commas and doubled quotes but not newlines
+    static String[] parseCsvLine(String line) {
+        List<String> values = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                values.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("unterminated quoted field");
+        }
+        values.add(field.toString());
+        return values.toArray(new String[0]);
+    }
+
+    private static void writeReject(Writer rejects, Reject reject) throws IOException {
+        rejects.write("line " + reject.lineNumber() + ": " + reject.reason() + ": " + reject.text());
+        rejects.write(System.lineSeparator());
+    }
+
+    private static String describe(SQLException e) {
+        return switch (e.getErrorCode()) {
+            case 1062 -> "Duplicate entry - Email already exists";
+            case 1406 -> "Data too long for column";
+            default -> "database error: " + e.getMessage();
+        };
+    }
+
+    private static void saveCheckpoint(Path checkpoint, long offset, long line, long imported, long rejected)
+            throws IOException {
+        Properties state = new Properties();
+        state.setProperty("offset", String.valueOf(offset));
+        state.setProperty("line", String.valueOf(line));
+        state.setProperty("imported", String.valueOf(imported));
+        state.setProperty("rejected", String.valueOf(rejected));
+
+        Path tmp = checkpoint.resolveSibling(checkpoint.getFileName() + ".tmp");
+        try (var outStream = Files.newOutputStream(tmp)) {
+            state.store(outStream, "Bulk import checkpoint");
+        }
+        Files.move(tmp, checkpoint, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // UTF-8 line reader over a FileChannel that tracks the byte offset of the next line
+    private static final class LineReader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        private byte[] line = new byte[256];
+        private long offset;
+        private long lineNumber;
+        private boolean atEnd;
+
+        LineReader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        long getOffset() { return offset; }
+        long getLineNumber() { return lineNumber; }
+        boolean isAtEnd() { return atEnd; }
+
+        void seek(long newOffset, long newLineNumber) throws IOException {
+            channel.position(newOffset);
+            buffer.clear().flip();
+            offset = newOffset;
+            lineNumber = newLineNumber;
+            atEnd = false;
+        }
+
+        String readLine() throws IOException {
+            int length = 0;
+            while (true) {
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                    int read = channel.read(buffer);
+                    buffer.flip();
+                    if (read <= 0) {
+                        atEnd = true;
+                        if (length == 0) {
+                            return null;
+                        }
+                        break;
+                    }
+                }
+                byte b = buffer.get();
+                offset++;
+                if (b == '\n') {
+                    break;
+                }
+                if (length == line.length) {
+                    line = Arrays.copyOf(line, length * 2);
+                }
+                line[length++] = b;
+            }
+            lineNumber++;
+            if (length > 0 && line[length - 1] == '\r') {
+                length--;
+            }
+            return new String(line, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,333 @@
+// CommandMode.java - Non-interactive command runner with batched writes and JSON-lines output
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Runs one command per line with no prompts:
+ *
+ *   add <name> <email> <age> <course>
+ *   update <id> <name> <email> <age> <course>
+ *   delete <id>
+ *   get <id>
+ *   search <name fragment>
+ *   count
+ *   flush
+ *
+ * Arguments are separated by whitespace; double quotes group words ("Jane Doe") and accept \"
+ * and \\ escapes. Blank lines and lines starting with # are skipped.
+ *
+ * Consecutive adds, updates or deletes are queued and sent as one addStudents/updateStudents/
+ * deleteStudents batch, which commits every db.batch.size rows. The queue is flushed when the
+ * command kind changes, before every read, when it reaches db.batch.size, and whenever the
+ * input has nothing more buffered, so reads always see earlier writes and a caller feeding
+ * commands one at a time gets each answer straight away. Every command produces exactly one
+ * JSON object on its own line, in input order.
+ */
+class CommandMode {
+    record Summary(long commands, long failed, long elapsedMillis, double commandsPerSecond) {}
+
+    private enum Kind { ADD, UPDATE, DELETE }
+
+    // A queued write; student is null for deletes
+    private record Pending(long lineNumber, Student student, int id) {}
+
+    private final DatabaseManager dbManager;
+    private final Writer out;
+    private final int maxPending;
+    private final StringBuilder line = new StringBuilder(256);
+    private final List<Pending> pending = new ArrayList<>();
+    private Kind pendingKind;
+    private long commands;
+    private long failed;
+
+    public CommandMode(DatabaseManager dbManager, Writer out) {
+        this.dbManager = dbManager;
+        this.out = out;
+        this.maxPending = Math.max(1, DatabaseConfig.getBatchSize());
+    }
+
+    public Summary run(BufferedReader in) throws IOException {
+        long started = System.nanoTime();
+        long lineNumber = 0;
+        String text;
+        while ((text = in.readLine()) != null) {
+            lineNumber++;
+            String trimmed = text.strip();
+            if (!trimmed.isEmpty() && trimmed.charAt(0) != '#') {
+                execute(lineNumber, trimmed);
+            }
+            if (!in.ready()) {
+                flush();
+                out.flush();
+            }
+        }
+        flush();
+        out.flush();
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+        return new Summary(commands, failed, elapsedNanos / 1_000_000, commands * 1e9 / elapsedNanos);
+    }
+
+    public void report(Summary summary, PrintStream err) {
+        err.printf("Ran %d commands (%d failed) in %.1fs, %.0f commands/s%n", summary.commands(),
+                summary.failed(), summary.elapsedMillis() / 1000.0, summary.commandsPerSecond());
+    }
+
+    private void execute(long lineNumber, String text) throws IOException {
+        commands++;
+        List<String> args;
+        try {
+            args = tokenize(text);
+        } catch (IllegalArgumentException e) {
+            flush();
+            fail(lineNumber, null, e.getMessage());
+            return;
+        }
+
+        String op = args.get(0).toLowerCase(Locale.ROOT);
+        try {
+            switch (op) {
+                case "add" -> {
+                    expectArgs(args, 5, "add <name> <email> <age> <course>");
+                    Student student = parseStudent(args, 1);
+                    enqueue(Kind.ADD, new Pending(lineNumber, student, 0));
+                }
+                case "update" -> {
+                    expectArgs(args, 6, "update <id> <name> <email> <age> <course>");
+                    Student student = parseStudent(args, 2);
+                    student.setId(parseId(args.get(1)));
+                    enqueue(Kind.UPDATE, new Pending(lineNumber, student, student.getId()));
+                }
+                case "delete" -> {
+                    expectArgs(args, 2, "delete <id>");
+                    enqueue(Kind.DELETE, new Pending(lineNumber, null, parseId(args.get(1))));
+                }
+                case "get" -> {
+                    expectArgs(args, 2, "get <id>");
+                    int id = parseId(args.get(1));
+                    flush();
+                    Student student = dbManager.getStudentById(id);
+                    if (student == null) {
+                        fail(lineNumber, op, "Student not found");
+                    } else {
+                        begin(lineNumber, op, true);
+                        line.append(",\"student\":");
+                        StudentJson.appendTo(line, student);
+                        end();
+                    }
+                }
+                case "search" -> {
+                    if (args.size() < 2) {
+                        throw new IllegalArgumentException("usage: search <name fragment>");
+                    }
+                    String term = String.join(" ", args.subList(1, args.size()));
+                    flush();
+                    List<Student> students = dbManager.searchStudentsByName(term);
+                    begin(lineNumber, op, true);
+                    line.append(",\"count\":").append(students.size()).append(",\"students\":[");
+                    for (int i = 0; i < students.size(); i++) {
+                        if (i > 0) {
+                            line.append(',');
+                        }
+                        StudentJson.appendTo(line, students.get(i));
+                    }
+                    line.append(']');
+                    end();
+                }
+                case "count" -> {
+                    flush();
+                    int count = dbManager.countStudents();
+                    begin(lineNumber, op, true);
+                    line.append(",\"count\":").append(count);
+                    end();
+                }
+                case "flush" -> {
+                    flush();
+                    begin(lineNumber, op, true);
+                    end();
+                }
+                default -> {
+                    flush();
+                    fail(lineNumber, op, "Unknown command");
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            flush();
+            fail(lineNumber, op, e.getMessage());
+        } catch (SQLException e) {
+            fail(lineNumber, op, e);
+        }
+    }
+
+    private void enqueue(Kind kind, Pending write) throws IOException {
+        if (pendingKind != kind) {
+            flush();
+            pendingKind = kind;
+        }
+        pending.add(write);
+        if (pending.size() >= maxPending) {
+            flush();
+        }
+    }
+
+    // Sends the queued writes as one batch and writes their results in the order they were read
+    private void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        String op = pendingKind.name().toLowerCase(Locale.ROOT);
+        BatchResult result;
+        try {
+            result = switch (pendingKind) {
+                case ADD, UPDATE -> {
+                    List<Student> students = new ArrayList<>(pending.size());
+                    for (Pending write : pending) {
+                        students.add(write.student());
+                    }
+                    yield pendingKind == Kind.ADD ? dbManager.addStudents(students) : dbManager.updateStudents(students);
+                }
+                case DELETE -> {
+                    int[] ids = new int[pending.size()];
+                    for (int i = 0; i < ids.length; i++) {
+                        ids[i] = pending.get(i).id();
+                    }
+                    yield dbManager.deleteStudents(ids);
+                }
+            };
+        } catch (SQLException e) {
+            for (Pending write : pending) {
+                fail(write.lineNumber(), op, e);
+            }
+            pending.clear();
+            return;
+        }
+
+        SQLException[] errors = new SQLException[pending.size()];
+        for (BatchResult.Failure failure : result.getFailures()) {
+            errors[failure.index()] = failure.error();
+        }
+        boolean[] unmatched = new boolean[pending.size()];
+        for (int index : result.getUnmatchedRows()) {
+            unmatched[index] = true;
+        }
+
+        for (int i = 0; i < pending.size(); i++) {
+            Pending write = pending.get(i);
+            if (errors[i] != null) {
+                fail(write.lineNumber(), op, errors[i]);
+            } else if (unmatched[i]) {
+                fail(write.lineNumber(), op, "Student not found");
+            } else {
+                begin(write.lineNumber(), op, true);
+                line.append(",\"id\":").append(pendingKind == Kind.ADD ? write.student().getId() : write.id());
+                end();
+            }
+        }
+        pending.clear();
+    }
+
+    private static void expectArgs(List<String> args, int count, String usage) {
+        if (args.size() != count) {
+            throw new IllegalArgumentException("usage: " + usage);
+        }
+    }
+
+    // Same rules and normalisation as the interactive menu and the bulk importer
+    private static Student parseStudent(List<String> args, int from) {
+        String name = args.get(from);
+        String email = args.get(from + 1);
+        int age;
+        try {
+            age = Integer.parseInt(args.get(from + 2));
+        } catch (NumberFormatException e) {
+            age = -1;
+        }
+        String course = args.get(from + 3);
+
+        String problem = InputValidator.describeInvalid(name, email, age, course);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        return new Student(name.trim(), email.trim().toLowerCase(), age, course.trim());
+    }
+
+    private static int parseId(String text) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid id: " + text);
+        }
+    }
+
+    // Whitespace-separated words; "double quoted" words may contain spaces and \" or \\ escapes
+    static List<String> tokenize(String text) {
+        List<String> args = new ArrayList<>(6);
+        StringBuilder word = new StringBuilder();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            word.setLength(0);
+            if (c == '"') {
+                i++;
+                while (true) {
+                    if (i >= text.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted argument");
+                    }
+                    c = text.charAt(i++);
+                    if (c == '"') {
+                        break;
+                    }
+                    if (c == '\\' && i < text.length()) {
+                        c = text.charAt(i++);
+                    }
+                    word.append(c);
+                }
+            } else {
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))) {
+                    word.append(text.charAt(i++));
+                }
+            }
+            args.add(word.toString());
+        }
+        return args;
+    }
+
+    private void begin(long lineNumber, String op, boolean ok) {
+        line.setLength(0);
+        line.append("{\"line\":").append(lineNumber).append(",\"op\":");
+        StudentJson.appendString(line, op);
+        line.append(",\"ok\":").append(ok);
+    }
+
+    private void end() throws IOException {
+        line.append("}\n");
+        out.append(line);
+    }
+
+    private void fail(long lineNumber, String op, String message) throws IOException {
+        failed++;
+        begin(lineNumber, op, false);
+        line.append(",\"error\":");
+        StudentJson.appendString(line, message);
+        end();
+    }
+
+    private void fail(long lineNumber, String op, SQLException e) throws IOException {
+        failed++;
+        begin(lineNumber, op, false);
+        line.append(",\"error\":");
+        StudentJson.appendString(line, e.getErrorCode() == 1062 ? "Duplicate entry - Email already exists" : e.getMessage());
+        line.append(",\"code\":").append(e.getErrorCode());
+        end();
+    }
+}
@@ -0,0 +1,311 @@
+// ConnectionPool.java - Bounded JDBC connection pool
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+class ConnectionPool implements AutoCloseable {
+    // Connections used this recently are handed out without a validation round trip
+    private static final long VALIDATION_BYPASS_MILLIS = 500;
+
+    record Settings(int maxSize, int minIdle, long acquireTimeoutMillis, long idleTimeoutMillis,
+                    long maxLifetimeMillis, int validationTimeoutSeconds, long housekeepingIntervalMillis,
+                    int statementCacheSize) {
+
+        static Settings fromConfig() {
+            return new Settings(
+                    DatabaseConfig.getPoolMaxSize(),
+                    DatabaseConfig.getPoolMinIdle(),
+                    DatabaseConfig.getPoolAcquireTimeoutMillis(),
+                    DatabaseConfig.getPoolIdleTimeoutMillis(),
+                    DatabaseConfig.getPoolMaxLifetimeMillis(),
+                    DatabaseConfig.getPoolValidationTimeoutSeconds(),
+                    DatabaseConfig.getPoolHousekeepingIntervalMillis(),
+                    DatabaseConfig.getStatementCacheSize()
+            );
+        }
+    }
+
+    record Stats(int total, int active, int idle, int waiting, long created, long destroyed,
+                 long borrowed, long timeouts, long validationFailures,
+                 long statementCacheHits, long statementCacheMisses, long statementCacheEvictions) {
+
+        @Override
+        public String toString() {
+            return String.format("total=%d, active=%d, idle=%d, waiting=%d, created=%d, destroyed=%d, "
+                            + "borrowed=%d, timeouts=%d, validationFailures=%d, "
+                            + "statementCacheHits=%d, statementCacheMisses=%d, statementCacheEvictions=%d",
+                    total, active, idle, waiting, created, destroyed, borrowed, timeouts, validationFailures,
+                    statementCacheHits, statementCacheMisses, statementCacheEvictions);
+        }
+    }
+
+    private final String url;
+    private final Properties connectionProperties;
+    private final Settings settings;
+
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService housekeeper;
+    private volatile boolean closed;
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final LongAdder created = new LongAdder();
+    private final LongAdder destroyed = new LongAdder();
+    private final LongAdder borrowed = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder validationFailures = new LongAdder();
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+    public ConnectionPool(String url, Properties connectionProperties, Settings settings) {
+        if (settings.maxSize() < 1) {
+            throw new IllegalArgumentException("Pool max size must be at least 1");
+        }
+        this.url = url;
+        this.connectionProperties = connectionProperties;
+        this.settings = settings;
+        this.permits = new Semaphore(settings.maxSize(), true);
+
+        this.housekeeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        housekeeper.scheduleWithFixedDelay(this::housekeep,
+                settings.housekeepingIntervalMillis(), settings.housekeepingIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public PooledConnection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(settings.acquireTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                timeouts.increment();
+                throw new SQLTransientConnectionException("Timed out after " + settings.acquireTimeoutMillis()
+                        + "ms waiting for a database connection (" + stats() + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", e);
+        }
+
+        try {
+            while (true) {
+                PooledConnection pooled = pollIdle();
+                if (pooled == null) {
+                    pooled = open();
+                } else if (isExpired(pooled, System.currentTimeMillis()) || !isAlive(pooled)) {
+                    destroy(pooled);
+                    continue;
+                }
+
+                pooled.markBorrowed();
+                activeConnections.incrementAndGet();
+                borrowed.increment();
+                return pooled;
+            }
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    void release(PooledConnection pooled) {
+        if (!pooled.markReturned()) {
+            return;
+        }
+
+        boolean discard = closed || isExpired(pooled, pooled.getLastUsedAt());
+        if (!discard) {
+            try {
+                Connection connection = pooled.getConnection();
+                if (connection.isClosed()) {
+                    discard = true;
+                } else if (!connection.getAutoCommit()) {
+                    // Never leak an open transaction to the next borrower
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+            } catch (SQLException e) {
+                discard = true;
+            }
+        }
+
+        activeConnections.decrementAndGet();
+        if (discard) {
+            destroy(pooled);
+        } else {
+            synchronized (idle) {
+                idle.addFirst(pooled);
+            }
+        }
+        permits.release();
+    }
+
+    public Stats stats() {
+        int idleCount;
+        synchronized (idle) {
+            idleCount = idle.size();
+        }
+        return new Stats(totalConnections.get(), activeConnections.get(), idleCount, permits.getQueueLength(),
+                created.sum(), destroyed.sum(), borrowed.sum(), timeouts.sum(), validationFailures.sum(),
+                statementCounters.hits.sum(), statementCounters.misses.sum(), statementCounters.evictions.sum());
+    }
+
+    public int getMaxSize() { return settings.maxSize(); }
+
+    public String getUrl() { return url; }
+
+    /**
+     * Opens up to count idle connections at once, one virtual thread each, so a warm-up pays
+     * for one connect instead of count in a row. Stays within maxSize; failures are left for
+     * borrowers to report.
+     */
+    public void prefill(int count) {
+        int wanted = Math.min(count - idleCount(), settings.maxSize() - totalConnections.get());
+        if (wanted <= 0 || closed) {
+            return;
+        }
+        List<Thread> openers = new ArrayList<>(wanted);
+        for (int i = 0; i < wanted; i++) {
+            openers.add(Thread.ofVirtual().start(() -> {
+                try {
+                    PooledConnection pooled = open();
+                    synchronized (idle) {
+                        if (!closed) {
+                            idle.addLast(pooled);
+                            return;
+                        }
+                    }
+                    destroy(pooled);
+                } catch (SQLException e) {
+                    // Borrowers will surface the error
+                }
+            }));
+        }
+        try {
+            for (Thread opener : openers) {
+                opener.join();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Closes every idle physical connection; connections currently borrowed are left alone
+    public void evictIdle() {
+        List<PooledConnection> evicted;
+        synchronized (idle) {
+            evicted = new ArrayList<>(idle);
+            idle.clear();
+        }
+        evicted.forEach(this::destroy);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        housekeeper.shutdownNow();
+
+        List<PooledConnection> toClose;
+        synchronized (idle) {
+            toClose = new ArrayList<>(idle);
+            idle.clear();
+        }
+        toClose.forEach(this::destroy);
+    }
+
+    private PooledConnection pollIdle() {
+        synchronized (idle) {
+            return idle.pollFirst();
+        }
+    }
+
+    private PooledConnection open() throws SQLException {
+        Connection connection = DriverManager.getConnection(url, connectionProperties);
+        totalConnections.incrementAndGet();
+        created.increment();
+        StatementCache cache = settings.statementCacheSize() > 0
+                ? new StatementCache(connection, settings.statementCacheSize(), statementCounters)
+                : null;
+        return new PooledConnection(this, connection, cache);
+    }
+
+    private void destroy(PooledConnection pooled) {
+        pooled.closePhysical();
+        totalConnections.decrementAndGet();
+        destroyed.increment();
+    }
+
+    private boolean isExpired(PooledConnection pooled, long now) {
+        return settings.maxLifetimeMillis() > 0 && now - pooled.getCreatedAt() >= settings.maxLifetimeMillis();
+    }
+
+    private boolean isAlive(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.getLastUsedAt() < VALIDATION_BYPASS_MILLIS) {
+            return true;
+        }
+        try {
+            if (pooled.getConnection().isValid(settings.validationTimeoutSeconds())) {
+                return true;
+            }
+        } catch (SQLException e) {
+            // Treated the same as a failed validation
+        }
+        validationFailures.increment();
+        return false;
+    }
+
+    // Evicts idle and over-age connections, then tops the pool back up to minIdle
+    private void housekeep() {
+        long now = System.currentTimeMillis();
+        List<PooledConnection> evicted = new ArrayList<>();
+
+        synchronized (idle) {
+            Iterator<PooledConnection> it = idle.descendingIterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                boolean idleTooLong = settings.idleTimeoutMillis() > 0
+                        && now - pooled.getLastUsedAt() >= settings.idleTimeoutMillis()
+                        && idle.size() > settings.minIdle();
+                if (idleTooLong || isExpired(pooled, now)) {
+                    it.remove();
+                    evicted.add(pooled);
+                }
+            }
+        }
+        evicted.forEach(this::destroy);
+
+        try {
+            while (!closed && idleCount() < settings.minIdle() && totalConnections.get() < settings.maxSize()) {
+                PooledConnection pooled = open();
+                synchronized (idle) {
+                    idle.addLast(pooled);
+                }
+            }
+        } catch (SQLException e) {
+            // Borrowers will surface the error; try again on the next run
+        }
+    }
+
+    private int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+}
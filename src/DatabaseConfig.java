@@ -1,17 +1,25 @@
 // DatabaseConfig.java - Configuration management
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Properties;
 
+/**
+ * database.properties is read on first use rather than when the class loads, so a launch can
+ * start the read on a background thread (see DatabaseManager.preload) and nothing blocks on
+ * the file before it is needed. A -Dkey=value system property overrides the file's value.
+ */
 class DatabaseConfig {
-    private static Properties properties = new Properties();
+    private static final class Holder {
+        static final Properties PROPERTIES = load();
+    }
 
-    static {
-        try {
+    private static Properties load() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(Path.of("database.properties"))) {
             // Load database configuration from properties file
-            FileInputStream fis = new FileInputStream("database.properties");
-            properties.load(fis);
-            fis.close();
+            properties.load(in);
         } catch (IOException e) {
             // Fallback to default values for demo
             properties.setProperty("db.url", "jdbc:mysql://localhost:3306/studentdb");
@@ -19,10 +27,168 @@ class DatabaseConfig {
             properties.setProperty("db.password", "Isuru@123");
             properties.setProperty("db.driver", "com.mysql.cj.jdbc.Driver");
         }
+        return properties;
+    }
+
+    // Forces the file to be read now
+    static void preload() {
+        Holder.PROPERTIES.size();
+    }
+
+    public static String getUrl() { return get("db.url"); }
+    public static String getUsername() { return get("db.username"); }
+    public static String getPassword() { return get("db.password"); }
+    public static String getDriver() { return get("db.driver"); }
+
+    // Properties handed to the JDBC driver when opening a physical connection
+    public static Properties getConnectionProperties() {
+        return getConnectionProperties(getUrl());
+    }
+
+    // Same, for another server sharing the credentials (e.g. a shard)
+    public static Properties getConnectionProperties(String url) {
+        Properties info = new Properties();
+        if (getUsername() != null) {
+            info.setProperty("user", getUsername());
+        }
+        if (getPassword() != null) {
+            info.setProperty("password", getPassword());
+        }
+        if (isServerPrepStmtsEnabled() && isMySql(url)) {
+            info.setProperty("useServerPrepStmts", "true");
+            info.setProperty("cachePrepStmts", "true");
+            info.setProperty("prepStmtCacheSize", String.valueOf(Math.max(getStatementCacheSize(), 25)));
+            info.setProperty("prepStmtCacheSqlLimit", "2048");
+        }
+        if (isRewriteBatchedStatementsEnabled() && isMySql(url)) {
+            info.setProperty("rewriteBatchedStatements", "true");
+        }
+        return info;
     }
 
-    public static String getUrl() { return properties.getProperty("db.url"); }
-    public static String getUsername() { return properties.getProperty("db.username"); }
-    public static String getPassword() { return properties.getProperty("db.password"); }
-    public static String getDriver() { return properties.getProperty("db.driver"); }
-}
\ No newline at end of file
+    // Connection pool settings (db.pool.*)
+    public static int getPoolMaxSize() { return getInt("db.pool.maxSize", 10); }
+    public static int getPoolMinIdle() { return getInt("db.pool.minIdle", 1); }
+    public static long getPoolAcquireTimeoutMillis() { return getLong("db.pool.acquireTimeoutMillis", 5_000); }
+    public static long getPoolIdleTimeoutMillis() { return getLong("db.pool.idleTimeoutMillis", 300_000); }
+    public static long getPoolMaxLifetimeMillis() { return getLong("db.pool.maxLifetimeMillis", 1_800_000); }
+    public static int getPoolValidationTimeoutSeconds() { return getInt("db.pool.validationTimeoutSeconds", 2); }
+    public static long getPoolHousekeepingIntervalMillis() { return getLong("db.pool.housekeepingIntervalMillis", 30_000); }
+
+    // Prepared statements cached per pooled connection; 0 disables the cache
+    public static int getStatementCacheSize() { return getInt("db.statementCache.size", 32); }
+
+    // Turns on MySQL server-side prepared statements (useServerPrepStmts/cachePrepStmts)
+    public static boolean isServerPrepStmtsEnabled() { return getBoolean("db.mysql.serverPrepStmts", false); }
+
+    // Rows per JDBC batch and per commit in the addStudents/updateStudents/deleteStudents APIs
+    public static int getBatchSize() { return getInt("db.batch.size", 1000); }
+
+    // Lets Connector/J rewrite batched INSERTs into multi-row VALUES statements
+    public static boolean isRewriteBatchedStatementsEnabled() {
+        return getBoolean("db.mysql.rewriteBatchedStatements", true);
+    }
+
+    // Rows fetched per round trip by streaming reads; Connector/J streams row by row at Integer.MIN_VALUE
+    public static int getStreamFetchSize(String url) { return getInt("db.stream.fetchSize", isMySql(url) ? Integer.MIN_VALUE : 1000); }
+
+    // Use the n-gram FULLTEXT index for substring name search when the server supports it
+    public static boolean isFullTextSearchEnabled() { return getBoolean("db.search.fullText", true); }
+
+    // Read-through id -> Student cache in front of getStudentById (db.cache.*)
+    public static boolean isCacheEnabled() { return getBoolean("db.cache.enabled", false); }
+    public static int getCacheMaxSize() { return getInt("db.cache.maxSize", 10_000); }
+    public static long getCacheTtlMillis() { return getLong("db.cache.ttlMillis", 60_000); }
+    public static long getCacheNegativeTtlMillis() { return getLong("db.cache.negativeTtlMillis", 5_000); }
+
+    // Default per-call timeout for AsyncDatabaseManager (0 = no timeout)
+    public static long getAsyncTimeoutMillis() { return getLong("db.async.timeoutMillis", 30_000); }
+
+    // Operation metrics (db.metrics.*); the dump file is appended every dumpIntervalSeconds when set
+    public static boolean isMetricsEnabled() { return getBoolean("db.metrics.enabled", true); }
+    public static String getMetricsDumpFile() { return get("db.metrics.dumpFile"); }
+    public static long getMetricsDumpIntervalSeconds() { return getLong("db.metrics.dumpIntervalSeconds", 60); }
+
+    // Write-behind queue (db.writeBehind.*): writes per transaction, longest wait before a flush, rows allowed to wait
+    public static boolean isWriteBehindEnabled() { return getBoolean("db.writeBehind.enabled", false); }
+    public static int getWriteBehindBatchSize() { return getInt("db.writeBehind.batchSize", 500); }
+    public static long getWriteBehindMaxDelayMillis() { return getLong("db.writeBehind.maxDelayMillis", 5); }
+    public static int getWriteBehindMaxPending() { return getInt("db.writeBehind.maxPending", 10_000); }
+
+    // Local memory-mapped read replica (db.replica.*); off unless a file is configured
+    public static String getReplicaFile() { return get("db.replica.file"); }
+    public static long getReplicaSyncIntervalSeconds() { return getLong("db.replica.syncIntervalSeconds", 60); }
+    public static long getReplicaFullResyncIntervalSeconds() { return getLong("db.replica.fullResyncIntervalSeconds", 3600); }
+
+    // Read replicas (db.readReplicas.*): comma-separated URLs sharing db.username/db.password, how often each
+    // is checked, and how long a thread keeps reading from the primary after its own write
+    public static String[] getReadReplicaUrls() { return getList("db.readReplicas.urls"); }
+    public static long getReadReplicaHealthCheckIntervalMillis() { return getLong("db.readReplicas.healthCheckIntervalMillis", 5_000); }
+    public static long getReadYourWritesMillis() { return getLong("db.readReplicas.readYourWritesMillis", 2_000); }
+
+    // Parallel export: ids per chunk and reader threads (0 = pool size - 1, capped at the CPU count)
+    public static int getExportChunkSize() { return getInt("db.export.chunkSize", 50_000); }
+    public static int getExportThreads() { return getInt("db.export.threads", 0); }
+
+    // Embedded HTTP server (Main --serve); request bodies other than _bulk are capped at maxBodyBytes
+    public static int getHttpPort() { return getInt("http.port", 8080); }
+    public static int getHttpMaxBodyBytes() { return getInt("http.maxBodyBytes", 1 << 20); }
+
+    // Storage engine (storage.engine = mysql or memory). The memory engine logs to storage.memory.dir,
+    // or persists nothing when it is unset, and snapshots once a log segment passes compactBytes
+    public static String getStorageEngine() {
+        String engine = get("storage.engine");
+        return engine == null || engine.isBlank() ? "mysql" : engine.trim();
+    }
+    public static String getMemoryStoreDir() { return get("storage.memory.dir"); }
+    public static boolean isMemoryStoreFsyncEnabled() { return getBoolean("storage.memory.fsync", true); }
+    public static long getMemoryStoreCompactBytes() { return getLong("storage.memory.compactBytes", 64L << 20); }
+
+    // Sharded engine (storage.engine = sharded): comma-separated shard URLs sharing db.username/db.password,
+    // and the ids each shard reserves at a time. Neither may change once the shards hold data
+    public static String[] getShardUrls() { return getList("db.shard.urls"); }
+    public static int getShardIdBlockSize() { return getInt("db.shard.idBlockSize", 1000); }
+
+    static boolean isMySql(String url) {
+        return url != null && url.startsWith("jdbc:mysql:");
+    }
+
+    private static String get(String key) {
+        String value = System.getProperty(key);
+        return value != null ? value : Holder.PROPERTIES.getProperty(key);
+    }
+
+    private static String[] getList(String key) {
+        String value = get(key);
+        return value == null || value.isBlank() ? new String[0] : value.trim().split("\\s*,\\s*");
+    }
+
+    private static boolean getBoolean(String key, boolean defaultValue) {
+        String value = get(key);
+        return value == null || value.isBlank() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    private static int getInt(String key, int defaultValue) {
+        String value = get(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid integer for " + key + ": " + value, e);
+        }
+    }
+
+    private static long getLong(String key, long defaultValue) {
+        String value = get(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalStateException("Invalid number for " + key + ": " + value, e);
+        }
+    }
+}
@@ -1,52 +1,185 @@
 // DatabaseManager.java - Database operations
+import java.io.IOException;
+import java.nio.file.Path;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-class DatabaseManager {
-    private Connection connection;
+class DatabaseManager implements StudentStore {
+    enum WriteKind { INSERT, UPDATE, DELETE }
+
+    // One write in a group passed to applyWrites; a DELETE only needs the student's id
+    record Write(WriteKind kind, Student student) {}
+
+    // MySQL's default ngram_token_size; shorter terms cannot use the full-text index
+    private static final int NGRAM_TOKEN_SIZE = 2;
+
+    private final ConnectionPool pool;
+    private volatile boolean fullTextSearch;
+    private volatile boolean schemaReady;
+    // What listings, pages and searches sort by; see sortNamesByCodePoint
+    private volatile String nameKey = "name";
+    private final Object schemaLock = new Object();
+    private volatile NameSearchIndex nameIndex;
+    private final StudentCache cache;
+    private final DatabaseMetrics metrics;
+    private final MappedStudentReplica replica;
+    private final ReadRouter readRouter;
 
     public DatabaseManager() throws SQLException {
+        this(createDefaultPool());
+    }
+
+    // Lets callers (and tests against an embedded database) supply their own pool
+    DatabaseManager(ConnectionPool pool) throws SQLException {
+        this(pool, DatabaseMetrics.fromConfig());
+    }
+
+    DatabaseManager(ConnectionPool pool, DatabaseMetrics metrics) throws SQLException {
+        this(pool, metrics, true);
+    }
+
+    // Shards of a ShardedStudentStore pass withReplicas = false: db.replica.file and db.readReplicas.urls describe db.url only
+    DatabaseManager(ConnectionPool pool, DatabaseMetrics metrics, boolean withReplicas) throws SQLException {
+        this(pool, metrics, withReplicas ? ReadRouter.fromConfig(pool) : null, withReplicas);
+    }
+
+    // A null readRouter sends every read to pool; tests can pass one over embedded databases acting as replicas
+    DatabaseManager(ConnectionPool pool, DatabaseMetrics metrics, ReadRouter readRouter, boolean withReplica)
+            throws SQLException {
+        this.pool = pool;
+        this.metrics = metrics;
+        this.readRouter = readRouter;
+        this.cache = DatabaseConfig.isCacheEnabled() ? StudentCache.fromConfig() : null;
+        try {
+            this.replica = withReplica ? openReplica() : null;
+        } catch (SQLException e) {
+            if (readRouter != null) {
+                readRouter.close();
+            }
+            pool.close();
+            metrics.close();
+            throw e;
+        }
+    }
+
+    private MappedStudentReplica openReplica() throws SQLException {
+        String file = DatabaseConfig.getReplicaFile();
+        if (file == null || file.isBlank()) {
+            return null;
+        }
+        try {
+            MappedStudentReplica opened = MappedStudentReplica.open(Path.of(file), this);
+            opened.startPeriodicSync(DatabaseConfig.getReplicaSyncIntervalSeconds(),
+                    DatabaseConfig.getReplicaFullResyncIntervalSeconds());
+            return opened;
+        } catch (IOException e) {
+            throw new SQLException("Could not open replica file " + file, e);
+        }
+    }
+
+    private static ConnectionPool createDefaultPool() throws SQLException {
         try {
             Class.forName(DatabaseConfig.getDriver());
-            this.connection = DriverManager.getConnection(
-                    DatabaseConfig.getUrl(),
-                    DatabaseConfig.getUsername(),
-                    DatabaseConfig.getPassword()
-            );
-            initializeDatabase();
         } catch (ClassNotFoundException e) {
             throw new SQLException("Database driver not found", e);
         }
+        return new ConnectionPool(DatabaseConfig.getUrl(), DatabaseConfig.getConnectionProperties(),
+                ConnectionPool.Settings.fromConfig());
+    }
+
+    /**
+     * Runs the schema migrations on first use rather than in the constructor, so creating a
+     * DatabaseManager opens no connection and a launch that fails earlier (bad arguments, a
+     * missing file) never touches the database.
+     */
+    private void ensureSchema() throws SQLException {
+        if (schemaReady) {
+            return;
+        }
+        synchronized (schemaLock) {
+            if (schemaReady) {
+                return;
+            }
+            SchemaMigrator migrator = new SchemaMigrator(DatabaseConfig.isFullTextSearchEnabled());
+            try (PooledConnection pc = pool.borrow()) {
+                Map<Integer, String> outcomes = migrator.migrate(pc.getConnection());
+                fullTextSearch = DatabaseConfig.isFullTextSearchEnabled() && SchemaMigrator.hasFullTextIndex(outcomes);
+            }
+            StartupClock.mark(migrator.getAppliedNow() == 0 ? "schema current" : "schema migrated");
+            schemaReady = true;
+        }
     }
 
-    private void initializeDatabase() throws SQLException {
-        String createTableSQL = """
-            CREATE TABLE IF NOT EXISTS students (
-                id INT AUTO_INCREMENT PRIMARY KEY,
-                name VARCHAR(100) NOT NULL,
-                email VARCHAR(150) UNIQUE NOT NULL,
-                age INT CHECK (age > 0 AND age < 150),
-                course VARCHAR(100) NOT NULL,
-                created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
-            )
-        """;
+    /**
+     * Loads database.properties and the JDBC driver on a background thread. Main calls this
+     * first thing so both overlap with argument parsing and with opening input files; the
+     * first DatabaseManager simply finds them done (or waits on the class-init lock).
+     */
+    static void preload() {
+        Thread thread = new Thread(() -> {
+            DatabaseConfig.preload();
+            StartupClock.mark("config loaded");
+            try {
+                Class.forName(DatabaseConfig.getDriver());
+                StartupClock.mark("driver loaded");
+            } catch (ClassNotFoundException | RuntimeException e) {
+                // Reported properly when the pool is created
+            }
+        }, "startup-preload");
+        thread.setDaemon(true);
+        thread.start();
+    }
 
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute(createTableSQL);
+    /**
+     * For long-running modes: opens db.pool.minIdle connections in parallel with the schema
+     * check instead of paying each connect on the first requests.
+     */
+    public void warmUp() throws SQLException {
+        Thread connections = Thread.ofVirtual().start(() -> pool.prefill(DatabaseConfig.getPoolMinIdle()));
+        try {
+            ensureSchema();
+        } finally {
+            try {
+                connections.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        StartupClock.mark("pool warm");
+    }
+
+    /**
+     * Closes every idle physical connection; the pool reconnects on the next borrow. Call it
+     * before a CRaC checkpoint (or any snapshot of the process) so no open socket is captured.
+     */
+    public void releaseConnections() {
+        pool.evictIdle();
     }
 
     public boolean addStudent(Student student) throws SQLException {
         String sql = "INSERT INTO students (name, email, age, course) VALUES (?, ?, ?, ?)";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+        DatabaseMetrics.Timer timer = metrics.start("addStudent");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
             pstmt.setString(1, student.getName());
             pstmt.setString(2, student.getEmail());
             pstmt.setInt(3, student.getAge());
             pstmt.setString(4, student.getCourse());
 
             int rowsAffected = pstmt.executeUpdate();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(rowsAffected);
 
             if (rowsAffected > 0) {
                 try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
@@ -54,101 +187,1182 @@ class DatabaseManager {
                         student.setId(generatedKeys.getInt(1));
                     }
                 }
+                indexName(student);
+                if (cache != null) {
+                    cache.put(student);
+                }
                 return true;
             }
             return false;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
         }
     }
 
     public Student getStudentById(int id) throws SQLException {
-        String sql = "SELECT * FROM students WHERE id = ?";
+        StudentCache.Loader loader = replica != null ? replica::getStudentById : this::loadStudentById;
+        return cache != null ? cache.get(id, loader) : loader.load(id);
+    }
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+    // Always reads the database (a read replica when configured), bypassing the cache and the local replica file
+    Student loadStudentById(int id) throws SQLException {
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE id = ?";
+
+        DatabaseMetrics.Timer timer = metrics.start("getStudentById");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
             pstmt.setInt(1, id);
 
             try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
                 if (rs.next()) {
-                    return new Student(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("email"),
-                            rs.getInt("age"),
-                            rs.getString("course")
-                    );
+                    Student student = StudentRowMapper.of(rs).map(rs);
+                    timer.lap(DatabaseMetrics.Phase.MAP);
+                    timer.rows(1);
+                    return student;
                 }
             }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
         }
         return null;
     }
 
     public List<Student> getAllStudents() throws SQLException {
         List<Student> students = new ArrayList<>();
-        String sql = "SELECT * FROM students ORDER BY name";
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students ORDER BY name";
 
-        try (Statement stmt = connection.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
+        DatabaseMetrics.Timer timer = metrics.start("getAllStudents");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
 
-            while (rs.next()) {
-                students.add(new Student(
-                        rs.getInt("id"),
-                        rs.getString("name"),
-                        rs.getString("email"),
-                        rs.getInt("age"),
-                        rs.getString("course")
-                ));
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper.of(rs).mapAll(rs, students);
+                timer.lap(DatabaseMetrics.Phase.MAP);
+                timer.rows(students.size());
             }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
         }
         return students;
     }
 
+    /**
+     * Returns one page ordered by (name, id). Pass null for the first page and the previous
+     * page's token afterwards; each page is an index seek, so deep pages cost the same as the first.
+     */
+    public StudentPage getStudentsPage(String pageToken, int pageSize) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        List<Student> students = new ArrayList<>(pageSize + 1);
+
+        DatabaseMetrics.Timer timer = metrics.start("getStudentsPage");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt;
+            if (pageToken == null) {
+                pstmt = pc.prepareStatement("SELECT " + StudentRowMapper.COLUMNS + " FROM students ORDER BY " + nameKey + ", id LIMIT ?");
+                pstmt.setInt(1, pageSize + 1);
+            } else {
+                Student after = StudentPage.decodeToken(pageToken);
+                String key = nameKey;
+                pstmt = pc.prepareStatement("SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE " + key + " >= ? AND (" + key + " > ? OR id > ?) "
+                        + "ORDER BY " + key + ", id LIMIT ?");
+                pstmt.setString(1, after.getName());
+                pstmt.setString(2, after.getName());
+                pstmt.setInt(3, after.getId());
+                pstmt.setInt(4, pageSize + 1);
+            }
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper.of(rs).mapAll(rs, students);
+                timer.lap(DatabaseMetrics.Phase.MAP);
+                timer.rows(students.size());
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+
+        // The extra row only tells us whether another page exists
+        if (students.size() <= pageSize) {
+            return new StudentPage(students, null);
+        }
+        students.remove(pageSize);
+        return new StudentPage(students, StudentPage.encodeToken(students.get(pageSize - 1)));
+    }
+
+    /**
+     * Streams every student in (name, id) order through a forward-only cursor, holding one
+     * row at a time instead of materializing the table.
+     */
+    public void forEachStudent(Consumer<Student> action) throws SQLException {
+        try (Stream<Student> students = streamStudents()) {
+            students.forEach(action);
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Like forEachStudent, but hands the same Student instance to every call, overwritten with
+     * the current row, so a full-table scan allocates no per-row Student. The action must copy
+     * anything it wants to keep.
+     */
+    public void scanStudents(Consumer<Student> action) throws SQLException {
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students ORDER BY name, id";
+
+        DatabaseMetrics.Timer timer = metrics.start("scanStudents");
+        long rows = 0;
+        try (PooledConnection pc = borrowForRead(timer);
+             PreparedStatement pstmt = pc.getConnection().prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(DatabaseConfig.getStreamFetchSize(pool.getUrl()));
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper mapper = StudentRowMapper.of(rs);
+                Student row = new Student();
+                while (rs.next()) {
+                    action.accept(mapper.mapInto(rs, row));
+                    rows++;
+                }
+                timer.lap(DatabaseMetrics.Phase.MAP);
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.rows(rows);
+            timer.stop();
+        }
+    }
+
+    /**
+     * Scans the rows with fromId <= id < toId in id order, reusing one Student like
+     * scanStudents. Each call borrows its own connection, so disjoint ranges can be read in
+     * parallel.
+     */
+    public void scanStudentsInIdRange(int fromId, int toId, Consumer<Student> action) throws SQLException {
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE id >= ? AND id < ? ORDER BY id";
+
+        DatabaseMetrics.Timer timer = metrics.start("scanStudentsInIdRange");
+        long rows = 0;
+        try (PooledConnection pc = borrowForRead(timer);
+             PreparedStatement pstmt = pc.getConnection().prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(DatabaseConfig.getStreamFetchSize(pool.getUrl()));
+            pstmt.setInt(1, fromId);
+            pstmt.setInt(2, toId);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper mapper = StudentRowMapper.of(rs);
+                Student row = new Student();
+                while (rs.next()) {
+                    action.accept(mapper.mapInto(rs, row));
+                    rows++;
+                }
+                timer.lap(DatabaseMetrics.Phase.MAP);
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.rows(rows);
+            timer.stop();
+        }
+    }
+
+    // {lowest id, highest id}, or null when the table is empty
+    public int[] getIdRange() throws SQLException {
+        String sql = "SELECT MIN(id), MAX(id) FROM students";
+
+        DatabaseMetrics.Timer timer = metrics.start("getIdRange");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                rs.next();
+                int min = rs.getInt(1);
+                return rs.wasNull() ? null : new int[]{min, rs.getInt(2)};
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Feeds the rows with id > afterId or updated_at >= changedSince (both null = every row) to
+     * action in id order, together with their updated_at. updated_at is set on insert and on
+     * every update, so this picks up new and edited rows alike. Like scanStudents, the Student
+     * instance is reused between rows. Used by StudentSnapshot and MappedStudentReplica to
+     * catch up incrementally.
+     */
+    void scanStudentsChangedSince(int afterId, Timestamp changedSince, BiConsumer<Student, Timestamp> action)
+            throws SQLException {
+        String sql = changedSince == null
+                ? "SELECT " + StudentRowMapper.COLUMNS + ", updated_at FROM students WHERE id > ? ORDER BY id"
+                : "SELECT " + StudentRowMapper.COLUMNS + ", updated_at FROM students WHERE id > ? OR updated_at >= ? ORDER BY id";
+
+        DatabaseMetrics.Timer timer = metrics.start("scanStudentsChangedSince");
+        long rows = 0;
+        try (PooledConnection pc = borrow(timer);
+             PreparedStatement pstmt = pc.getConnection().prepareStatement(sql,
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            pstmt.setFetchSize(DatabaseConfig.getStreamFetchSize(pool.getUrl()));
+            pstmt.setInt(1, afterId);
+            if (changedSince != null) {
+                pstmt.setTimestamp(2, changedSince);
+            }
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper mapper = StudentRowMapper.of(rs);
+                int updatedAtColumn = rs.findColumn("updated_at");
+                Student row = new Student();
+                while (rs.next()) {
+                    action.accept(mapper.mapInto(rs, row), rs.getTimestamp(updatedAtColumn));
+                    rows++;
+                }
+                timer.lap(DatabaseMetrics.Phase.MAP);
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.rows(rows);
+            timer.stop();
+        }
+    }
+
+    public int countStudents() throws SQLException {
+        String sql = "SELECT COUNT(*) FROM students";
+
+        DatabaseMetrics.Timer timer = metrics.start("countStudents");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                rs.next();
+                return rs.getInt(1);
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Lazily streams every student in (name, id) order. The stream holds a pooled connection
+     * until it is closed, so always use it in try-with-resources. Read errors surface as
+     * UncheckedSQLException.
+     */
+    public Stream<Student> streamStudents() throws SQLException {
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students ORDER BY " + nameKey + ", id";
+
+        DatabaseMetrics.Timer timer = metrics.start("streamStudents");
+        PooledConnection pc;
+        try {
+            pc = borrowForRead(timer);
+        } catch (SQLException e) {
+            timer.stop();
+            throw timer.failed(e);
+        }
+        try {
+            PreparedStatement pstmt = pc.getConnection().prepareStatement(sql,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            pstmt.setFetchSize(DatabaseConfig.getStreamFetchSize(pool.getUrl()));
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            ResultSet rs = pstmt.executeQuery();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            StudentRowMapper mapper = StudentRowMapper.of(rs);
+
+            Spliterator<Student> rows = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+                    Spliterator.ORDERED | Spliterator.NONNULL) {
+                @Override
+                public boolean tryAdvance(Consumer<? super Student> action) {
+                    try {
+                        if (!rs.next()) {
+                            return false;
+                        }
+                        timer.rows(1);
+                        action.accept(mapper.map(rs));
+                        return true;
+                    } catch (SQLException e) {
+                        throw new UncheckedSQLException(timer.failed(e));
+                    }
+                }
+            };
+
+            return StreamSupport.stream(rows, false).onClose(() -> {
+                try {
+                    rs.close();
+                    pstmt.close();
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                } finally {
+                    pc.close();
+                    timer.stop();
+                }
+            });
+        } catch (SQLException e) {
+            pc.close();
+            timer.stop();
+            throw timer.failed(e);
+        } catch (RuntimeException e) {
+            pc.close();
+            timer.stop();
+            throw e;
+        }
+    }
+
     public boolean updateStudent(Student student) throws SQLException {
-        String sql = "UPDATE students SET name = ?, email = ?, age = ?, course = ? WHERE id = ?";
+        String sql = "UPDATE students SET name = ?, email = ?, age = ?, course = ?, version = version + 1 WHERE id = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        DatabaseMetrics.Timer timer = metrics.start("updateStudent");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
             pstmt.setString(1, student.getName());
             pstmt.setString(2, student.getEmail());
             pstmt.setInt(3, student.getAge());
             pstmt.setString(4, student.getCourse());
             pstmt.setInt(5, student.getId());
 
-            return pstmt.executeUpdate() > 0;
+            int rowsAffected = pstmt.executeUpdate();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(rowsAffected);
+            boolean updated = rowsAffected > 0;
+            if (updated) {
+                indexName(student);
+                if (replica != null) {
+                    replica.markStale(student.getId());
+                }
+            }
+            // The new version is unknown after a blind update, so the next read reloads it
+            if (cache != null) {
+                cache.invalidate(student.getId());
+            }
+            return updated;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Compare-and-set update: writes the row only if its version is still expectedVersion,
+     * and bumps the version. On UPDATED, student carries the new version. No lock is held
+     * between the caller's read and this write; a concurrent writer shows up as CONFLICT.
+     */
+    public UpdateResult updateStudentIfVersion(Student student, int expectedVersion) throws SQLException {
+        String sql = "UPDATE students SET name = ?, email = ?, age = ?, course = ?, version = version + 1 "
+                + "WHERE id = ? AND version = ?";
+
+        DatabaseMetrics.Timer timer = metrics.start("updateStudentIfVersion");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            pstmt.setString(1, student.getName());
+            pstmt.setString(2, student.getEmail());
+            pstmt.setInt(3, student.getAge());
+            pstmt.setString(4, student.getCourse());
+            pstmt.setInt(5, student.getId());
+            pstmt.setInt(6, expectedVersion);
+
+            int rowsAffected = pstmt.executeUpdate();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(rowsAffected);
+            return finishVersionedUpdate(pc, student, expectedVersion, rowsAffected);
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Partial compare-and-set update: writes only the columns where updated differs from
+     * original, guarded by original's version. updated must be the full new row (same id);
+     * on UPDATED it carries the new version. Nothing changed means UPDATED with no round trip.
+     */
+    public UpdateResult updateChangedFields(Student original, Student updated) throws SQLException {
+        if (original.getId() != updated.getId()) {
+            throw new IllegalArgumentException("Original and updated rows have different ids");
+        }
+        List<String> columns = new ArrayList<>(4);
+        List<Object> values = new ArrayList<>(4);
+        if (!original.getName().equals(updated.getName())) {
+            columns.add("name = ?");
+            values.add(updated.getName());
+        }
+        if (!original.getEmail().equals(updated.getEmail())) {
+            columns.add("email = ?");
+            values.add(updated.getEmail());
+        }
+        if (original.getAge() != updated.getAge()) {
+            columns.add("age = ?");
+            values.add(updated.getAge());
+        }
+        if (!original.getCourse().equals(updated.getCourse())) {
+            columns.add("course = ?");
+            values.add(updated.getCourse());
+        }
+        if (columns.isEmpty()) {
+            updated.setVersion(original.getVersion());
+            return UpdateResult.UPDATED;
+        }
+        String sql = "UPDATE students SET " + String.join(", ", columns) + ", version = version + 1 "
+                + "WHERE id = ? AND version = ?";
+
+        DatabaseMetrics.Timer timer = metrics.start("updateChangedFields");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            int index = 1;
+            for (Object value : values) {
+                if (value instanceof Integer age) {
+                    pstmt.setInt(index++, age);
+                } else {
+                    pstmt.setString(index++, (String) value);
+                }
+            }
+            pstmt.setInt(index++, updated.getId());
+            pstmt.setInt(index, original.getVersion());
+
+            int rowsAffected = pstmt.executeUpdate();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(rowsAffected);
+            return finishVersionedUpdate(pc, updated, original.getVersion(), rowsAffected);
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    // Applies side effects of a version-checked update and tells a conflict from a missing row
+    private UpdateResult finishVersionedUpdate(PooledConnection pc, Student student, int expectedVersion,
+                                               int rowsAffected) throws SQLException {
+        if (rowsAffected > 0) {
+            student.setVersion(expectedVersion + 1);
+            indexName(student);
+            if (replica != null) {
+                replica.markStale(student.getId());
+            }
+            if (cache != null) {
+                cache.put(student);
+            }
+            return UpdateResult.UPDATED;
+        }
+
+        // Someone else changed or removed the row, so neither local copy can be trusted
+        if (replica != null) {
+            replica.markStale(student.getId());
+        }
+        if (cache != null) {
+            cache.invalidate(student.getId());
+        }
+        PreparedStatement exists = pc.prepareStatement("SELECT version FROM students WHERE id = ?");
+        exists.setInt(1, student.getId());
+        try (ResultSet rs = exists.executeQuery()) {
+            return rs.next() ? UpdateResult.CONFLICT : UpdateResult.NOT_FOUND;
         }
     }
 
     public boolean deleteStudent(int id) throws SQLException {
         String sql = "DELETE FROM students WHERE id = ?";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+        DatabaseMetrics.Timer timer = metrics.start("deleteStudent");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
             pstmt.setInt(1, id);
-            return pstmt.executeUpdate() > 0;
+            int rowsAffected = pstmt.executeUpdate();
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(rowsAffected);
+            boolean deleted = rowsAffected > 0;
+            if (deleted && nameIndex != null) {
+                nameIndex.remove(id);
+            }
+            if (deleted && replica != null) {
+                replica.markDeleted(id);
+            }
+            if (cache != null) {
+                cache.invalidate(id);
+            }
+            return deleted;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    public BatchResult addStudents(Collection<Student> students) throws SQLException {
+        String sql = "INSERT INTO students (name, email, age, course) VALUES (?, ?, ?, ?)";
+
+        List<Student> rows = new ArrayList<>(students);
+        return executeBatch("addStudents", sql, Statement.RETURN_GENERATED_KEYS, rows.size(),
+                (pstmt, i) -> {
+                    Student student = rows.get(i);
+                    pstmt.setString(1, student.getName());
+                    pstmt.setString(2, student.getEmail());
+                    pstmt.setInt(3, student.getAge());
+                    pstmt.setString(4, student.getCourse());
+                },
+                (i, id) -> {
+                    rows.get(i).setId(id);
+                    indexName(rows.get(i));
+                    if (cache != null) {
+                        cache.invalidate(id);
+                    }
+                });
+    }
+
+    /**
+     * Sorts listings, pages and name searches by code point (utf8mb4_bin) instead of the name
+     * column's collation, so that ShardedStudentStore's merge agrees with every shard exactly
+     * (see ShardedStudentStore.SHARD_NAME_ORDER). These sorts then no longer follow the name
+     * index. Other databases keep their own order; embedded test databases compare binary anyway.
+     */
+    void sortNamesByCodePoint() {
+        if (DatabaseConfig.isMySql(pool.getUrl())) {
+            nameKey = "name COLLATE utf8mb4_bin";
+        }
+    }
+
+    /**
+     * Inserts rows whose ids were assigned by the caller (ShardedStudentStore's id blocks)
+     * instead of AUTO_INCREMENT. Batched and reported like addStudents.
+     */
+    BatchResult addStudentsWithIds(List<Student> students) throws SQLException {
+        String sql = "INSERT INTO students (id, name, email, age, course) VALUES (?, ?, ?, ?, ?)";
+
+        BatchResult result = executeBatch("addStudentsWithIds", sql, Statement.NO_GENERATED_KEYS, students.size(),
+                (pstmt, i) -> {
+                    Student student = students.get(i);
+                    pstmt.setInt(1, student.getId());
+                    pstmt.setString(2, student.getName());
+                    pstmt.setString(3, student.getEmail());
+                    pstmt.setInt(4, student.getAge());
+                    pstmt.setString(5, student.getCourse());
+                },
+                null);
+
+        boolean[] failed = failedRows(result, students.size());
+        for (int i = 0; i < students.size(); i++) {
+            if (!failed[i]) {
+                indexName(students.get(i));
+            }
+        }
+        if (cache != null) {
+            students.forEach(student -> cache.invalidate(student.getId()));
+        }
+        return result;
+    }
+
+    /**
+     * Claims each student's email in email_registry for its id; a taken email fails its row
+     * with a duplicate-key error (1062 on MySQL). Sharded mode keeps the registry on shard 0
+     * so email stays unique across shards.
+     */
+    BatchResult registerEmails(List<Student> students) throws SQLException {
+        String sql = "INSERT INTO email_registry (email, student_id) VALUES (?, ?)";
+
+        return executeBatch("registerEmails", sql, Statement.NO_GENERATED_KEYS, students.size(),
+                (pstmt, i) -> {
+                    pstmt.setString(1, students.get(i).getEmail());
+                    pstmt.setInt(2, students.get(i).getId());
+                },
+                null);
+    }
+
+    // Releases registry entries, but only while they still belong to the same student id
+    BatchResult unregisterEmails(List<Student> students) throws SQLException {
+        String sql = "DELETE FROM email_registry WHERE email = ? AND student_id = ?";
+
+        return executeBatch("unregisterEmails", sql, Statement.NO_GENERATED_KEYS, students.size(),
+                (pstmt, i) -> {
+                    pstmt.setString(1, students.get(i).getEmail());
+                    pstmt.setInt(2, students.get(i).getId());
+                },
+                null);
+    }
+
+    /**
+     * Reserves the next id block for shard shardIndex of shardCount and returns its global
+     * block number; the block holds ids [block * blockSize, (block + 1) * blockSize). Shard s
+     * owns blocks s, s + shardCount, s + 2 * shardCount, ..., and its first block starts above
+     * the table's highest id. The counter row remembers the layout, so a shard reopened with a
+     * different shard count, block size or position in db.shard.urls is refused.
+     */
+    long allocateIdBlock(int shardIndex, int shardCount, int blockSize) throws SQLException {
+        DatabaseMetrics.Timer timer = metrics.start("allocateIdBlock");
+        try (PooledConnection pc = borrow(timer)) {
+            Connection connection = pc.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                long local;
+                PreparedStatement select = pc.prepareStatement(
+                        "SELECT shard, shard_count, block_size, next_block FROM shard_id_blocks FOR UPDATE");
+                try (ResultSet rs = select.executeQuery()) {
+                    if (rs.next()) {
+                        if (rs.getInt(1) != shardIndex || rs.getInt(2) != shardCount || rs.getInt(3) != blockSize) {
+                            throw new SQLException("Shard layout changed: this database is shard " + rs.getInt(1)
+                                    + " of " + rs.getInt(2) + " with id blocks of " + rs.getInt(3)
+                                    + ", but was opened as shard " + shardIndex + " of " + shardCount
+                                    + " with blocks of " + blockSize);
+                        }
+                        local = rs.getInt(4);
+                    } else {
+                        local = -1;
+                    }
+                }
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+
+                if (local < 0) {
+                    PreparedStatement max = pc.prepareStatement("SELECT MAX(id) FROM students");
+                    long firstBlock;
+                    try (ResultSet rs = max.executeQuery()) {
+                        rs.next();
+                        firstBlock = rs.getLong(1) / blockSize + 1;
+                    }
+                    local = Math.max(0, Math.ceilDiv(firstBlock - shardIndex, shardCount));
+                    PreparedStatement insert = pc.prepareStatement(
+                            "INSERT INTO shard_id_blocks (shard, shard_count, block_size, next_block) VALUES (?, ?, ?, ?)");
+                    insert.setInt(1, shardIndex);
+                    insert.setInt(2, shardCount);
+                    insert.setInt(3, blockSize);
+                    insert.setLong(4, local + 1);
+                    insert.executeUpdate();
+                } else {
+                    PreparedStatement bump = pc.prepareStatement("UPDATE shard_id_blocks SET next_block = next_block + 1");
+                    bump.executeUpdate();
+                }
+
+                long block = local * shardCount + shardIndex;
+                if ((block + 1) * blockSize - 1 > Integer.MAX_VALUE) {
+                    throw new SQLException("Shard " + shardIndex + " has used up its student ids");
+                }
+                connection.commit();
+                timer.rows(1);
+                return block;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    public BatchResult updateStudents(Collection<Student> students) throws SQLException {
+        String sql = "UPDATE students SET name = ?, email = ?, age = ?, course = ?, version = version + 1 WHERE id = ?";
+
+        List<Student> rows = new ArrayList<>(students);
+        BatchResult result = executeBatch("updateStudents", sql, Statement.NO_GENERATED_KEYS, rows.size(),
+                (pstmt, i) -> {
+                    Student student = rows.get(i);
+                    pstmt.setString(1, student.getName());
+                    pstmt.setString(2, student.getEmail());
+                    pstmt.setInt(3, student.getAge());
+                    pstmt.setString(4, student.getCourse());
+                    pstmt.setInt(5, student.getId());
+                },
+                null);
+
+        NameSearchIndex index = nameIndex;
+        if (index != null) {
+            boolean[] failed = failedRows(result, rows.size());
+            for (int i = 0; i < rows.size(); i++) {
+                if (!failed[i]) {
+                    index.replace(rows.get(i).getId(), rows.get(i).getName());
+                }
+            }
+        }
+        if (cache != null) {
+            rows.forEach(student -> cache.invalidate(student.getId()));
+        }
+        if (replica != null) {
+            rows.forEach(student -> replica.markStale(student.getId()));
+        }
+        return result;
+    }
+
+    public BatchResult deleteStudents(int[] ids) throws SQLException {
+        String sql = "DELETE FROM students WHERE id = ?";
+
+        BatchResult result = executeBatch("deleteStudents", sql, Statement.NO_GENERATED_KEYS, ids.length,
+                (pstmt, i) -> pstmt.setInt(1, ids[i]),
+                null);
+
+        NameSearchIndex index = nameIndex;
+        if (index != null) {
+            boolean[] failed = failedRows(result, ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                if (!failed[i]) {
+                    index.remove(ids[i]);
+                }
+            }
+        }
+        if (cache != null) {
+            for (int id : ids) {
+                cache.invalidate(id);
+            }
+        }
+        if (replica != null) {
+            boolean[] failed = failedRows(result, ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                if (!failed[i]) {
+                    replica.markDeleted(ids[i]);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies inserts, updates and deletes in the given order as one transaction, sending each
+     * run of same-kind writes as one JDBC batch. A run that fails is rolled back to a savepoint
+     * and replayed row by row, so a constraint violation such as a duplicate email fails only
+     * its own row; any other error rolls the whole group back and is thrown. Inserted students
+     * get their ids, and updates bump the version like updateStudent. Used by WriteBehindQueue.
+     */
+    BatchResult applyWrites(List<Write> writes) throws SQLException {
+        BatchResult result = new BatchResult(writes.size());
+
+        DatabaseMetrics.Timer timer = metrics.start("applyWrites");
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            Connection connection = pc.getConnection();
+            connection.setAutoCommit(false);
+            try {
+                int from = 0;
+                while (from < writes.size()) {
+                    int to = from + 1;
+                    while (to < writes.size() && writes.get(to).kind() == writes.get(from).kind()) {
+                        to++;
+                    }
+                    applyRun(pc, writes, from, to, result);
+                    from = to;
+                }
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(result.getSucceeded());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+
+        boolean[] failed = failedRows(result, writes.size());
+        for (int i = 0; i < writes.size(); i++) {
+            if (failed[i]) {
+                continue;
+            }
+            Student student = writes.get(i).student();
+            switch (writes.get(i).kind()) {
+                case INSERT -> indexName(student);
+                case UPDATE -> {
+                    indexName(student);
+                    if (replica != null) {
+                        replica.markStale(student.getId());
+                    }
+                }
+                case DELETE -> {
+                    if (nameIndex != null) {
+                        nameIndex.remove(student.getId());
+                    }
+                    if (replica != null) {
+                        replica.markDeleted(student.getId());
+                    }
+                }
+            }
+            if (cache != null) {
+                cache.invalidate(student.getId());
+            }
+        }
+        return result;
+    }
+
+    private void applyRun(PooledConnection pc, List<Write> writes, int from, int to, BatchResult result)
+            throws SQLException {
+        WriteKind kind = writes.get(from).kind();
+        PreparedStatement pstmt = switch (kind) {
+            case INSERT -> pc.prepareStatement("INSERT INTO students (name, email, age, course) VALUES (?, ?, ?, ?)",
+                    Statement.RETURN_GENERATED_KEYS);
+            case UPDATE -> pc.prepareStatement("UPDATE students SET name = ?, email = ?, age = ?, course = ?, "
+                    + "version = version + 1 WHERE id = ?", Statement.NO_GENERATED_KEYS);
+            case DELETE -> pc.prepareStatement("DELETE FROM students WHERE id = ?", Statement.NO_GENERATED_KEYS);
+        };
+        KeyConsumer keys = kind == WriteKind.INSERT ? (i, id) -> writes.get(i).student().setId(id) : null;
+        Connection connection = pc.getConnection();
+
+        Savepoint run = connection.setSavepoint();
+        try {
+            for (int i = from; i < to; i++) {
+                bindWrite(pstmt, writes.get(i));
+                pstmt.addBatch();
+            }
+            int[] counts = pstmt.executeBatch();
+            if (keys != null) {
+                assignGeneratedKeys(pstmt, from, to, keys);
+            }
+            for (int i = 0; i < counts.length; i++) {
+                recordCount(result, from + i, counts[i]);
+            }
+        } catch (BatchUpdateException e) {
+            pstmt.clearBatch();
+            connection.rollback(run);
+            for (int i = from; i < to; i++) {
+                // Per-row savepoints keep a failed row from aborting the transaction on stricter servers
+                Savepoint row = connection.setSavepoint();
+                try {
+                    bindWrite(pstmt, writes.get(i));
+                    recordCount(result, i, pstmt.executeUpdate());
+                    if (keys != null) {
+                        assignGeneratedKeys(pstmt, i, i + 1, keys);
+                    }
+                } catch (SQLException rowError) {
+                    if (!isRowError(rowError)) {
+                        throw rowError;
+                    }
+                    connection.rollback(row);
+                    result.recordFailure(i, rowError);
+                }
+            }
+        }
+    }
+
+    private static void bindWrite(PreparedStatement pstmt, Write write) throws SQLException {
+        Student student = write.student();
+        if (write.kind() == WriteKind.DELETE) {
+            pstmt.setInt(1, student.getId());
+            return;
+        }
+        pstmt.setString(1, student.getName());
+        pstmt.setString(2, student.getEmail());
+        pstmt.setInt(3, student.getAge());
+        pstmt.setString(4, student.getCourse());
+        if (write.kind() == WriteKind.UPDATE) {
+            pstmt.setInt(5, student.getId());
+        }
+    }
+
+    // Errors caused by the row's own values (duplicate key, too long, failed CHECK) rather than the connection
+    private static boolean isRowError(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLIntegrityConstraintViolationException || e instanceof SQLDataException
+                || (state != null && (state.startsWith("22") || state.startsWith("23"))) || e.getErrorCode() == 3819;
+    }
+
+    private static boolean[] failedRows(BatchResult result, int rowCount) {
+        boolean[] failed = new boolean[rowCount];
+        for (BatchResult.Failure failure : result.getFailures()) {
+            failed[failure.index()] = true;
+        }
+        return failed;
+    }
+
+    @FunctionalInterface
+    private interface RowBinder {
+        void bind(PreparedStatement pstmt, int index) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface KeyConsumer {
+        void accept(int index, int generatedKey);
+    }
+
+    /**
+     * Runs one statement per row as JDBC batches of db.batch.size rows, committing each chunk.
+     * A chunk that fails is rolled back and replayed row by row so that only the offending
+     * rows (e.g. duplicate emails) are reported instead of aborting the whole batch. An error
+     * that is not about the row itself (see isRowError) is thrown instead.
+     */
+    private BatchResult executeBatch(String operation, String sql, int autoGeneratedKeys, int rowCount,
+                                     RowBinder binder, KeyConsumer keys) throws SQLException {
+        BatchResult result = new BatchResult(rowCount);
+        int chunkSize = Math.max(1, DatabaseConfig.getBatchSize());
+
+        DatabaseMetrics.Timer timer = metrics.start(operation);
+        try (PooledConnection pc = borrowForWrite(timer)) {
+            Connection connection = pc.getConnection();
+            PreparedStatement pstmt = pc.prepareStatement(sql, autoGeneratedKeys);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            connection.setAutoCommit(false);
+
+            for (int from = 0; from < rowCount; from += chunkSize) {
+                int to = Math.min(rowCount, from + chunkSize);
+                try {
+                    for (int i = from; i < to; i++) {
+                        binder.bind(pstmt, i);
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    if (keys != null) {
+                        assignGeneratedKeys(pstmt, from, to, keys);
+                    }
+                    connection.commit();
+                    for (int i = 0; i < counts.length; i++) {
+                        recordCount(result, from + i, counts[i]);
+                    }
+                } catch (BatchUpdateException e) {
+                    pstmt.clearBatch();
+                    connection.rollback();
+                    replayRowByRow(connection, pstmt, from, to, binder, keys, result);
+                }
+            }
+            timer.lap(DatabaseMetrics.Phase.EXECUTE);
+            timer.rows(result.getSucceeded());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+        return result;
+    }
+
+    private void replayRowByRow(Connection connection, PreparedStatement pstmt, int from, int to,
+                                RowBinder binder, KeyConsumer keys, BatchResult result) throws SQLException {
+        connection.setAutoCommit(true);
+        for (int i = from; i < to; i++) {
+            try {
+                binder.bind(pstmt, i);
+                recordCount(result, i, pstmt.executeUpdate());
+                if (keys != null) {
+                    assignGeneratedKeys(pstmt, i, i + 1, keys);
+                }
+            } catch (SQLException e) {
+                // A broken connection fails the call, not each remaining row; the pool resets auto-commit
+                if (!isRowError(e)) {
+                    throw e;
+                }
+                result.recordFailure(i, e);
+            }
+        }
+        connection.setAutoCommit(false);
+    }
+
+    private void assignGeneratedKeys(PreparedStatement pstmt, int from, int to, KeyConsumer keys) throws SQLException {
+        try (ResultSet generatedKeys = pstmt.getGeneratedKeys()) {
+            for (int i = from; i < to && generatedKeys.next(); i++) {
+                keys.accept(i, generatedKeys.getInt(1));
+            }
+        }
+    }
+
+    private void recordCount(BatchResult result, int index, int count) {
+        if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+            result.recordSuccess();
+        } else {
+            result.recordUnmatched(index);
         }
     }
 
+    /**
+     * Case-insensitive substring search. Uses the n-gram FULLTEXT index when available (the LIKE
+     * re-check keeps results identical to a plain scan); otherwise falls back to a LIKE scan.
+     */
     public List<Student> searchStudentsByName(String name) throws SQLException {
         List<Student> students = new ArrayList<>();
-        String sql = "SELECT * FROM students WHERE name LIKE ? ORDER BY name";
+        String term = name.trim().replace("\"", "");
+        // The migrations decide whether the full-text index exists
+        ensureSchema();
+        boolean useFullText = fullTextSearch && hasNgramToken(term);
+        String sql = useFullText
+                ? "SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE MATCH(name) AGAINST (? IN BOOLEAN MODE) AND name LIKE ? ESCAPE '!' ORDER BY " + nameKey + ", id"
+                : "SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE name LIKE ? ESCAPE '!' ORDER BY " + nameKey + ", id";
 
-        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
-            pstmt.setString(1, "%" + name + "%");
+        DatabaseMetrics.Timer timer = metrics.start("searchStudentsByName");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            int index = 1;
+            if (useFullText) {
+                pstmt.setString(index++, "\"" + term + "\"");
+            }
+            pstmt.setString(index, "%" + escapeLike(name) + "%");
 
             try (ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    students.add(new Student(
-                            rs.getInt("id"),
-                            rs.getString("name"),
-                            rs.getString("email"),
-                            rs.getInt("age"),
-                            rs.getString("course")
-                    ));
-                }
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper.of(rs).mapAll(rs, students);
+                timer.lap(DatabaseMetrics.Phase.MAP);
+                timer.rows(students.size());
             }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
         }
         return students;
     }
 
+    // The n-gram parser skips whitespace and any run shorter than NGRAM_TOKEN_SIZE, so MATCH needs one long enough
+    private static boolean hasNgramToken(String term) {
+        int run = 0;
+        for (int i = 0; i < term.length(); i += Character.charCount(term.codePointAt(i))) {
+            if (Character.isWhitespace(term.codePointAt(i))) {
+                run = 0;
+            } else if (++run >= NGRAM_TOKEN_SIZE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Prefix search is a range scan on idx_students_name_id, or on the replica's name index
+    public List<Student> searchStudentsByNamePrefix(String prefix) throws SQLException {
+        if (replica != null) {
+            return replica.searchStudentsByNamePrefix(prefix);
+        }
+        List<Student> students = new ArrayList<>();
+        String sql = "SELECT " + StudentRowMapper.COLUMNS + " FROM students WHERE name LIKE ? ESCAPE '!' ORDER BY name, id";
+
+        DatabaseMetrics.Timer timer = metrics.start("searchStudentsByNamePrefix");
+        try (PooledConnection pc = borrowForRead(timer)) {
+            PreparedStatement pstmt = pc.prepareStatement(sql);
+            timer.lap(DatabaseMetrics.Phase.PREPARE);
+            pstmt.setString(1, escapeLike(prefix) + "%");
+
+            try (ResultSet rs = pstmt.executeQuery()) {
+                timer.lap(DatabaseMetrics.Phase.EXECUTE);
+                StudentRowMapper.of(rs).mapAll(rs, students);
+                timer.lap(DatabaseMetrics.Phase.MAP);
+                timer.rows(students.size());
+            }
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+        return students;
+    }
+
+    /**
+     * Type-ahead suggestions from the in-process trigram index, built from the table on first
+     * use and kept current by this manager's writes (writes from other processes are not seen).
+     */
+    public List<NameSearchIndex.Match> typeAhead(String fragment, int limit) throws SQLException {
+        NameSearchIndex index = nameIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = nameIndex;
+                if (index == null) {
+                    NameSearchIndex built = new NameSearchIndex();
+                    scanStudents(student -> built.put(student.getId(), student.getName()));
+                    nameIndex = index = built;
+                }
+            }
+        }
+        return index.search(fragment, limit);
+    }
+
+    private void indexName(Student student) {
+        NameSearchIndex index = nameIndex;
+        if (index != null) {
+            index.put(student.getId(), student.getName());
+        }
+    }
+
+    private PooledConnection borrow(DatabaseMetrics.Timer timer) throws SQLException {
+        ensureSchema();
+        PooledConnection pc = pool.borrow();
+        timer.lap(DatabaseMetrics.Phase.ACQUIRE);
+        return pc;
+    }
+
+    // Reads go to a read replica when db.readReplicas.urls is set; see ReadRouter
+    private PooledConnection borrowForRead(DatabaseMetrics.Timer timer) throws SQLException {
+        if (readRouter == null) {
+            return borrow(timer);
+        }
+        ensureSchema();
+        PooledConnection pc = readRouter.borrowForRead();
+        timer.lap(DatabaseMetrics.Phase.ACQUIRE);
+        return pc;
+    }
+
+    // Once the write's connection is handed back, the caller's ReadSession reads from the primary for a while
+    private PooledConnection borrowForWrite(DatabaseMetrics.Timer timer) throws SQLException {
+        PooledConnection pc = borrow(timer);
+        if (readRouter != null) {
+            pc.onReturn(readRouter::noteWrite);
+        }
+        return pc;
+    }
+
+    private static String escapeLike(String value) {
+        return value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+    }
+
+    public int getMaxConnections() {
+        return pool.getMaxSize();
+    }
+
+    public ConnectionPool.Stats getPoolStats() {
+        return pool.stats();
+    }
+
+    public DatabaseMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Null when the student cache is disabled
+    public StudentCache.Stats getCacheStats() {
+        return cache != null ? cache.stats() : null;
+    }
+
+    // Read routing counters and per-endpoint read latency, or null without read replicas
+    public String getReadRoutingReport() {
+        return readRouter != null ? readRouter.report() : null;
+    }
+
+    @Override
+    public String getStatistics() {
+        StudentCache.Stats cacheStats = getCacheStats();
+        String statistics = metrics.report()
+                + "Pool:  " + pool.stats() + "\n"
+                + "Cache: " + (cacheStats != null ? cacheStats : "disabled") + "\n";
+        return readRouter != null ? statistics + readRouter.report() : statistics;
+    }
+
+    @Override
     public void close() throws SQLException {
-        if (connection != null && !connection.isClosed()) {
-            connection.close();
+        if (replica != null) {
+            replica.close();
+        }
+        if (readRouter != null) {
+            readRouter.close();
         }
+        metrics.close();
+        pool.close();
     }
 }
@@ -0,0 +1,182 @@
+// DatabaseMetrics.java - Per-operation counters and latency histograms for DatabaseManager
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+class DatabaseMetrics implements AutoCloseable {
+    enum Phase { ACQUIRE, PREPARE, EXECUTE, MAP }
+
+    static final class OperationStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LatencyHistogram total = new LatencyHistogram();
+        final LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+
+        OperationStats() {
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Times one call. lap() charges the time since the previous lap to a phase; stop() records
+     * the whole call. A disabled recorder hands out a shared timer that does nothing.
+     */
+    static final class Timer {
+        private final OperationStats stats;
+        private final Map<Integer, LongAdder> errorsByCode;
+        private final long started;
+        private long last;
+
+        private Timer(OperationStats stats, Map<Integer, LongAdder> errorsByCode) {
+            this.stats = stats;
+            this.errorsByCode = errorsByCode;
+            this.started = stats == null ? 0 : System.nanoTime();
+            this.last = started;
+        }
+
+        void lap(Phase phase) {
+            if (stats != null) {
+                long now = System.nanoTime();
+                stats.phases[phase.ordinal()].record(now - last);
+                last = now;
+            }
+        }
+
+        void rows(long count) {
+            if (stats != null) {
+                stats.rows.add(count);
+            }
+        }
+
+        // Counts the error and hands it back so callers can write "throw timer.failed(e)"
+        SQLException failed(SQLException e) {
+            if (stats != null) {
+                stats.errors.increment();
+                errorsByCode.computeIfAbsent(e.getErrorCode(), code -> new LongAdder()).increment();
+            }
+            return e;
+        }
+
+        void stop() {
+            StartupClock.queryServed();
+            if (stats != null) {
+                stats.calls.increment();
+                stats.total.record(System.nanoTime() - started);
+            }
+        }
+    }
+
+    private static final Timer DISABLED = new Timer(null, null);
+
+    private final boolean enabled;
+    private final Map<String, OperationStats> operations = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> errorsByCode = new ConcurrentHashMap<>();
+    private ScheduledExecutorService dumper;
+
+    DatabaseMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    static DatabaseMetrics fromConfig() {
+        DatabaseMetrics metrics = new DatabaseMetrics(DatabaseConfig.isMetricsEnabled());
+        String dumpFile = DatabaseConfig.getMetricsDumpFile();
+        if (metrics.enabled && dumpFile != null && !dumpFile.isBlank()) {
+            metrics.startPeriodicDump(Path.of(dumpFile), DatabaseConfig.getMetricsDumpIntervalSeconds());
+        }
+        return metrics;
+    }
+
+    public boolean isEnabled() { return enabled; }
+
+    Timer start(String operation) {
+        if (!enabled) {
+            return DISABLED;
+        }
+        OperationStats stats = operations.get(operation);
+        if (stats == null) {
+            stats = operations.computeIfAbsent(operation, op -> new OperationStats());
+        }
+        return new Timer(stats, errorsByCode);
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        if (!enabled) {
+            return "Metrics are disabled (db.metrics.enabled=false)\n";
+        }
+
+        sb.append(String.format("%-26s %8s %6s %9s %10s %10s %10s  %s%n",
+                "Operation", "Calls", "Errors", "Rows", "p50 ms", "p99 ms", "p999 ms", "phase p99 ms (acq/prep/exec/map)"));
+        for (Map.Entry<String, OperationStats> entry : new TreeMap<>(operations).entrySet()) {
+            OperationStats stats = entry.getValue();
+            sb.append(String.format("%-26s %8d %6d %9d %10.3f %10.3f %10.3f  %.3f/%.3f/%.3f/%.3f%n",
+                    entry.getKey(), stats.calls.sum(), stats.errors.sum(), stats.rows.sum(),
+                    millis(stats.total.getPercentileNanos(50)),
+                    millis(stats.total.getPercentileNanos(99)),
+                    millis(stats.total.getPercentileNanos(99.9)),
+                    millis(stats.phases[Phase.ACQUIRE.ordinal()].getPercentileNanos(99)),
+                    millis(stats.phases[Phase.PREPARE.ordinal()].getPercentileNanos(99)),
+                    millis(stats.phases[Phase.EXECUTE.ordinal()].getPercentileNanos(99)),
+                    millis(stats.phases[Phase.MAP.ordinal()].getPercentileNanos(99))));
+        }
+
+        if (!errorsByCode.isEmpty()) {
+            sb.append("Errors by SQL error code:");
+            new TreeMap<>(errorsByCode).forEach((code, count) -> sb.append(' ').append(code).append('=').append(count.sum()));
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    public void reset() {
+        operations.clear();
+        errorsByCode.clear();
+    }
+
+    synchronized void startPeriodicDump(Path file, long intervalSeconds) {
+        if (dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dumpTo(file), intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    void dumpTo(Path file) {
+        String text = "=== " + LocalDateTime.now() + " ===\n" + report();
+        try {
+            Files.writeString(file, text, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (IOException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (dumper != null) {
+            dumper.shutdownNow();
+            dumper = null;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
@@ -0,0 +1,186 @@
+// FastValidator.java - Single-pass, allocation-free validation of student records
+/**
+ * Hand-written equivalents of the InputValidator rules, each a single forward scan with no
+ * regex engine, no backtracking and no trimmed copies:
+ *
+ *   name   2..50 chars, each A-Z, a-z or one of \s ( \t \n \u000B \f \r)  (NAME_PATTERN)
+ *   email  one or more of A-Z a-z 0-9 + _ . - , then '@', then one or more chars that are
+ *          not line terminators (\n \r U+0085 U+2028 U+2029), which is what EMAIL_PATTERN's
+ *          (.+)$ accepts under matches()
+ *   age    1..149
+ *   course 2..100 chars once leading and trailing chars <= ' ' are ignored (String.trim)
+ *
+ * Results are bit masks of the failing fields, 0 when the record is valid. The benchmark
+ * harness checks every rule against the regexes on generated inputs.
+ */
+final class FastValidator {
+    static final int NAME = 1;
+    static final int EMAIL = 1 << 1;
+    static final int AGE = 1 << 2;
+    static final int COURSE = 1 << 3;
+
+    // Bit c set for every ASCII char c allowed in the local part of an email
+    private static final long EMAIL_LOCAL_LOW;
+    private static final long EMAIL_LOCAL_HIGH;
+
+    static {
+        long low = 0;
+        long high = 0;
+        String allowed = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+_.-";
+        for (int i = 0; i < allowed.length(); i++) {
+            char c = allowed.charAt(i);
+            if (c < 64) {
+                low |= 1L << c;
+            } else {
+                high |= 1L << (c - 64);
+            }
+        }
+        EMAIL_LOCAL_LOW = low;
+        EMAIL_LOCAL_HIGH = high;
+    }
+
+    private FastValidator() {}
+
+    public static int validate(Student student) {
+        return validate(student.getName(), student.getEmail(), student.getAge(), student.getCourse());
+    }
+
+    public static int validate(String name, String email, int age, String course) {
+        int failures = 0;
+        if (!isValidName(name)) {
+            failures |= NAME;
+        }
+        if (!isValidEmail(email)) {
+            failures |= EMAIL;
+        }
+        failures |= ageFailure(age);
+        if (!isValidCourse(course)) {
+            failures |= COURSE;
+        }
+        return failures;
+    }
+
+    /**
+     * Validates count records laid out as parallel columns, writing each record's mask to
+     * masks, and returns how many records failed. Ages are checked first in a branch-free loop
+     * the JIT can vectorize; the text columns are then scanned per record.
+     */
+    public static int validateAll(String[] names, String[] emails, int[] ages, String[] courses,
+                                  int count, int[] masks) {
+        for (int i = 0; i < count; i++) {
+            masks[i] = ageFailure(ages[i]);
+        }
+        int invalid = 0;
+        for (int i = 0; i < count; i++) {
+            int failures = masks[i];
+            if (!isValidName(names[i])) {
+                failures |= NAME;
+            }
+            if (!isValidEmail(emails[i])) {
+                failures |= EMAIL;
+            }
+            if (!isValidCourse(courses[i])) {
+                failures |= COURSE;
+            }
+            masks[i] = failures;
+            invalid += (failures | -failures) >>> 31;
+        }
+        return invalid;
+    }
+
+    // Same wording and field order as InputValidator.describeInvalid; null for 0
+    public static String describe(int failures) {
+        if ((failures & NAME) != 0) {
+            return "invalid name";
+        }
+        if ((failures & EMAIL) != 0) {
+            return "invalid email";
+        }
+        if ((failures & AGE) != 0) {
+            return "invalid age";
+        }
+        if ((failures & COURSE) != 0) {
+            return "invalid course";
+        }
+        return null;
+    }
+
+    public static boolean isValidName(String name) {
+        if (name == null) {
+            return false;
+        }
+        int length = name.length();
+        if (length < 2 || length > 50) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = name.charAt(i);
+            char letter = (char) (c | 0x20);
+            if ((letter < 'a' || letter > 'z') && c != ' ' && (c < '\t' || c > '\r')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isValidEmail(String email) {
+        if (email == null) {
+            return false;
+        }
+        int length = email.length();
+        int i = 0;
+        while (i < length) {
+            char c = email.charAt(i);
+            if (c == '@') {
+                break;
+            }
+            if (!isEmailLocalChar(c)) {
+                return false;
+            }
+            i++;
+        }
+        // Needs a non-empty local part, the '@', and at least one char after it
+        if (i == 0 || i >= length - 1) {
+            return false;
+        }
+        for (i++; i < length; i++) {
+            char c = email.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isValidAge(int age) {
+        return ageFailure(age) == 0;
+    }
+
+    public static boolean isValidCourse(String course) {
+        if (course == null) {
+            return false;
+        }
+        int start = 0;
+        int end = course.length();
+        while (start < end && course.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && course.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        int length = end - start;
+        return length >= 2 && length <= 100;
+    }
+
+    // AGE when age is outside 1..149: one of age - 1 and 149 - age is negative exactly then
+    private static int ageFailure(int age) {
+        return (((age - 1) | (149 - age)) >>> 31) << 2;
+    }
+
+    private static boolean isEmailLocalChar(char c) {
+        if (c < 64) {
+            return (EMAIL_LOCAL_LOW & (1L << c)) != 0;
+        }
+        return c < 128 && (EMAIL_LOCAL_HIGH & (1L << (c - 64))) != 0;
+    }
+}
@@ -0,0 +1,724 @@
+// InMemoryStudentStore.java - Embedded storage engine: in-memory indexes over a write-ahead log
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps every row in memory behind three indexes: id -> slot in a primitive IntIntHashMap,
+ * lowercased email -> id for the unique constraint, and a TreeSet in (name, id) order for
+ * listings, pages and name search. One read-write lock guards them, so reads run in parallel.
+ *
+ * A write is appended to the write-ahead log and applied under the write lock, then waits for
+ * the log after releasing it, so writers arriving together share one fsync. Readers can see
+ * a write a moment before it is durable. Once the log fails, memory may hold writes that never
+ * reached the disk, so the store refuses every later read and write (and no snapshot is taken);
+ * reopening it recovers the last durable state.
+ * When the current log segment passes storage.memory.compactBytes a background thread writes
+ * a snapshot and deletes the segments it covers; opening the store loads the snapshot and
+ * replays the log after it. Without storage.memory.dir nothing is persisted.
+ *
+ * Stored rows are never modified in place (an update swaps in a new Student), which is what
+ * lets a snapshot copy references under the lock and serialize them after releasing it.
+ */
+class InMemoryStudentStore implements StudentStore {
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+
+    private static final String SNAPSHOT_FILE = "students.snapshot";
+    private static final int SNAPSHOT_MAGIC = 0x53544D53;
+    private static final int SNAPSHOT_FORMAT = 1;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntIntHashMap slotsById = new IntIntHashMap(1024);
+    private Student[] rows = new Student[1024];
+    private int usedSlots;
+    private int[] freeSlots = new int[64];
+    private int freeCount;
+    private final Map<String, Integer> idsByEmail = new HashMap<>();
+    private final NavigableSet<Student> byName = new TreeSet<>(NAME_ORDER);
+    private int nextId = 1;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final WriteAheadLog log;
+    private final long compactBytes;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private volatile int snapshotsWritten;
+    private final DatabaseMetrics metrics;
+
+    // directory null keeps everything in memory only
+    InMemoryStudentStore(Path directory, boolean fsync, long compactBytes, DatabaseMetrics metrics) throws SQLException {
+        this.directory = directory;
+        this.fsync = fsync;
+        this.compactBytes = compactBytes;
+        this.metrics = metrics;
+        if (directory == null) {
+            this.log = null;
+            this.compactor = null;
+            return;
+        }
+        try {
+            Files.createDirectories(directory);
+            long firstSegment = loadSnapshot();
+            WriteAheadLog.replay(directory, firstSegment, this::applyRecord);
+            this.log = new WriteAheadLog(directory, fsync);
+        } catch (IOException | UncheckedIOException e) {
+            metrics.close();
+            throw new SQLException("Could not open the student store in " + directory, e);
+        }
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "student-store-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    static InMemoryStudentStore fromConfig() throws SQLException {
+        String dir = DatabaseConfig.getMemoryStoreDir();
+        return new InMemoryStudentStore(dir == null || dir.isBlank() ? null : Path.of(dir),
+                DatabaseConfig.isMemoryStoreFsyncEnabled(), DatabaseConfig.getMemoryStoreCompactBytes(),
+                DatabaseMetrics.fromConfig());
+    }
+
+    @Override
+    public boolean addStudent(Student student) throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("addStudent");
+        try {
+            long position;
+            lock.writeLock().lock();
+            try {
+                position = insert(student);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            awaitDurable(position);
+            timer.rows(1);
+            return true;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Inserts the rows db.batch.size at a time, each chunk under one lock hold, and waits for
+     * the log once at the end. Rows that break a constraint are reported in the result and
+     * the rest are still inserted, as with DatabaseManager.addStudents.
+     */
+    @Override
+    public BatchResult addStudents(Collection<Student> students) throws SQLException {
+        List<Student> batch = new ArrayList<>(students);
+        BatchResult result = new BatchResult(batch.size());
+        int chunkSize = Math.max(1, DatabaseConfig.getBatchSize());
+
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("addStudents");
+        try {
+            long position = 0;
+            for (int from = 0; from < batch.size(); from += chunkSize) {
+                int to = Math.min(batch.size(), from + chunkSize);
+                lock.writeLock().lock();
+                try {
+                    for (int i = from; i < to; i++) {
+                        try {
+                            position = insert(batch.get(i));
+                            result.recordSuccess();
+                        } catch (SQLException e) {
+                            if (isLogFailure(e)) {
+                                throw e;
+                            }
+                            result.recordFailure(i, e);
+                        }
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+            awaitDurable(position);
+            timer.rows(result.getSucceeded());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+        return result;
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("getStudentById");
+        lock.readLock().lock();
+        try {
+            Student row = row(id);
+            if (row == null) {
+                return null;
+            }
+            timer.rows(1);
+            return copyOf(row);
+        } finally {
+            lock.readLock().unlock();
+            timer.stop();
+        }
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("getAllStudents");
+        lock.readLock().lock();
+        try {
+            List<Student> students = new ArrayList<>(byName.size());
+            for (Student row : byName) {
+                students.add(copyOf(row));
+            }
+            timer.rows(students.size());
+            return students;
+        } finally {
+            lock.readLock().unlock();
+            timer.stop();
+        }
+    }
+
+    // Same (name, id) keyset tokens as DatabaseManager; each page is a seek in the name index
+    @Override
+    public StudentPage getStudentsPage(String pageToken, int pageSize) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        Student after = pageToken == null ? null : StudentPage.decodeToken(pageToken);
+        List<Student> students = new ArrayList<>(pageSize + 1);
+
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("getStudentsPage");
+        lock.readLock().lock();
+        try {
+            for (Student row : after == null ? byName : byName.tailSet(after, false)) {
+                students.add(copyOf(row));
+                if (students.size() > pageSize) {
+                    break;
+                }
+            }
+            timer.rows(students.size());
+        } finally {
+            lock.readLock().unlock();
+            timer.stop();
+        }
+
+        if (students.size() <= pageSize) {
+            return new StudentPage(students, null);
+        }
+        students.remove(pageSize);
+        return new StudentPage(students, StudentPage.encodeToken(students.get(pageSize - 1)));
+    }
+
+    // Case-insensitive substring match in name order, like the LIKE '%name%' fallback
+    @Override
+    public List<Student> searchStudentsByName(String name) throws SQLException {
+        List<Student> students = new ArrayList<>();
+
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("searchStudentsByName");
+        lock.readLock().lock();
+        try {
+            for (Student row : byName) {
+                if (containsIgnoreCase(row.getName(), name)) {
+                    students.add(copyOf(row));
+                }
+            }
+            timer.rows(students.size());
+        } finally {
+            lock.readLock().unlock();
+            timer.stop();
+        }
+        return students;
+    }
+
+    @Override
+    public int countStudents() throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("countStudents");
+        lock.readLock().lock();
+        try {
+            return byName.size();
+        } finally {
+            lock.readLock().unlock();
+            timer.stop();
+        }
+    }
+
+    @Override
+    public boolean updateStudent(Student student) throws SQLException {
+        Student values = copyOf(student);
+        return replace("updateStudent", student.getId(), -1, current -> values) == UpdateResult.UPDATED;
+    }
+
+    @Override
+    public UpdateResult updateStudentIfVersion(Student student, int expectedVersion) throws SQLException {
+        Student values = copyOf(student);
+        UpdateResult result = replace("updateStudentIfVersion", student.getId(), expectedVersion, current -> values);
+        if (result == UpdateResult.UPDATED) {
+            student.setVersion(expectedVersion + 1);
+        }
+        return result;
+    }
+
+    @Override
+    public UpdateResult updateChangedFields(Student original, Student updated) throws SQLException {
+        if (original.getId() != updated.getId()) {
+            throw new IllegalArgumentException("Original and updated rows have different ids");
+        }
+        boolean name = !original.getName().equals(updated.getName());
+        boolean email = !original.getEmail().equals(updated.getEmail());
+        boolean age = original.getAge() != updated.getAge();
+        boolean course = !original.getCourse().equals(updated.getCourse());
+        if (!name && !email && !age && !course) {
+            updated.setVersion(original.getVersion());
+            return UpdateResult.UPDATED;
+        }
+
+        UpdateResult result = replace("updateChangedFields", updated.getId(), original.getVersion(), current -> {
+            Student row = copyOf(current);
+            if (name) {
+                row.setName(updated.getName());
+            }
+            if (email) {
+                row.setEmail(updated.getEmail());
+            }
+            if (age) {
+                row.setAge(updated.getAge());
+            }
+            if (course) {
+                row.setCourse(updated.getCourse());
+            }
+            return row;
+        });
+        if (result == UpdateResult.UPDATED) {
+            updated.setVersion(original.getVersion() + 1);
+        }
+        return result;
+    }
+
+    @Override
+    public boolean deleteStudent(int id) throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start("deleteStudent");
+        try {
+            long position;
+            lock.writeLock().lock();
+            try {
+                if (row(id) == null) {
+                    return false;
+                }
+                position = append(ByteBuffer.allocate(5).put(DELETE).putInt(id).flip());
+                uninstall(id);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            awaitDurable(position);
+            timer.rows(1);
+            return true;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public String getStatistics() {
+        int count;
+        lock.readLock().lock();
+        try {
+            count = byName.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+        StringBuilder sb = new StringBuilder(metrics.report());
+        sb.append("Store: memory, ").append(count).append(" rows");
+        if (log == null) {
+            sb.append(", not persisted (storage.memory.dir unset)\n");
+            return sb.toString();
+        }
+        long records = log.getRecords();
+        long syncs = log.getSyncs();
+        sb.append(", ").append(directory.toAbsolutePath()).append('\n');
+        sb.append(String.format("Log:   %d records, %d syncs (%.1f records/sync), %d bytes in current segment, "
+                        + "%d snapshots%n", records, syncs, syncs == 0 ? 0.0 : (double) records / syncs,
+                log.getSegmentBytes(), snapshotsWritten));
+        return sb.toString();
+    }
+
+    /**
+     * Writes a snapshot of every row and deletes the log segments it replaces. Runs on its own
+     * when the log grows past storage.memory.compactBytes; writers are only held off while
+     * the log is rotated and the row references are copied.
+     */
+    void compact() throws IOException {
+        if (log == null) {
+            return;
+        }
+        Student[] snapshot;
+        int snapshotNextId;
+        long firstSegment;
+        lock.writeLock().lock();
+        try {
+            firstSegment = log.rotate();
+            snapshot = new Student[byName.size()];
+            int n = 0;
+            for (int slot = 0; slot < usedSlots; slot++) {
+                if (rows[slot] != null) {
+                    snapshot[n++] = rows[slot];
+                }
+            }
+            snapshotNextId = nextId;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writeSnapshot(snapshot, snapshotNextId, firstSegment);
+        log.deleteSegmentsBefore(firstSegment);
+        snapshotsWritten++;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            if (compactor != null) {
+                compactor.shutdown();
+                if (!compactor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    throw new SQLException("Timed out waiting for a snapshot to finish");
+                }
+            }
+            if (log != null) {
+                log.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while closing the student store", e);
+        } catch (IOException e) {
+            throw new SQLException("Could not close the write-ahead log", e);
+        } finally {
+            metrics.close();
+        }
+    }
+
+    // Caller holds the write lock; assigns the next id and returns the log position to wait for
+    private long insert(Student student) throws SQLException {
+        Student row = copyOf(student);
+        row.setId(nextId);
+        row.setVersion(0);
+        checkConstraints(row);
+        long position = append(encodePut(row));
+        install(row);
+        student.setId(row.getId());
+        student.setVersion(0);
+        return position;
+    }
+
+    // Swaps in change(current) with the version bumped; expectedVersion < 0 skips the check
+    private UpdateResult replace(String operation, int id, int expectedVersion, UnaryOperator<Student> change)
+            throws SQLException {
+        ensureUsable();
+        DatabaseMetrics.Timer timer = metrics.start(operation);
+        try {
+            long position;
+            lock.writeLock().lock();
+            try {
+                Student current = row(id);
+                if (current == null) {
+                    return UpdateResult.NOT_FOUND;
+                }
+                if (expectedVersion >= 0 && current.getVersion() != expectedVersion) {
+                    return UpdateResult.CONFLICT;
+                }
+                Student row = change.apply(current);
+                row.setId(id);
+                row.setVersion(current.getVersion() + 1);
+                checkConstraints(row);
+                position = append(encodePut(row));
+                install(row);
+            } finally {
+                lock.writeLock().unlock();
+            }
+            awaitDurable(position);
+            timer.rows(1);
+            return UpdateResult.UPDATED;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    // The table's NOT NULL, VARCHAR, UNIQUE(email) and CHECK(age) constraints, with MySQL's error codes
+    private void checkConstraints(Student row) throws SQLException {
+        checkColumn("name", row.getName(), 100);
+        checkColumn("email", row.getEmail(), 150);
+        checkColumn("course", row.getCourse(), 100);
+        if (row.getAge() <= 0 || row.getAge() >= 150) {
+            throw new SQLException("Check constraint 'students_chk_1' is violated.", "HY000", 3819);
+        }
+        Integer owner = idsByEmail.get(emailKey(row.getEmail()));
+        if (owner != null && owner != row.getId()) {
+            throw new SQLException("Duplicate entry '" + row.getEmail() + "' for key 'students.email'", "23000", 1062);
+        }
+    }
+
+    private static void checkColumn(String column, String value, int maxLength) throws SQLException {
+        if (value == null) {
+            throw new SQLException("Column '" + column + "' cannot be null", "23000", 1048);
+        }
+        if (value.length() > maxLength && value.codePointCount(0, value.length()) > maxLength) {
+            throw new SQLException("Data too long for column '" + column + "' at row 1", "22001", 1406);
+        }
+    }
+
+    private long append(ByteBuffer record) throws SQLException {
+        if (log == null) {
+            return 0;
+        }
+        try {
+            return log.append(record);
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the write-ahead log", "58030", e);
+        }
+    }
+
+    private void awaitDurable(long position) throws SQLException {
+        if (log == null) {
+            return;
+        }
+        try {
+            log.sync(position);
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the write-ahead log", "58030", e);
+        }
+        if (log.getSegmentBytes() >= compactBytes && compacting.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.err.println("Could not write a snapshot to " + directory + ": " + e.getMessage());
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        }
+    }
+
+    private void ensureUsable() throws SQLException {
+        if (log != null && log.hasFailed()) {
+            throw new SQLException("The student store stopped after a write-ahead log failure; reopen it to recover",
+                    "58030");
+        }
+    }
+
+    private static boolean isLogFailure(SQLException e) {
+        return "58030".equals(e.getSQLState());
+    }
+
+    // Caller holds a lock
+    private Student row(int id) {
+        int slot = slotsById.get(id);
+        return slot < 0 ? null : rows[slot];
+    }
+
+    // Caller holds the write lock (or is recovering); replaces any row with the same id
+    private void install(Student row) {
+        int slot = slotsById.get(row.getId());
+        if (slot >= 0) {
+            Student old = rows[slot];
+            byName.remove(old);
+            idsByEmail.remove(emailKey(old.getEmail()));
+        } else {
+            slot = allocateSlot();
+            slotsById.put(row.getId(), slot);
+        }
+        rows[slot] = row;
+        byName.add(row);
+        idsByEmail.put(emailKey(row.getEmail()), row.getId());
+        nextId = Math.max(nextId, row.getId() + 1);
+    }
+
+    private void uninstall(int id) {
+        int slot = slotsById.remove(id);
+        if (slot < 0) {
+            return;
+        }
+        Student old = rows[slot];
+        rows[slot] = null;
+        byName.remove(old);
+        idsByEmail.remove(emailKey(old.getEmail()));
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (usedSlots == rows.length) {
+            rows = Arrays.copyOf(rows, rows.length * 2);
+        }
+        return usedSlots++;
+    }
+
+    private static String emailKey(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static Student copyOf(Student row) {
+        Student copy = new Student(row.getId(), row.getName(), row.getEmail(), row.getAge(), row.getCourse());
+        copy.setVersion(row.getVersion());
+        return copy;
+    }
+
+    private static boolean containsIgnoreCase(String text, String part) {
+        for (int i = 0, last = text.length() - part.length(); i <= last; i++) {
+            if (text.regionMatches(true, i, part, 0, part.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // PUT: type, id, version, age, then name, email and course as length-prefixed UTF-8
+    private static ByteBuffer encodePut(Student row) {
+        byte[] name = row.getName().getBytes(StandardCharsets.UTF_8);
+        byte[] email = row.getEmail().getBytes(StandardCharsets.UTF_8);
+        byte[] course = row.getCourse().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(1 + 3 * Integer.BYTES + 3 * Integer.BYTES
+                + name.length + email.length + course.length);
+        record.put(PUT).putInt(row.getId()).putInt(row.getVersion()).putInt(row.getAge());
+        record.putInt(name.length).put(name);
+        record.putInt(email.length).put(email);
+        record.putInt(course.length).put(course);
+        return record.flip();
+    }
+
+    private void applyRecord(ByteBuffer record) {
+        byte type = record.get();
+        int id = record.getInt();
+        if (type == DELETE) {
+            uninstall(id);
+            return;
+        }
+        if (type != PUT) {
+            throw new UncheckedIOException(new IOException("Unknown log record type " + type));
+        }
+        Student row = new Student();
+        row.setId(id);
+        row.setVersion(record.getInt());
+        row.setAge(record.getInt());
+        row.setName(readString(record));
+        row.setEmail(readString(record));
+        row.setCourse(readString(record));
+        install(row);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the first log segment the snapshot does not cover (1 when there is no snapshot)
+    private long loadSnapshot() throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 1;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_FORMAT) {
+                throw new IOException(file + " is not a student store snapshot");
+            }
+            long firstSegment = in.readLong();
+            int snapshotNextId = in.readInt();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                Student row = new Student();
+                row.setId(in.readInt());
+                row.setVersion(in.readInt());
+                row.setAge(in.readInt());
+                row.setName(in.readUTF());
+                row.setEmail(in.readUTF());
+                row.setCourse(in.readUTF());
+                install(row);
+            }
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException(file + " is truncated");
+            }
+            nextId = Math.max(nextId, snapshotNextId);
+            return firstSegment;
+        }
+    }
+
+    // Written to a temporary file and renamed over the old snapshot, so a crash leaves one intact
+    private void writeSnapshot(Student[] snapshot, int snapshotNextId, long firstSegment) throws IOException {
+        Path file = directory.resolve(SNAPSHOT_FILE);
+        Path temp = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeInt(SNAPSHOT_FORMAT);
+            out.writeLong(firstSegment);
+            out.writeInt(snapshotNextId);
+            out.writeInt(snapshot.length);
+            for (Student row : snapshot) {
+                out.writeInt(row.getId());
+                out.writeInt(row.getVersion());
+                out.writeInt(row.getAge());
+                out.writeUTF(row.getName());
+                out.writeUTF(row.getEmail());
+                out.writeUTF(row.getCourse());
+            }
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.flush();
+            if (fsync) {
+                channel.force(true);
+            }
+        }
+        Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        if (fsync) {
+            // Makes the rename itself durable before the old segments go
+            try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+                dir.force(true);
+            } catch (IOException e) {
+                // Not supported on every platform
+            }
+        }
+    }
+}
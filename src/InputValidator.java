@@ -23,4 +23,10 @@ class InputValidator {
     public static boolean isValidCourse(String course) {
         return course != null && course.trim().length() >= 2 && course.trim().length() <= 100;
     }
+
+    // Returns what is wrong with a record (the first failing field), or null when it is valid.
+    // Checked by FastValidator, which applies the same rules without the regex engine.
+    public static String describeInvalid(String name, String email, int age, String course) {
+        return FastValidator.describe(FastValidator.validate(name, email, age, course));
+    }
 }
@@ -0,0 +1,118 @@
+// IntIntHashMap.java - Open-addressing int -> int map without boxing
+import java.util.Arrays;
+
+/**
+ * Linear-probing hash map from int keys to int values. Integer.MIN_VALUE is reserved as the
+ * empty-slot marker and cannot be used as a key; get() returns -1 for a missing key.
+ */
+final class IntIntHashMap {
+    private static final int EMPTY = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+
+    IntIntHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, expectedSize * 2 - 1)) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+    }
+
+    private IntIntHashMap(IntIntHashMap other) {
+        keys = other.keys.clone();
+        values = other.values.clone();
+        size = other.size;
+    }
+
+    IntIntHashMap copy() {
+        return new IntIntHashMap(this);
+    }
+
+    int size() {
+        return size;
+    }
+
+    int get(int key) {
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            int k = keys[slot];
+            if (k == key) {
+                return values[slot];
+            }
+            if (k == EMPTY) {
+                return -1;
+            }
+        }
+    }
+
+    void put(int key, int value) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + key + " is reserved");
+        }
+        if ((size + 1) * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+        int mask = keys.length - 1;
+        for (int slot = mix(key) & mask; ; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+            if (keys[slot] == EMPTY) {
+                keys[slot] = key;
+                values[slot] = value;
+                size++;
+                return;
+            }
+        }
+    }
+
+    // Returns the removed value, or -1 when the key was absent
+    int remove(int key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (keys[slot] != key) {
+            if (keys[slot] == EMPTY) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int removed = values[slot];
+        size--;
+
+        // Backward-shift the rest of the probe run so no tombstone is needed
+        int hole = slot;
+        for (int next = (hole + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = mix(keys[next]) & mask;
+            // Move the entry unless its home slot lies cyclically in (hole, next]
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        return removed;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Sequential ids would otherwise fill one contiguous run of slots
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
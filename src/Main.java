@@ -1,6 +1,206 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+
 public class Main {
     public static void main(String[] args) {
+        StartupClock.begin();
+        DatabaseManager.preload();
+
+        if (args.length > 0 && "--import".equals(args[0])) {
+            System.exit(runImport(args));
+        }
+        if (args.length > 0 && "--export".equals(args[0])) {
+            System.exit(runExport(args));
+        }
+        if (args.length > 0 && "--list".equals(args[0])) {
+            System.exit(runList(args));
+        }
+        if (args.length > 0 && "--batch".equals(args[0])) {
+            System.exit(runBatch(args));
+        }
+        if (args.length > 0 && "--serve".equals(args[0])) {
+            System.exit(runServer(args));
+        }
+
         // Start the Student Database Application
         StudentDatabaseApp.main(args);
     }
+
+    // java Main --import <file.csv|file.jsonl> [--resume]
+    private static int runImport(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Main --import <file.csv|file.jsonl> [--resume]");
+            return 2;
+        }
+        Path file = Path.of(args[1]);
+        boolean resume = args.length > 2 && "--resume".equals(args[2]);
+
+        try (StudentStore store = StudentStore.open()) {
+            BulkImporter importer = new BulkImporter(store, System.out);
+            importer.report(file, importer.importFile(file, resume));
+            return 0;
+        } catch (SQLException e) {
+            System.err.println("Database error during import: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Import failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // java Main --export <file.csv|file.jsonl|file.stuc>[.gz]
+    private static int runExport(String[] args) {
+        if (args.length < 2) {
+            System.err.println("Usage: java Main --export <file.csv|file.jsonl|file.stuc>[.gz]");
+            return 2;
+        }
+        Path file = Path.of(args[1]);
+
+        try (DatabaseManager dbManager = StudentStore.openMySql("--export")) {
+            StudentExporter exporter = new StudentExporter(dbManager, System.out);
+            exporter.report(file, exporter.exportTo(file, StudentExporter.detectFormat(file),
+                    StudentExporter.detectCompression(file)));
+            return 0;
+        } catch (SQLException e) {
+            System.err.println("Database error during export: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Export failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // java Main --list [table|tsv|json] - every student in (name, id) order, for piping
+    private static int runList(String[] args) {
+        StudentTableRenderer.Mode mode;
+        try {
+            mode = StudentTableRenderer.parseMode(args.length > 1 ? args[1] : "table");
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: java Main --list [table|tsv|json]");
+            return 2;
+        }
+
+        try (DatabaseManager dbManager = StudentStore.openMySql("--list")) {
+            StudentTableRenderer renderer = StudentTableRenderer.forSystemOut(mode, 0);
+            long[] rows = {0};
+            renderer.begin();
+            try {
+                dbManager.scanStudents(student -> {
+                    try {
+                        renderer.row(student);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    rows[0]++;
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            renderer.end("Total students: " + rows[0]);
+            return 0;
+        } catch (SQLException e) {
+            System.err.println("Database error while listing students: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Listing failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // java Main --batch [script|-]  or  java Main --batch -c "<command>" ["<command>" ...]
+    private static int runBatch(String[] args) {
+        BufferedReader in;
+        try {
+            if (args.length > 2 && "-c".equals(args[1])) {
+                String[] commands = Arrays.copyOfRange(args, 2, args.length);
+                in = new BufferedReader(new StringReader(String.join("\n", commands)));
+            } else if (args.length == 2 && !"-".equals(args[1]) && !"-c".equals(args[1])) {
+                in = Files.newBufferedReader(Path.of(args[1]), StandardCharsets.UTF_8);
+            } else if (args.length == 1 || (args.length == 2 && "-".equals(args[1]))) {
+                in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            } else {
+                System.err.println("Usage: java Main --batch [script|-] | --batch -c \"<command>\" ...");
+                return 2;
+            }
+        } catch (IOException e) {
+            System.err.println("Cannot read script: " + e.getMessage());
+            return 2;
+        }
+
+        try (in; DatabaseManager dbManager = StudentStore.openMySql("--batch")) {
+            BufferedWriter out = new BufferedWriter(new OutputStreamWriter(System.out, System.out.charset()), 64 * 1024);
+            CommandMode commandMode = new CommandMode(dbManager, out);
+            CommandMode.Summary summary = commandMode.run(in);
+            commandMode.report(summary, System.err);
+            return summary.failed() > 0 ? 1 : 0;
+        } catch (SQLException e) {
+            System.err.println("Database error in batch mode: " + e.getMessage());
+            return 1;
+        } catch (IOException e) {
+            System.err.println("Batch run failed: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    // java Main --serve [port] - JSON over HTTP until the process is stopped
+    private static int runServer(String[] args) {
+        int port;
+        try {
+            port = args.length > 1 ? Integer.parseInt(args[1]) : DatabaseConfig.getHttpPort();
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: java Main --serve [port]");
+            return 2;
+        }
+
+        DatabaseManager dbManager;
+        try {
+            dbManager = StudentStore.openMySql("--serve");
+        } catch (SQLException e) {
+            System.err.println("Database error while starting the server: " + e.getMessage());
+            return 1;
+        }
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        try {
+            dbManager.warmUp();
+            StudentHttpServer server = new StudentHttpServer(dbManager, port);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                server.close();
+                try {
+                    dbManager.close();
+                } catch (SQLException e) {
+                    System.err.println("Error closing database: " + e.getMessage());
+                }
+                stopped.countDown();
+            }, "http-shutdown"));
+            server.start();
+            System.out.println("Serving students on http://localhost:" + server.getPort() + "/students");
+        } catch (IOException | SQLException e) {
+            System.err.println("Cannot start the server: " + e.getMessage());
+            try {
+                dbManager.close();
+            } catch (SQLException ignored) {
+                // already failing
+            }
+            return 1;
+        }
+
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return 0;
+    }
 }
@@ -0,0 +1,728 @@
+// MappedStudentReplica.java - Local read replica of the students table in memory-mapped files
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Copy of the students table kept in two memory-mapped files, for deployments that mostly read:
+ *
+ *   <base>.dat  64-byte header, then fixed-width records in id order (binary searched by id)
+ *   <base>.idx  record numbers sorted by ASCII-case-folded name, then id
+ *
+ * Lookups and prefix searches read straight from the mappings, so the table never lives on the
+ * heap, and reopening an existing file only fetches the delta since its high-water marks.
+ *
+ * Records whose text does not fit the fixed width, and records this process has updated since
+ * the last sync, are read from the primary instead. Rows inserted or edited elsewhere show up
+ * after the next sync(), which tracks updated_at; deletes elsewhere only after a full resync(),
+ * which sync() falls back to when the row counts disagree.
+ */
+class MappedStudentReplica implements AutoCloseable {
+    private static final int MAGIC = 0x53445232;
+    private static final int HEADER_SIZE = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_RECORDS = 4;
+    private static final int H_LIVE = 8;
+    private static final int H_MAX_ID = 12;
+    private static final int H_STALE = 16;
+    private static final int H_CHANGED_HIGH_WATER = 24;
+    private static final int H_SYNCED_AT = 32;
+    private static final int H_RESYNCED_AT = 40;
+
+    static final int NAME_BYTES = 100;
+    static final int EMAIL_BYTES = 150;
+    static final int COURSE_BYTES = 100;
+
+    private static final int R_ID = 0;
+    private static final int R_AGE = 4;
+    private static final int R_FLAGS = 8;
+    private static final int R_NAME_LENGTH = 9;
+    private static final int R_EMAIL_LENGTH = 10;
+    private static final int R_COURSE_LENGTH = 11;
+    private static final int R_NAME = 12;
+    private static final int R_EMAIL = R_NAME + NAME_BYTES;
+    private static final int R_COURSE = R_EMAIL + EMAIL_BYTES;
+    private static final int R_VERSION = (R_COURSE + COURSE_BYTES + 3) & ~3;
+    static final int RECORD_SIZE = (R_VERSION + 4 + 7) & ~7;
+
+    private static final int TRUNCATED = 1;
+    private static final int DELETED = 2;
+    private static final int STALE = 4;
+
+    // Offsets are ints, so the data file stays under 2 GB (about 5.8 million rows)
+    private static final int MAX_RECORDS = (Integer.MAX_VALUE - HEADER_SIZE) / RECORD_SIZE;
+
+    private final Path dataFile;
+    private final Path indexFile;
+    private final DatabaseManager primary;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Ids marked STALE, re-read from the primary on the next sync
+    private final Set<Integer> staleIds = ConcurrentHashMap.newKeySet();
+
+    private MappedByteBuffer data;
+    private MappedByteBuffer nameIndex;
+    private ScheduledExecutorService syncer;
+
+    private MappedStudentReplica(Path base, DatabaseManager primary) {
+        this.dataFile = base.resolveSibling(base.getFileName() + ".dat");
+        this.indexFile = base.resolveSibling(base.getFileName() + ".idx");
+        this.primary = primary;
+    }
+
+    /**
+     * Opens the replica at base, serving an existing file as-is and catching up in the
+     * background; a missing or unreadable file is built from the primary first.
+     */
+    static MappedStudentReplica open(Path base, DatabaseManager primary) throws SQLException, IOException {
+        MappedStudentReplica replica = new MappedStudentReplica(base, primary);
+        if (!replica.mapExisting()) {
+            replica.resync();
+        }
+        return replica;
+    }
+
+    public Student getStudentById(int id) throws SQLException {
+        lock.readLock().lock();
+        try {
+            int record = findRecord(id);
+            if (record < 0) {
+                // Ids past the high-water mark were inserted after the last sync
+                if (id <= data.getInt(H_MAX_ID)) {
+                    return null;
+                }
+            } else {
+                int offset = offsetOf(record);
+                int flags = data.get(offset + R_FLAGS);
+                if ((flags & DELETED) != 0) {
+                    return null;
+                }
+                if ((flags & (TRUNCATED | STALE)) == 0) {
+                    return read(data, offset);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return primary.loadStudentById(id);
+    }
+
+    // Case-insensitive for ASCII letters; ordered by name, then id
+    public List<Student> searchStudentsByNamePrefix(String prefix) throws SQLException {
+        byte[] key = fold(prefix.getBytes(StandardCharsets.UTF_8));
+        List<Student> students = new ArrayList<>();
+        List<Integer> fromPrimary = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            int records = data.getInt(H_RECORDS);
+            int low = 0;
+            int high = records;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (compareName(data, offsetOf(nameIndex.getInt(middle * 4)), key, false) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            for (int i = low; i < records; i++) {
+                int offset = offsetOf(nameIndex.getInt(i * 4));
+                if (compareName(data, offset, key, true) != 0) {
+                    break;
+                }
+                int flags = data.get(offset + R_FLAGS);
+                if ((flags & DELETED) != 0) {
+                    continue;
+                }
+                if ((flags & (TRUNCATED | STALE)) != 0) {
+                    fromPrimary.add(data.getInt(offset + R_ID));
+                } else {
+                    students.add(read(data, offset));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        if (!fromPrimary.isEmpty()) {
+            for (int id : fromPrimary) {
+                Student student = primary.loadStudentById(id);
+                if (student != null && startsWith(fold(student.getName().getBytes(StandardCharsets.UTF_8)), key)) {
+                    students.add(student);
+                }
+            }
+            students.sort(Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER)
+                    .thenComparingInt(Student::getId));
+        }
+        return students;
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return data.getInt(H_LIVE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Called after this process updates a row; lookups go to the primary until the next sync
+    void markStale(int id) {
+        lock.writeLock().lock();
+        try {
+            int record = findRecord(id);
+            if (record >= 0) {
+                int offset = offsetOf(record);
+                byte flags = data.get(offset + R_FLAGS);
+                if ((flags & STALE) == 0) {
+                    data.put(offset + R_FLAGS, (byte) (flags | STALE));
+                    data.putInt(H_STALE, data.getInt(H_STALE) + 1);
+                }
+                staleIds.add(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void markDeleted(int id) {
+        lock.writeLock().lock();
+        try {
+            int record = findRecord(id);
+            if (record >= 0) {
+                int offset = offsetOf(record);
+                byte flags = data.get(offset + R_FLAGS);
+                if ((flags & DELETED) == 0) {
+                    data.put(offset + R_FLAGS, (byte) (flags | DELETED));
+                    data.putInt(H_LIVE, data.getInt(H_LIVE) - 1);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies rows inserted since the high-water marks and re-reads rows marked stale. Falls
+     * back to a full resync when a row cannot be placed in id order or the live row count no
+     * longer matches the primary. Returns the number of rows written.
+     */
+    public synchronized int sync() throws SQLException, IOException {
+        int maxId;
+        long changedHighWater;
+        lock.readLock().lock();
+        try {
+            maxId = data.getInt(H_MAX_ID);
+            changedHighWater = data.getLong(H_CHANGED_HIGH_WATER);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        List<Student> changed = new ArrayList<>();
+        long[] newestChanged = {changedHighWater};
+        primary.scanStudentsChangedSince(maxId, changedHighWater < 0 ? null : new Timestamp(changedHighWater),
+                (student, changedAt) -> {
+                    Student copy = new Student(student.getId(), student.getName(), student.getEmail(),
+                            student.getAge(), student.getCourse());
+                    copy.setVersion(student.getVersion());
+                    changed.add(copy);
+                    if (changedAt != null) {
+                        newestChanged[0] = Math.max(newestChanged[0], changedAt.getTime());
+                    }
+                });
+        List<Integer> staleSnapshot = new ArrayList<>(staleIds);
+        List<Student> refreshed = new ArrayList<>(staleSnapshot.size());
+        for (int id : staleSnapshot) {
+            refreshed.add(primary.loadStudentById(id));
+        }
+        int expectedRows = primary.countStudents();
+
+        int written = 0;
+        boolean outOfOrder = false;
+        lock.writeLock().lock();
+        try {
+            BitSet touched = new BitSet();
+            for (Student student : changed) {
+                int record = findRecord(student.getId());
+                if (record < 0 && student.getId() <= data.getInt(H_MAX_ID)) {
+                    outOfOrder = true;
+                    break;
+                }
+                if (record >= 0 && matches(offsetOf(record), student)) {
+                    continue;
+                }
+                touched.set(write(record, student));
+                written++;
+            }
+            for (int i = 0; !outOfOrder && i < staleSnapshot.size(); i++) {
+                int record = findRecord(staleSnapshot.get(i));
+                Student student = refreshed.get(i);
+                if (student == null) {
+                    markDeleted(staleSnapshot.get(i));
+                    clearStale(record);
+                } else {
+                    touched.set(write(record, student));
+                    written++;
+                }
+                staleIds.remove(staleSnapshot.get(i));
+            }
+
+            if (!outOfOrder) {
+                if (!touched.isEmpty()) {
+                    rebuildNameIndex(touched);
+                }
+                data.putLong(H_CHANGED_HIGH_WATER, newestChanged[0]);
+                data.putLong(H_SYNCED_AT, System.currentTimeMillis());
+                data.force();
+                outOfOrder = data.getInt(H_LIVE) != expectedRows;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (outOfOrder) {
+            resync();
+            return size();
+        }
+        return written;
+    }
+
+    // Rebuilds both files from a full scan of the primary and swaps them in
+    public synchronized void resync() throws SQLException, IOException {
+        // The scan re-reads every row marked stale so far; rows marked while it runs stay stale
+        List<Integer> settled = new ArrayList<>(staleIds);
+        staleIds.removeAll(settled);
+        try {
+            rebuild();
+        } catch (SQLException | IOException | RuntimeException e) {
+            staleIds.addAll(settled);
+            throw e;
+        }
+    }
+
+    private void rebuild() throws SQLException, IOException {
+        Path tempData = dataFile.resolveSibling(dataFile.getFileName() + ".tmp");
+        Path tempIndex = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+
+        int[] records = {0};
+        int[] maxId = {Integer.MIN_VALUE};
+        long[] newestChanged = {-1};
+        try (FileChannel channel = FileChannel.open(tempData, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE * 1024);
+            channel.position(HEADER_SIZE);
+            try {
+                primary.scanStudentsChangedSince(Integer.MIN_VALUE, null, (student, changedAt) -> {
+                    if (records[0] == MAX_RECORDS) {
+                        throw new UncheckedIOException(new IOException("Too many rows for a replica file"));
+                    }
+                    if (buffer.position() == buffer.capacity()) {
+                        try {
+                            writeFully(channel, buffer.flip());
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        buffer.clear();
+                    }
+                    encode(buffer, buffer.position(), student, 0);
+                    buffer.position(buffer.position() + RECORD_SIZE);
+                    records[0]++;
+                    maxId[0] = student.getId();
+                    if (changedAt != null) {
+                        newestChanged[0] = Math.max(newestChanged[0], changedAt.getTime());
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writeFully(channel, buffer.flip());
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(H_MAGIC, MAGIC);
+            header.putInt(H_RECORDS, records[0]);
+            header.putInt(H_LIVE, records[0]);
+            header.putInt(H_MAX_ID, records[0] == 0 ? 0 : maxId[0]);
+            header.putLong(H_CHANGED_HIGH_WATER, newestChanged[0]);
+            header.putLong(H_SYNCED_AT, System.currentTimeMillis());
+            header.putLong(H_RESYNCED_AT, System.currentTimeMillis());
+            channel.position(0);
+            writeFully(channel, header);
+            channel.force(true);
+        }
+
+        MappedByteBuffer freshData = map(tempData, HEADER_SIZE + (long) records[0] * RECORD_SIZE);
+        int[] order = new int[records[0]];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        sort(order, (a, b) -> compareRecords(freshData, a, b));
+        writeIndex(tempIndex, order, order.length);
+
+        lock.writeLock().lock();
+        try {
+            Files.move(tempData, dataFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            data = map(dataFile, Files.size(dataFile));
+            nameIndex = map(indexFile, Files.size(indexFile));
+            // Their flags were set in the old file, and the scan may have read them before the update
+            for (int id : staleIds) {
+                markStale(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Delta syncs every intervalSeconds, replaced by a full resync once fullResyncSeconds have passed
+    synchronized void startPeriodicSync(long intervalSeconds, long fullResyncSeconds) {
+        if (syncer != null || intervalSeconds <= 0) {
+            return;
+        }
+        syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "replica-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            try {
+                if (fullResyncSeconds > 0 && System.currentTimeMillis() - lastResync() > fullResyncSeconds * 1000) {
+                    resync();
+                } else {
+                    sync();
+                }
+            } catch (SQLException | IOException e) {
+                System.err.println("Replica sync failed: " + e.getMessage());
+            }
+        }, 0, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    private long lastResync() {
+        lock.readLock().lock();
+        try {
+            return data.getLong(H_RESYNCED_AT);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = syncer;
+            syncer = null;
+        }
+        if (running != null) {
+            running.shutdownNow();
+        }
+        lock.writeLock().lock();
+        try {
+            if (data != null) {
+                data.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean mapExisting() throws IOException {
+        if (!Files.isRegularFile(dataFile) || !Files.isRegularFile(indexFile)) {
+            return false;
+        }
+        long dataSize = Files.size(dataFile);
+        if (dataSize < HEADER_SIZE || dataSize > Integer.MAX_VALUE) {
+            return false;
+        }
+        MappedByteBuffer mappedData = map(dataFile, dataSize);
+        int records = mappedData.getInt(H_RECORDS);
+        if (mappedData.getInt(H_MAGIC) != MAGIC || records < 0
+                || HEADER_SIZE + (long) records * RECORD_SIZE > dataSize
+                || Files.size(indexFile) != records * 4L) {
+            return false;
+        }
+
+        data = mappedData;
+        nameIndex = map(indexFile, records * 4L);
+        if (data.getInt(H_STALE) > 0) {
+            for (int record = 0; record < records; record++) {
+                if ((data.get(offsetOf(record) + R_FLAGS) & STALE) != 0) {
+                    staleIds.add(data.getInt(offsetOf(record) + R_ID));
+                }
+            }
+        }
+        return true;
+    }
+
+    private int findRecord(int id) {
+        int low = 0;
+        int high = data.getInt(H_RECORDS) - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleId = data.getInt(offsetOf(middle) + R_ID);
+            if (middleId < id) {
+                low = middle + 1;
+            } else if (middleId > id) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    // Overwrites record in place, or appends when record < 0; returns the record number
+    private int write(int record, Student student) throws IOException {
+        if (record < 0) {
+            record = data.getInt(H_RECORDS);
+            if (record == MAX_RECORDS) {
+                throw new IOException("Too many rows for a replica file");
+            }
+            ensureCapacity(record + 1);
+            data.putInt(H_RECORDS, record + 1);
+            data.putInt(H_LIVE, data.getInt(H_LIVE) + 1);
+            data.putInt(H_MAX_ID, student.getId());
+        } else {
+            int flags = data.get(offsetOf(record) + R_FLAGS);
+            if ((flags & DELETED) != 0) {
+                data.putInt(H_LIVE, data.getInt(H_LIVE) + 1);
+            }
+            clearStale(record);
+        }
+        encode(data, offsetOf(record), student, 0);
+        return record;
+    }
+
+    private void clearStale(int record) {
+        if (record >= 0 && (data.get(offsetOf(record) + R_FLAGS) & STALE) != 0) {
+            data.put(offsetOf(record) + R_FLAGS, (byte) (data.get(offsetOf(record) + R_FLAGS) & ~STALE));
+            data.putInt(H_STALE, data.getInt(H_STALE) - 1);
+        }
+    }
+
+    private void ensureCapacity(int records) throws IOException {
+        long needed = HEADER_SIZE + (long) records * RECORD_SIZE;
+        if (needed > data.capacity()) {
+            long grown = HEADER_SIZE + (long) Math.max(1024, records + records / 2) * RECORD_SIZE;
+            data.force();
+            data = map(dataFile, Math.min(grown, HEADER_SIZE + (long) MAX_RECORDS * RECORD_SIZE));
+        }
+    }
+
+    // Keeps the untouched entries in their existing order and merges the touched ones back in
+    private void rebuildNameIndex(BitSet touched) throws IOException {
+        int records = data.getInt(H_RECORDS);
+        int[] moved = touched.stream().toArray();
+        sort(moved, (a, b) -> compareRecords(data, a, b));
+
+        int[] order = new int[records];
+        int count = 0;
+        int next = 0;
+        for (int i = 0; i < nameIndex.capacity() / 4; i++) {
+            int record = nameIndex.getInt(i * 4);
+            if (touched.get(record)) {
+                continue;
+            }
+            while (next < moved.length && compareRecords(data, moved[next], record) < 0) {
+                order[count++] = moved[next++];
+            }
+            order[count++] = record;
+        }
+        while (next < moved.length) {
+            order[count++] = moved[next++];
+        }
+
+        Path tempIndex = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+        writeIndex(tempIndex, order, count);
+        Files.move(tempIndex, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        nameIndex = map(indexFile, count * 4L);
+    }
+
+    // True when encoding student would reproduce the stored record exactly
+    private boolean matches(int offset, Student student) {
+        if ((data.get(offset + R_FLAGS) & (STALE | DELETED)) != 0) {
+            return false;
+        }
+        ByteBuffer encoded = ByteBuffer.allocate(RECORD_SIZE);
+        encode(encoded, 0, student, 0);
+        return sameBytes(encoded, 0, offset, R_NAME)
+                && sameBytes(encoded, R_VERSION, offset + R_VERSION, 4)
+                && sameBytes(encoded, R_NAME, offset + R_NAME, encoded.get(R_NAME_LENGTH) & 0xFF)
+                && sameBytes(encoded, R_EMAIL, offset + R_EMAIL, encoded.get(R_EMAIL_LENGTH) & 0xFF)
+                && sameBytes(encoded, R_COURSE, offset + R_COURSE, encoded.get(R_COURSE_LENGTH) & 0xFF);
+    }
+
+    private boolean sameBytes(ByteBuffer encoded, int from, int offset, int length) {
+        return encoded.slice(from, length).equals(data.slice(offset, length));
+    }
+
+    private static int offsetOf(int record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+
+    private static void encode(ByteBuffer target, int offset, Student student, int flags) {
+        target.putInt(offset + R_ID, student.getId());
+        target.putInt(offset + R_AGE, student.getAge());
+        target.putInt(offset + R_VERSION, student.getVersion());
+        int nameLength = putText(target, offset + R_NAME, NAME_BYTES, student.getName());
+        int emailLength = putText(target, offset + R_EMAIL, EMAIL_BYTES, student.getEmail());
+        int courseLength = putText(target, offset + R_COURSE, COURSE_BYTES, student.getCourse());
+        if (nameLength < 0 || emailLength < 0 || courseLength < 0) {
+            flags |= TRUNCATED;
+        }
+        target.put(offset + R_FLAGS, (byte) flags);
+        target.put(offset + R_NAME_LENGTH, (byte) Math.abs(nameLength));
+        target.put(offset + R_EMAIL_LENGTH, (byte) Math.abs(emailLength));
+        target.put(offset + R_COURSE_LENGTH, (byte) Math.abs(courseLength));
+    }
+
+    // Returns the stored length, negated when the text had to be cut at a character boundary
+    private static int putText(ByteBuffer target, int offset, int capacity, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(bytes.length, capacity);
+        while (length < bytes.length && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        target.put(offset, bytes, 0, length);
+        return length < bytes.length ? -length : length;
+    }
+
+    private static Student read(ByteBuffer source, int offset) {
+        Student student = new Student(source.getInt(offset + R_ID),
+                getText(source, offset + R_NAME, source.get(offset + R_NAME_LENGTH)),
+                getText(source, offset + R_EMAIL, source.get(offset + R_EMAIL_LENGTH)),
+                source.getInt(offset + R_AGE),
+                getText(source, offset + R_COURSE, source.get(offset + R_COURSE_LENGTH)));
+        student.setVersion(source.getInt(offset + R_VERSION));
+        return student;
+    }
+
+    private static String getText(ByteBuffer source, int offset, byte length) {
+        byte[] bytes = new byte[length & 0xFF];
+        source.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Compares a record's folded name with key; prefixOnly treats a name that starts with key as equal
+    private static int compareName(ByteBuffer source, int offset, byte[] key, boolean prefixOnly) {
+        int length = source.get(offset + R_NAME_LENGTH) & 0xFF;
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int cmp = Integer.compare(fold(source.get(offset + R_NAME + i)) & 0xFF, key[i] & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (prefixOnly && length >= key.length) {
+            return 0;
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    private static int compareRecords(ByteBuffer source, int a, int b) {
+        int offsetA = offsetOf(a);
+        int offsetB = offsetOf(b);
+        int lengthA = source.get(offsetA + R_NAME_LENGTH) & 0xFF;
+        int lengthB = source.get(offsetB + R_NAME_LENGTH) & 0xFF;
+        for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+            int cmp = Integer.compare(fold(source.get(offsetA + R_NAME + i)) & 0xFF,
+                    fold(source.get(offsetB + R_NAME + i)) & 0xFF);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        if (lengthA != lengthB) {
+            return Integer.compare(lengthA, lengthB);
+        }
+        return Integer.compare(source.getInt(offsetA + R_ID), source.getInt(offsetB + R_ID));
+    }
+
+    private static byte fold(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static byte[] fold(byte[] bytes) {
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = fold(bytes[i]);
+        }
+        return bytes;
+    }
+
+    private static boolean startsWith(byte[] value, byte[] prefix) {
+        return value.length >= prefix.length && Arrays.equals(value, 0, prefix.length, prefix, 0, prefix.length);
+    }
+
+    // Merge sort over record numbers; the comparator reads the mapped records
+    private static void sort(int[] values, IntBinaryOperator comparator) {
+        int[] buffer = new int[values.length];
+        for (int width = 1; width < values.length; width *= 2) {
+            for (int from = 0; from < values.length - width; from += 2 * width) {
+                int middle = from + width;
+                int to = Math.min(from + 2 * width, values.length);
+                int left = from;
+                int right = middle;
+                int out = from;
+                while (left < middle && right < to) {
+                    buffer[out++] = comparator.applyAsInt(values[left], values[right]) <= 0 ? values[left++] : values[right++];
+                }
+                while (left < middle) {
+                    buffer[out++] = values[left++];
+                }
+                while (right < to) {
+                    buffer[out++] = values[right++];
+                }
+                System.arraycopy(buffer, from, values, from, to - from);
+            }
+        }
+    }
+
+    private static void writeIndex(Path file, int[] order, int count) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (int i = 0; i < count; i++) {
+                if (!buffer.hasRemaining()) {
+                    writeFully(channel, buffer.flip());
+                    buffer.clear();
+                }
+                buffer.putInt(order[i]);
+            }
+            writeFully(channel, buffer.flip());
+            channel.force(true);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+// NameSearchIndex.java - In-process trigram index over student names for type-ahead search
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+class NameSearchIndex {
+    record Match(int id, String name) {}
+
+    private record Entry(String name, String normalized) {}
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, Entry> names = new HashMap<>();
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private long stalePostings;
+    private long livePostings;
+
+    // Growable int list; may hold ids whose name no longer has this trigram (checked on lookup)
+    private static final class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = id;
+        }
+    }
+
+    public void put(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            Entry entry = new Entry(name, normalize(name));
+            Entry previous = names.put(id, entry);
+            if (previous != null) {
+                stalePostings += trigramCount(previous.normalized());
+            }
+            addPostings(id, entry);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Updates the name of an id already in the index; unknown ids are ignored
+    public void replace(int id, String name) {
+        lock.writeLock().lock();
+        try {
+            if (names.containsKey(id)) {
+                put(id, name);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int id) {
+        lock.writeLock().lock();
+        try {
+            Entry previous = names.remove(id);
+            if (previous != null) {
+                stalePostings += trigramCount(previous.normalized());
+                compactIfNeeded();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return names.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Case-insensitive substring search. Fragments of three or more characters are answered
+     * from the shortest posting list of their trigrams; shorter fragments scan the names.
+     */
+    public List<Match> search(String fragment, int limit) {
+        String query = normalize(fragment);
+        List<Match> matches = new ArrayList<>();
+
+        lock.readLock().lock();
+        try {
+            if (query.length() < 3) {
+                for (Map.Entry<Integer, Entry> entry : names.entrySet()) {
+                    if (entry.getValue().normalized().contains(query)) {
+                        matches.add(new Match(entry.getKey(), entry.getValue().name()));
+                    }
+                }
+            } else {
+                Postings candidates = null;
+                for (int i = 0; i + 3 <= query.length(); i++) {
+                    Postings list = postings.get(trigram(query, i));
+                    if (list == null) {
+                        return matches;
+                    }
+                    if (candidates == null || list.size < candidates.size) {
+                        candidates = list;
+                    }
+                }
+
+                int[] ids = Arrays.copyOf(candidates.ids, candidates.size);
+                Arrays.sort(ids);
+                int previous = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    if (i > 0 && ids[i] == previous) {
+                        continue;
+                    }
+                    previous = ids[i];
+                    Entry entry = names.get(ids[i]);
+                    if (entry != null && entry.normalized().contains(query)) {
+                        matches.add(new Match(ids[i], entry.name()));
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        matches.sort(Comparator.comparing(Match::name).thenComparingInt(Match::id));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    private void addPostings(int id, Entry entry) {
+        String name = entry.normalized();
+        for (int i = 0; i + 3 <= name.length(); i++) {
+            postings.computeIfAbsent(trigram(name, i), k -> new Postings()).add(id);
+            livePostings++;
+        }
+    }
+
+    // Rebuild once stale entries outnumber live ones so updates cannot grow the index forever
+    private void compactIfNeeded() {
+        if (stalePostings < 1024 || stalePostings < livePostings - stalePostings) {
+            return;
+        }
+        postings.clear();
+        livePostings = 0;
+        stalePostings = 0;
+        names.forEach(this::addPostings);
+    }
+
+    private static int trigramCount(String name) {
+        return Math.max(0, name.length() - 2);
+    }
+
+    private static long trigram(String s, int start) {
+        return ((long) s.charAt(start) << 32) | ((long) s.charAt(start + 1) << 16) | s.charAt(start + 2);
+    }
+
+    private static String normalize(String name) {
+        return name == null ? "" : name.toLowerCase(Locale.ROOT);
+    }
+}
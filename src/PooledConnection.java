@@ -0,0 +1,102 @@
+// PooledConnection.java - A physical connection on loan from the ConnectionPool
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+class PooledConnection implements AutoCloseable {
+    private final ConnectionPool pool;
+    private final Connection connection;
+    private final StatementCache statementCache;
+    private final List<PreparedStatement> uncachedStatements = new ArrayList<>();
+    private final long createdAt;
+    private volatile long lastUsedAt;
+    private boolean borrowed;
+    private Runnable onReturn;
+
+    PooledConnection(ConnectionPool pool, Connection connection, StatementCache statementCache) {
+        this.pool = pool;
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    public Connection getConnection() { return connection; }
+
+    /**
+     * Prepares (or reuses) a statement owned by this connection. Callers must not close it:
+     * cached statements live as long as the connection, uncached ones are closed on release.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareStatement(sql, Statement.NO_GENERATED_KEYS);
+    }
+
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        if (statementCache != null) {
+            return statementCache.prepare(sql, autoGeneratedKeys);
+        }
+        PreparedStatement pstmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        uncachedStatements.add(pstmt);
+        return pstmt;
+    }
+
+    long getCreatedAt() { return createdAt; }
+    long getLastUsedAt() { return lastUsedAt; }
+
+    synchronized void markBorrowed() {
+        borrowed = true;
+    }
+
+    // Returns false when the connection was already handed back
+    synchronized boolean markReturned() {
+        if (!borrowed) {
+            return false;
+        }
+        borrowed = false;
+        lastUsedAt = System.currentTimeMillis();
+        closeUncachedStatements();
+        return true;
+    }
+
+    void closePhysical() {
+        closeUncachedStatements();
+        if (statementCache != null) {
+            statementCache.clear();
+        }
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            // The connection is being discarded anyway
+        }
+    }
+
+    private void closeUncachedStatements() {
+        for (PreparedStatement pstmt : uncachedStatements) {
+            try {
+                pstmt.close();
+            } catch (SQLException e) {
+                // Statement is unusable either way
+            }
+        }
+        uncachedStatements.clear();
+    }
+
+    // Runs once, right after the current loan is handed back; ReadRouter uses it to track reads
+    void onReturn(Runnable hook) {
+        onReturn = hook;
+    }
+
+    // Hands the connection back to the pool instead of closing it
+    @Override
+    public void close() {
+        Runnable hook = onReturn;
+        onReturn = null;
+        pool.release(this);
+        if (hook != null) {
+            hook.run();
+        }
+    }
+}
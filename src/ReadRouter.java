@@ -0,0 +1,231 @@
+// ReadRouter.java - Spreads DatabaseManager reads over read replicas
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hands out connections for reads; writes keep using the primary pool directly. A read goes
+ * to the healthy replica with the fewest reads in progress (ties rotate), and falls back to
+ * the primary when no replica is healthy or the chosen one cannot give a connection. A replica
+ * that cannot connect (SQLState class 08) is marked down until the background check, every
+ * db.readReplicas.healthCheckIntervalMillis, finds it answering again. A read that fails after
+ * it got its connection is not retried.
+ *
+ * Replication is asynchronous, so for db.readReplicas.readYourWritesMillis after a write the
+ * writer's ReadSession reads from the primary and sees it. The session follows the client
+ * across threads (see ReadSession), not just the thread that wrote.
+ *
+ * Every endpoint records its reads under its own name ("primary", "replica-1", ...): calls,
+ * failures and how long each read held its connection.
+ */
+class ReadRouter implements AutoCloseable {
+    record EndpointStats(String name, boolean healthy, int inFlight, long reads, long failures) {
+        @Override
+        public String toString() {
+            return String.format("%-10s %-4s %4d in flight %10d reads %6d failures",
+                    name, healthy ? "up" : "down", inFlight, reads, failures);
+        }
+    }
+
+    private static final class Endpoint {
+        final String name;
+        final ConnectionPool pool;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final LongAdder reads = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        volatile boolean healthy = true;
+
+        Endpoint(String name, ConnectionPool pool) {
+            this.name = name;
+            this.pool = pool;
+        }
+    }
+
+    private final Endpoint primary;
+    private final Endpoint[] replicas;
+    private final long readYourWritesMillis;
+    private final AtomicInteger rotation = new AtomicInteger();
+    private final LongAdder toReplicas = new LongAdder();
+    private final LongAdder pinned = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final DatabaseMetrics latency;
+    private final ScheduledExecutorService healthChecker;
+
+    /**
+     * @param primary  the DatabaseManager's own pool; the router borrows from it but does not close it
+     * @param replicas one pool per replica, closed with the router
+     */
+    ReadRouter(ConnectionPool primary, List<ConnectionPool> replicas, long readYourWritesMillis,
+               long healthCheckIntervalMillis, boolean metricsEnabled) {
+        this.primary = new Endpoint("primary", primary);
+        this.replicas = new Endpoint[replicas.size()];
+        for (int i = 0; i < this.replicas.length; i++) {
+            this.replicas[i] = new Endpoint("replica-" + (i + 1), replicas.get(i));
+        }
+        this.readYourWritesMillis = readYourWritesMillis;
+        this.latency = new DatabaseMetrics(metricsEnabled);
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "read-replica-health");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (healthCheckIntervalMillis > 0) {
+            healthChecker.scheduleWithFixedDelay(this::checkHealth,
+                    healthCheckIntervalMillis, healthCheckIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Null when db.readReplicas.urls is unset
+    static ReadRouter fromConfig(ConnectionPool primary) {
+        String[] urls = DatabaseConfig.getReadReplicaUrls();
+        if (urls.length == 0) {
+            return null;
+        }
+        List<ConnectionPool> pools = new ArrayList<>(urls.length);
+        for (String url : urls) {
+            pools.add(new ConnectionPool(url, DatabaseConfig.getConnectionProperties(url),
+                    ConnectionPool.Settings.fromConfig()));
+        }
+        return new ReadRouter(primary, pools, DatabaseConfig.getReadYourWritesMillis(),
+                DatabaseConfig.getReadReplicaHealthCheckIntervalMillis(), DatabaseConfig.isMetricsEnabled());
+    }
+
+    // A connection for one read; close it like any pooled connection
+    PooledConnection borrowForRead() throws SQLException {
+        if (ReadSession.current().wroteWithin(readYourWritesMillis)) {
+            pinned.increment();
+            return borrowFrom(primary);
+        }
+        Endpoint replica = pick();
+        if (replica != null) {
+            try {
+                PooledConnection pc = borrowFrom(replica);
+                toReplicas.increment();
+                return pc;
+            } catch (SQLTransientConnectionException e) {
+                // Pool exhausted: the replica is busy, not down
+            } catch (SQLException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                // Only a failed connect means the replica is down; anything else is tried on the primary
+                if (isConnectionFailure(e)) {
+                    replica.healthy = false;
+                }
+            }
+        }
+        fallbacks.increment();
+        return borrowFrom(primary);
+    }
+
+    // Starts the read-your-writes window of the current thread's session
+    void noteWrite() {
+        ReadSession.current().noteWrite();
+    }
+
+    /**
+     * Validates one connection per replica: a replica that answers is marked up, one that
+     * cannot connect is marked down. A replica whose pool is merely busy, or a check that
+     * fails for another reason, leaves the state as it was.
+     */
+    void checkHealth() {
+        int timeoutSeconds = DatabaseConfig.getPoolValidationTimeoutSeconds();
+        for (Endpoint replica : replicas) {
+            try (PooledConnection pc = replica.pool.borrow()) {
+                replica.healthy = pc.getConnection().isValid(timeoutSeconds);
+            } catch (SQLTransientConnectionException e) {
+                // Every connection is in use, which means it is answering
+            } catch (SQLException e) {
+                if (isConnectionFailure(e)) {
+                    replica.healthy = false;
+                }
+            }
+        }
+    }
+
+    public List<EndpointStats> stats() {
+        List<EndpointStats> stats = new ArrayList<>(replicas.length + 1);
+        stats.add(statsOf(primary));
+        for (Endpoint replica : replicas) {
+            stats.add(statsOf(replica));
+        }
+        return stats;
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Reads: ").append(toReplicas.sum()).append(" to replicas, ")
+                .append(pinned.sum()).append(" to the primary after a write, ")
+                .append(fallbacks.sum()).append(" to the primary with no replica available\n");
+        for (EndpointStats endpoint : stats()) {
+            sb.append(endpoint).append('\n');
+        }
+        return sb.append(latency.report()).toString();
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Endpoint replica : replicas) {
+            replica.pool.close();
+        }
+        latency.close();
+    }
+
+    // Healthy replica with the fewest reads in flight, starting the scan at a rotating offset; null if none
+    private Endpoint pick() {
+        if (replicas.length == 0) {
+            return null;
+        }
+        int start = Math.floorMod(rotation.getAndIncrement(), replicas.length);
+        Endpoint best = null;
+        int bestLoad = Integer.MAX_VALUE;
+        for (int i = 0; i < replicas.length; i++) {
+            Endpoint candidate = replicas[(start + i) % replicas.length];
+            int load = candidate.inFlight.get();
+            if (candidate.healthy && load < bestLoad) {
+                best = candidate;
+                bestLoad = load;
+            }
+        }
+        return best;
+    }
+
+    private PooledConnection borrowFrom(Endpoint endpoint) throws SQLException {
+        endpoint.inFlight.incrementAndGet();
+        DatabaseMetrics.Timer timer = latency.start(endpoint.name);
+        PooledConnection pc;
+        try {
+            pc = endpoint.pool.borrow();
+        } catch (SQLException e) {
+            endpoint.inFlight.decrementAndGet();
+            endpoint.failures.increment();
+            timer.failed(e);
+            timer.stop();
+            throw e;
+        }
+        endpoint.reads.increment();
+        pc.onReturn(() -> {
+            endpoint.inFlight.decrementAndGet();
+            timer.stop();
+        });
+        return pc;
+    }
+
+    private static boolean isConnectionFailure(SQLException e) {
+        String state = e.getSQLState();
+        return e instanceof SQLNonTransientConnectionException || (state != null && state.startsWith("08"));
+    }
+
+    private static EndpointStats statsOf(Endpoint endpoint) {
+        return new EndpointStats(endpoint.name, endpoint.healthy, endpoint.inFlight.get(),
+                endpoint.reads.sum(), endpoint.failures.sum());
+    }
+}
@@ -0,0 +1,61 @@
+// ReadSession.java - Read-your-writes scope carried across the threads serving one client
+/**
+ * Remembers when its client last wrote, so ReadRouter can send that client's reads to the
+ * primary until the replicas have caught up. Each thread starts with a session of its own,
+ * which covers the interactive app; code that serves one client on several threads carries
+ * the session along: AsyncDatabaseManager and WriteBehindQueue take the caller's, and the
+ * HTTP server rebuilds one per request from the X-Consistency-Token header (see token()).
+ */
+final class ReadSession {
+    static final String HEADER = "X-Consistency-Token";
+
+    private static final ThreadLocal<ReadSession> CURRENT = ThreadLocal.withInitial(ReadSession::new);
+
+    // Ends the scope started by enter()
+    @FunctionalInterface
+    interface Scope {
+        void close();
+    }
+
+    // Epoch millis of the last write, 0 before the first
+    private volatile long lastWriteMillis;
+
+    static ReadSession current() {
+        return CURRENT.get();
+    }
+
+    // A session whose last write is the one token() described; a missing or malformed token starts afresh
+    static ReadSession fromToken(String token) {
+        ReadSession session = new ReadSession();
+        if (token != null) {
+            try {
+                session.lastWriteMillis = Math.max(0, Long.parseLong(token.trim()));
+            } catch (NumberFormatException e) {
+                // Treated as no write yet
+            }
+        }
+        return session;
+    }
+
+    // Makes this the current thread's session until the scope is closed
+    Scope enter() {
+        ReadSession previous = CURRENT.get();
+        CURRENT.set(this);
+        return () -> CURRENT.set(previous);
+    }
+
+    void noteWrite() {
+        lastWriteMillis = System.currentTimeMillis();
+    }
+
+    boolean wroteWithin(long millis) {
+        long written = lastWriteMillis;
+        return written != 0 && System.currentTimeMillis() - written < millis;
+    }
+
+    // For clients to send back with their next request; null until the session has written
+    String token() {
+        long written = lastWriteMillis;
+        return written == 0 ? null : Long.toString(written);
+    }
+}
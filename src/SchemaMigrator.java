@@ -0,0 +1,244 @@
+// SchemaMigrator.java - Versioned schema setup recorded in a schema_version table
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Applies the numbered steps below in order and records each one in schema_version, so a
+ * launch against an up-to-date database costs one SELECT instead of a CREATE TABLE and a
+ * round of metadata lookups per index.
+ *
+ * Every step is idempotent (IF NOT EXISTS, or a metadata check first), which lets tables
+ * created before schema_version existed be adopted as-is. Two processes migrating at once can
+ * both pass a metadata check; the loser's "duplicate column" or "duplicate key name" error
+ * then counts as the step being done, so both finish. Optional steps that fail, such as the n-gram index on a database
+ * without it, are recorded as skipped and not retried.
+ */
+class SchemaMigrator {
+    static final String APPLIED = "applied";
+    static final String SKIPPED = "skipped";
+
+    private static final int FULL_TEXT_INDEX = 3;
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+
+    private record Migration(int version, String description, boolean optional, Step step) {}
+
+    private static final List<Migration> MIGRATIONS = List.of(
+            new Migration(1, "students table", false, connection -> execute(connection, """
+                CREATE TABLE IF NOT EXISTS students (
+                    id INT AUTO_INCREMENT PRIMARY KEY,
+                    name VARCHAR(100) NOT NULL,
+                    email VARCHAR(150) UNIQUE NOT NULL,
+                    age INT CHECK (age > 0 AND age < 150),
+                    course VARCHAR(100) NOT NULL,
+                    created_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+            """)),
+            // Backs keyset pagination and ordered streaming on (name, id)
+            new Migration(2, "(name, id) index", false, connection -> createIndexIfMissing(connection,
+                    "idx_students_name_id", "CREATE INDEX idx_students_name_id ON students (name, id)")),
+            new Migration(FULL_TEXT_INDEX, "n-gram full-text index on name", true, SchemaMigrator::createFullTextIndex),
+            new Migration(4, "row version and updated_at", false, connection -> {
+                addColumnIfMissing(connection, "version", "ALTER TABLE students ADD COLUMN version INT NOT NULL DEFAULT 0");
+                addColumnIfMissing(connection, "updated_at",
+                        "ALTER TABLE students ADD COLUMN updated_at TIMESTAMP(3) NOT NULL DEFAULT CURRENT_TIMESTAMP(3) "
+                                + "ON UPDATE CURRENT_TIMESTAMP(3)");
+                // Backs the changed-since scans behind snapshot refresh and replica sync
+                createIndexIfMissing(connection, "idx_students_updated_at",
+                        "CREATE INDEX idx_students_updated_at ON students (updated_at)");
+            }),
+            // Used only in sharded mode: per-shard id block counter, and the cross-shard email registry on shard 0
+            new Migration(5, "shard id blocks and email registry", false, connection -> {
+                execute(connection, """
+                    CREATE TABLE IF NOT EXISTS shard_id_blocks (
+                        shard INT PRIMARY KEY,
+                        shard_count INT NOT NULL,
+                        block_size INT NOT NULL,
+                        next_block INT NOT NULL
+                    )
+                """);
+                execute(connection, """
+                    CREATE TABLE IF NOT EXISTS email_registry (
+                        email VARCHAR(150) PRIMARY KEY,
+                        student_id INT NOT NULL
+                    )
+                """);
+            })
+    );
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    private final boolean fullTextWanted;
+    private int appliedNow;
+
+    SchemaMigrator(boolean fullTextWanted) {
+        this.fullTextWanted = fullTextWanted;
+    }
+
+    /**
+     * Brings the schema up to date and returns every version's outcome (applied or skipped).
+     * The full-text step only runs while db.search.fullText is on; switching it on later
+     * picks the step up on the next launch.
+     */
+    public Map<Integer, String> migrate(Connection connection) throws SQLException {
+        Map<Integer, String> outcomes = readOutcomes(connection);
+        for (Migration migration : MIGRATIONS) {
+            if (outcomes.containsKey(migration.version())
+                    || (migration.version() == FULL_TEXT_INDEX && !fullTextWanted)) {
+                continue;
+            }
+            String outcome = APPLIED;
+            try {
+                migration.step().apply(connection);
+            } catch (SQLException e) {
+                if (!migration.optional()) {
+                    throw e;
+                }
+                outcome = SKIPPED;
+            }
+            record(connection, migration, outcome);
+            outcomes.put(migration.version(), outcome);
+            appliedNow++;
+        }
+        return outcomes;
+    }
+
+    // Steps run by the last migrate(); 0 when the schema was already current
+    public int getAppliedNow() { return appliedNow; }
+
+    static boolean hasFullTextIndex(Map<Integer, String> outcomes) {
+        return APPLIED.equals(outcomes.get(FULL_TEXT_INDEX));
+    }
+
+    private static Map<Integer, String> readOutcomes(Connection connection) throws SQLException {
+        Map<Integer, String> outcomes = new HashMap<>();
+        try (Statement stmt = connection.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT version, outcome FROM schema_version")) {
+                while (rs.next()) {
+                    outcomes.put(rs.getInt(1), rs.getString(2));
+                }
+                return outcomes;
+            } catch (SQLException e) {
+                // First run against this database: no table yet
+            }
+            stmt.execute("""
+                CREATE TABLE IF NOT EXISTS schema_version (
+                    version INT PRIMARY KEY,
+                    description VARCHAR(200) NOT NULL,
+                    outcome VARCHAR(20) NOT NULL,
+                    applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP
+                )
+            """);
+        }
+        return outcomes;
+    }
+
+    private static void record(Connection connection, Migration migration, String outcome) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, description, outcome) VALUES (?, ?, ?)";
+
+        try (PreparedStatement pstmt = connection.prepareStatement(sql)) {
+            pstmt.setInt(1, migration.version());
+            pstmt.setString(2, migration.description());
+            pstmt.setString(3, outcome);
+            pstmt.executeUpdate();
+        } catch (SQLException e) {
+            // Another process recorded the same step first
+            if (e.getErrorCode() != 1062 && !"23505".equals(e.getSQLState())) {
+                throw e;
+            }
+        }
+    }
+
+    private static void execute(Connection connection, String ddl) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute(ddl);
+        }
+    }
+
+    // MySQL has no CREATE INDEX IF NOT EXISTS, so consult the metadata first
+    private static void createIndexIfMissing(Connection connection, String indexName, String ddl) throws SQLException {
+        if (!indexExists(connection, indexName)) {
+            executeUnlessCreated(connection, ddl);
+        }
+    }
+
+    private static void addColumnIfMissing(Connection connection, String columnName, String ddl) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String table : new String[]{"students", "STUDENTS"}) {
+            for (String column : new String[]{columnName, columnName.toUpperCase()}) {
+                try (ResultSet rs = meta.getColumns(connection.getCatalog(), null, table, column)) {
+                    if (rs.next()) {
+                        return;
+                    }
+                }
+            }
+        }
+        executeUnlessCreated(connection, ddl);
+    }
+
+    // Ignores the error from a column or index another process added since the metadata check
+    private static void executeUnlessCreated(Connection connection, String ddl) throws SQLException {
+        try {
+            execute(connection, ddl);
+        } catch (SQLException e) {
+            if (!isAlreadyCreated(e)) {
+                throw e;
+            }
+        }
+    }
+
+    // MySQL's ER_DUP_FIELDNAME and ER_DUP_KEYNAME, or the standard SQLStates for the same
+    private static boolean isAlreadyCreated(SQLException e) {
+        return e.getErrorCode() == 1060 || e.getErrorCode() == 1061
+                || "42S21".equals(e.getSQLState()) || "42S11".equals(e.getSQLState());
+    }
+
+    private static boolean indexExists(Connection connection, String indexName) throws SQLException {
+        DatabaseMetaData meta = connection.getMetaData();
+        for (String table : new String[]{"students", "STUDENTS"}) {
+            try (ResultSet rs = meta.getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+                while (rs.next()) {
+                    if (indexName.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Creates the n-gram FULLTEXT index used for substring search. Stopwords are switched off
+     * while it is built because the n-gram parser drops every token containing a stopword.
+     * Fails on servers without n-gram full-text support (e.g. non-MySQL databases).
+     */
+    private static void createFullTextIndex(Connection connection) throws SQLException {
+        if (indexExists(connection, "ft_students_name")) {
+            return;
+        }
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("SET SESSION innodb_ft_enable_stopword = OFF");
+            try {
+                stmt.execute("CREATE FULLTEXT INDEX ft_students_name ON students (name) WITH PARSER ngram");
+            } catch (SQLException e) {
+                if (!isAlreadyCreated(e)) {
+                    throw e;
+                }
+            } finally {
+                stmt.execute("SET SESSION innodb_ft_enable_stopword = ON");
+            }
+        }
+    }
+}
@@ -0,0 +1,578 @@
+// ShardedStudentStore.java - Storage engine spreading students over several MySQL shards
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Spreads students over the databases in db.shard.urls, each behind its own DatabaseManager
+ * and pool. Ids come in hi/lo blocks of db.shard.idBlockSize: shard s only ever reserves
+ * blocks b with b % shardCount == s (see DatabaseManager.allocateIdBlock), so the owner of an
+ * id is (id / blockSize) % shardCount with no lookup. New students go to the shards in turn.
+ *
+ * Lookups, updates and deletes by id touch only the owning shard. Counts, pages and name
+ * searches run on every shard at once on virtual threads and are merged in (name, id) order;
+ * getAllStudents and forEachStudent open every shard's streaming cursor in parallel and merge
+ * them row by row, so a full listing holds one pending row per shard. Names order by code
+ * point here (SHARD_NAME_ORDER), not case-insensitively as on a single server: the shards sort
+ * with utf8mb4_bin, which Java can reproduce exactly, whereas a merge that disagreed with a
+ * shard's collation could emit rows out of order and make page tokens skip rows.
+ *
+ * Emails stay unique across shards through email_registry on shard 0: a write claims the new
+ * email there before touching its shard and releases it if the shard write fails. A crash or
+ * a lost shard connection in between can leave a registry row with no student, which only
+ * keeps that email reserved until the row is deleted by hand. The number and order of
+ * db.shard.urls and the block size are fixed once the shards hold data; a shard opened with a
+ * different layout refuses to hand out ids.
+ */
+class ShardedStudentStore implements StudentStore {
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(int shard) throws SQLException;
+    }
+
+    @FunctionalInterface
+    private interface ShardWrite<T> {
+        T run() throws SQLException;
+    }
+
+    // Ids [next, end) left in a shard's current block
+    private static final class IdBlock {
+        final ReentrantLock lock = new ReentrantLock();
+        long next;
+        long end;
+    }
+
+    // Next unmerged row of one shard's results
+    private record Head(Student student, Iterator<Student> rest) {}
+
+    // utf8mb4_bin: names by code point, the shorter padded with spaces (PAD SPACE); id breaks ties
+    static final Comparator<Student> SHARD_NAME_ORDER =
+            Comparator.comparing(Student::getName, ShardedStudentStore::compareBinary).thenComparingInt(Student::getId);
+
+    private static final Comparator<Head> HEAD_ORDER = Comparator.comparing(Head::student, SHARD_NAME_ORDER);
+
+    private final DatabaseManager[] shards;
+    private final IdBlock[] blocks;
+    private final int blockSize;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService fanOut = Executors.newVirtualThreadPerTaskExecutor();
+    private final DatabaseMetrics metrics;
+
+    // Shard 0 also holds the email registry; tests can pass managers over embedded databases
+    ShardedStudentStore(List<DatabaseManager> shards, int blockSize, DatabaseMetrics metrics) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Id block size must be at least 1");
+        }
+        this.shards = shards.toArray(new DatabaseManager[0]);
+        for (DatabaseManager shard : this.shards) {
+            shard.sortNamesByCodePoint();
+        }
+        this.blocks = new IdBlock[this.shards.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = new IdBlock();
+        }
+        this.blockSize = blockSize;
+        this.metrics = metrics;
+    }
+
+    static ShardedStudentStore fromConfig() throws SQLException {
+        String[] urls = DatabaseConfig.getShardUrls();
+        if (urls.length == 0) {
+            throw new SQLException("storage.engine=sharded needs db.shard.urls");
+        }
+        try {
+            Class.forName(DatabaseConfig.getDriver());
+        } catch (ClassNotFoundException e) {
+            throw new SQLException("Database driver not found", e);
+        }
+        List<DatabaseManager> shards = new ArrayList<>(urls.length);
+        try {
+            for (String url : urls) {
+                ConnectionPool pool = new ConnectionPool(url, DatabaseConfig.getConnectionProperties(url),
+                        ConnectionPool.Settings.fromConfig());
+                shards.add(new DatabaseManager(pool, new DatabaseMetrics(DatabaseConfig.isMetricsEnabled()), false));
+            }
+        } catch (SQLException | RuntimeException e) {
+            for (DatabaseManager shard : shards) {
+                try {
+                    shard.close();
+                } catch (SQLException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        return new ShardedStudentStore(shards, DatabaseConfig.getShardIdBlockSize(), DatabaseMetrics.fromConfig());
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    // Index of the shard that owns id (ids start at 1)
+    public int shardOf(int id) {
+        return (id / blockSize) % shards.length;
+    }
+
+    @Override
+    public void warmUp() throws SQLException {
+        onEveryShard(shard -> {
+            shards[shard].warmUp();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean addStudent(Student student) throws SQLException {
+        DatabaseMetrics.Timer timer = metrics.start("addStudent");
+        try {
+            int shard = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+            List<Student> row = List.of(withId(student, allocateId(shard)));
+            throwFirstFailure(registry().registerEmails(row));
+            try {
+                throwFirstFailure(shards[shard].addStudentsWithIds(row));
+            } catch (SQLException | RuntimeException e) {
+                releaseEmails(row);
+                throw e;
+            }
+            student.setId(row.get(0).getId());
+            timer.rows(1);
+            return true;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    /**
+     * Claims every email in one registry batch, then inserts each shard's rows as one batch per
+     * shard, all shards at once. Failure indexes refer to the order of students.
+     */
+    @Override
+    public BatchResult addStudents(Collection<Student> students) throws SQLException {
+        List<Student> input = new ArrayList<>(students);
+        BatchResult result = new BatchResult(input.size());
+
+        DatabaseMetrics.Timer timer = metrics.start("addStudents");
+        try {
+            List<Student> rows = new ArrayList<>(input.size());
+            int[] shardOfRow = new int[input.size()];
+            for (int i = 0; i < input.size(); i++) {
+                shardOfRow[i] = Math.floorMod(nextShard.getAndIncrement(), shards.length);
+                rows.add(withId(input.get(i), allocateId(shardOfRow[i])));
+            }
+
+            boolean[] failed = new boolean[rows.size()];
+            for (BatchResult.Failure failure : registry().registerEmails(rows).getFailures()) {
+                failed[failure.index()] = true;
+                result.recordFailure(failure.index(), failure.error());
+            }
+            List<List<Integer>> indexesByShard = new ArrayList<>(shards.length);
+            for (int shard = 0; shard < shards.length; shard++) {
+                indexesByShard.add(new ArrayList<>());
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                if (!failed[i]) {
+                    indexesByShard.get(shardOfRow[i]).add(i);
+                }
+            }
+
+            List<BatchResult> inserted = onEveryShard(shard -> {
+                List<Integer> indexes = indexesByShard.get(shard);
+                if (indexes.isEmpty()) {
+                    return null;
+                }
+                List<Student> batch = new ArrayList<>(indexes.size());
+                indexes.forEach(i -> batch.add(rows.get(i)));
+                return shards[shard].addStudentsWithIds(batch);
+            });
+
+            List<Student> rejected = new ArrayList<>();
+            for (int shard = 0; shard < shards.length; shard++) {
+                BatchResult shardResult = inserted.get(shard);
+                if (shardResult == null) {
+                    continue;
+                }
+                for (BatchResult.Failure failure : shardResult.getFailures()) {
+                    int i = indexesByShard.get(shard).get(failure.index());
+                    failed[i] = true;
+                    result.recordFailure(i, failure.error());
+                    rejected.add(rows.get(i));
+                }
+            }
+            if (!rejected.isEmpty()) {
+                releaseEmails(rejected);
+            }
+            for (int i = 0; i < rows.size(); i++) {
+                if (!failed[i]) {
+                    input.get(i).setId(rows.get(i).getId());
+                    result.recordSuccess();
+                }
+            }
+            timer.rows(result.getSucceeded());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+        return result;
+    }
+
+    @Override
+    public Student getStudentById(int id) throws SQLException {
+        return id < 1 ? null : owner(id).getStudentById(id);
+    }
+
+    @Override
+    public List<Student> getAllStudents() throws SQLException {
+        List<Student> students = new ArrayList<>();
+        forEachStudent(students::add);
+        return students;
+    }
+
+    /**
+     * Streams every student in (name, id) order. Each shard's query starts on its own virtual
+     * thread; the cursors are then merged on the calling thread, pulling the next row only from
+     * the shard whose row was just passed on.
+     */
+    public void forEachStudent(Consumer<Student> action) throws SQLException {
+        List<Stream<Student>> opened = Collections.synchronizedList(new ArrayList<>());
+
+        DatabaseMetrics.Timer timer = metrics.start("forEachStudent");
+        try {
+            List<Stream<Student>> streams = onEveryShard(shard -> {
+                Stream<Student> stream = shards[shard].streamStudents();
+                opened.add(stream);
+                return stream;
+            });
+            List<Iterator<Student>> cursors = new ArrayList<>(streams.size());
+            streams.forEach(stream -> cursors.add(stream.iterator()));
+            timer.rows(mergeByName(cursors, action));
+        } catch (UncheckedSQLException e) {
+            throw timer.failed(e.getCause());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            for (Stream<Student> stream : opened) {
+                try {
+                    stream.close();
+                } catch (UncheckedSQLException e) {
+                    // The rows were delivered (or another error is on its way); the connection is back either way
+                }
+            }
+            timer.stop();
+        }
+    }
+
+    // Each shard returns its first pageSize rows after the token; the first pageSize of their merge is the page
+    @Override
+    public StudentPage getStudentsPage(String pageToken, int pageSize) throws SQLException {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be at least 1");
+        }
+        List<Student> students = new ArrayList<>();
+        boolean more = false;
+
+        DatabaseMetrics.Timer timer = metrics.start("getStudentsPage");
+        try {
+            List<StudentPage> pages = onEveryShard(shard -> shards[shard].getStudentsPage(pageToken, pageSize));
+            List<Iterator<Student>> cursors = new ArrayList<>(pages.size());
+            for (StudentPage page : pages) {
+                cursors.add(page.getStudents().iterator());
+                more |= page.hasNext();
+            }
+            mergeByName(cursors, students::add);
+            timer.rows(students.size());
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+
+        if (students.size() > pageSize) {
+            students.subList(pageSize, students.size()).clear();
+            more = true;
+        }
+        return new StudentPage(students, more ? StudentPage.encodeToken(students.get(pageSize - 1)) : null);
+    }
+
+    @Override
+    public List<Student> searchStudentsByName(String name) throws SQLException {
+        List<Student> students = new ArrayList<>();
+
+        DatabaseMetrics.Timer timer = metrics.start("searchStudentsByName");
+        try {
+            List<List<Student>> matches = onEveryShard(shard -> shards[shard].searchStudentsByName(name));
+            List<Iterator<Student>> cursors = new ArrayList<>(matches.size());
+            matches.forEach(list -> cursors.add(list.iterator()));
+            timer.rows(mergeByName(cursors, students::add));
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+        return students;
+    }
+
+    @Override
+    public int countStudents() throws SQLException {
+        DatabaseMetrics.Timer timer = metrics.start("countStudents");
+        try {
+            int total = 0;
+            for (int count : onEveryShard(shard -> shards[shard].countStudents())) {
+                total += count;
+            }
+            return total;
+        } catch (SQLException e) {
+            throw timer.failed(e);
+        } finally {
+            timer.stop();
+        }
+    }
+
+    @Override
+    public boolean updateStudent(Student student) throws SQLException {
+        if (student.getId() < 1) {
+            return false;
+        }
+        DatabaseManager owner = owner(student.getId());
+        Student current = owner.loadStudentById(student.getId());
+        if (current == null) {
+            return false;
+        }
+        return withEmailMove(current, student, () -> owner.updateStudent(student), updated -> updated);
+    }
+
+    @Override
+    public UpdateResult updateStudentIfVersion(Student student, int expectedVersion) throws SQLException {
+        if (student.getId() < 1) {
+            return UpdateResult.NOT_FOUND;
+        }
+        DatabaseManager owner = owner(student.getId());
+        Student current = owner.loadStudentById(student.getId());
+        if (current == null) {
+            return UpdateResult.NOT_FOUND;
+        }
+        if (current.getVersion() != expectedVersion) {
+            return UpdateResult.CONFLICT;
+        }
+        return withEmailMove(current, student, () -> owner.updateStudentIfVersion(student, expectedVersion),
+                outcome -> outcome == UpdateResult.UPDATED);
+    }
+
+    // The version guard means an UPDATED row still had original's email, so no extra read is needed
+    @Override
+    public UpdateResult updateChangedFields(Student original, Student updated) throws SQLException {
+        if (original.getId() != updated.getId()) {
+            throw new IllegalArgumentException("Original and updated rows have different ids");
+        }
+        if (original.getId() < 1) {
+            return UpdateResult.NOT_FOUND;
+        }
+        DatabaseManager owner = owner(original.getId());
+        return withEmailMove(original, updated, () -> owner.updateChangedFields(original, updated),
+                outcome -> outcome == UpdateResult.UPDATED);
+    }
+
+    @Override
+    public boolean deleteStudent(int id) throws SQLException {
+        if (id < 1) {
+            return false;
+        }
+        DatabaseManager owner = owner(id);
+        Student current = owner.loadStudentById(id);
+        boolean deleted = owner.deleteStudent(id);
+        if (deleted && current != null) {
+            releaseEmails(List.of(current));
+        }
+        return deleted;
+    }
+
+    @Override
+    public String getStatistics() {
+        StringBuilder sb = new StringBuilder(metrics.report());
+        for (int i = 0; i < shards.length; i++) {
+            sb.append("--- Shard ").append(i).append(" ---\n").append(shards[i].getStatistics());
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws SQLException {
+        fanOut.shutdown();
+        SQLException failure = null;
+        for (DatabaseManager shard : shards) {
+            try {
+                shard.close();
+            } catch (SQLException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        metrics.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Runs write on the owning shard. If it moves the student to a different email, the new
+     * email is claimed first, and afterwards whichever of the two the row no longer has is
+     * released: the old one when applied says the write took effect, the new one otherwise.
+     */
+    private <T> T withEmailMove(Student current, Student updated, ShardWrite<T> write, Predicate<T> applied)
+            throws SQLException {
+        if (current.getEmail().equalsIgnoreCase(updated.getEmail())) {
+            return write.run();
+        }
+        List<Student> claimed = List.of(withId(updated, current.getId()));
+        throwFirstFailure(registry().registerEmails(claimed));
+        T outcome;
+        try {
+            outcome = write.run();
+        } catch (SQLException | RuntimeException e) {
+            releaseEmails(claimed);
+            throw e;
+        }
+        releaseEmails(applied.test(outcome) ? List.of(current) : claimed);
+        return outcome;
+    }
+
+    // A release that fails leaves the email reserved rather than breaking uniqueness, so it is not retried
+    private void releaseEmails(List<Student> students) {
+        try {
+            registry().unregisterEmails(students);
+        } catch (SQLException e) {
+            // Counted in shard 0's metrics
+        }
+    }
+
+    private int allocateId(int shard) throws SQLException {
+        IdBlock block = blocks[shard];
+        block.lock.lock();
+        try {
+            if (block.next == block.end) {
+                long number = shards[shard].allocateIdBlock(shard, shards.length, blockSize);
+                block.next = number * blockSize;
+                block.end = block.next + blockSize;
+            }
+            return (int) block.next++;
+        } finally {
+            block.lock.unlock();
+        }
+    }
+
+    /**
+     * Runs call for every shard on its own virtual thread and returns the results in shard
+     * order. Every call is waited for, so nothing is still running when an error is thrown;
+     * the first error is thrown with any others suppressed.
+     */
+    private <T> List<T> onEveryShard(ShardCall<T> call) throws SQLException {
+        List<Future<T>> futures = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            int shard = i;
+            futures.add(fanOut.submit(() -> call.call(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.length);
+        Throwable failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                } else {
+                    failure.addSuppressed(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                futures.forEach(f -> f.cancel(true));
+                throw new SQLException("Interrupted waiting for the shards", e);
+            }
+        }
+        if (failure instanceof SQLException e) {
+            throw e;
+        }
+        if (failure instanceof RuntimeException e) {
+            throw e;
+        }
+        if (failure instanceof Error e) {
+            throw e;
+        }
+        return results;
+    }
+
+    // k-way merge of cursors that are each in (name, id) order; returns how many rows were passed on
+    private static long mergeByName(List<Iterator<Student>> cursors, Consumer<Student> action) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, cursors.size()), HEAD_ORDER);
+        for (Iterator<Student> cursor : cursors) {
+            if (cursor.hasNext()) {
+                heads.add(new Head(cursor.next(), cursor));
+            }
+        }
+        long rows = 0;
+        while (!heads.isEmpty()) {
+            Head head = heads.poll();
+            action.accept(head.student());
+            rows++;
+            if (head.rest().hasNext()) {
+                heads.add(new Head(head.rest().next(), head.rest()));
+            }
+        }
+        return rows;
+    }
+
+    private static int compareBinary(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() || j < b.length()) {
+            int ca = i < a.length() ? a.codePointAt(i) : ' ';
+            int cb = j < b.length() ? b.codePointAt(j) : ' ';
+            if (ca != cb) {
+                return Integer.compare(ca, cb);
+            }
+            i += i < a.length() ? Character.charCount(ca) : 0;
+            j += j < b.length() ? Character.charCount(cb) : 0;
+        }
+        return 0;
+    }
+
+    private DatabaseManager owner(int id) {
+        return shards[shardOf(id)];
+    }
+
+    private DatabaseManager registry() {
+        return shards[0];
+    }
+
+    private static Student withId(Student student, int id) {
+        return new Student(id, student.getName(), student.getEmail(), student.getAge(), student.getCourse());
+    }
+
+    private static void throwFirstFailure(BatchResult result) throws SQLException {
+        if (result.hasFailures()) {
+            throw result.getFailures().get(0).error();
+        }
+    }
+}
@@ -0,0 +1,71 @@
+// StartupClock.java - Startup phase timings from Main.main to the first query served
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Main calls begin() before anything else; config, driver, schema and pool warm-up call
+ * mark() as they finish, and the first DatabaseManager call to complete ends the clock. With
+ * -Dstartup.trace=true the phases are printed to stderr at that point, e.g.
+ *
+ *   startup: jvm 61ms | config loaded +4.2ms, driver loaded +88.9ms, schema current +131.4ms, first query +133.0ms
+ *
+ * where "jvm" is JVM start to Main.main and each phase is measured from Main.main.
+ */
+final class StartupClock {
+    private static final boolean TRACE = Boolean.getBoolean("startup.trace");
+
+    private static volatile long mainStarted;
+    private static volatile long firstQueryNanos = -1;
+    // Formatted only once the clock stops, so tracing adds no formatting work to the phases it times
+    private static final List<String> names = new ArrayList<>();
+    private static final List<Long> offsets = new ArrayList<>();
+
+    private StartupClock() {
+    }
+
+    static void begin() {
+        mainStarted = System.nanoTime();
+    }
+
+    static void mark(String phase) {
+        if (!TRACE || mainStarted == 0 || firstQueryNanos >= 0) {
+            return;
+        }
+        long elapsed = System.nanoTime() - mainStarted;
+        synchronized (names) {
+            names.add(phase);
+            offsets.add(elapsed);
+        }
+    }
+
+    // Called as every database call finishes; only the first one after begin() counts
+    static void queryServed() {
+        if (firstQueryNanos >= 0 || mainStarted == 0) {
+            return;
+        }
+        synchronized (names) {
+            if (firstQueryNanos >= 0) {
+                return;
+            }
+            firstQueryNanos = System.nanoTime() - mainStarted;
+            if (TRACE) {
+                names.add("first query");
+                offsets.add(firstQueryNanos);
+                StringBuilder line = new StringBuilder("startup: jvm ").append(jvmToMain()).append(" |");
+                for (int i = 0; i < names.size(); i++) {
+                    line.append(i == 0 ? " " : ", ").append(names.get(i))
+                            .append(String.format(" +%.1fms", offsets.get(i) / 1e6));
+                }
+                System.err.println(line);
+            }
+        }
+    }
+
+    // Loads the management classes, so only called once the clock has stopped
+    private static String jvmToMain() {
+        long jvmStarted = ManagementFactory.getRuntimeMXBean().getStartTime();
+        long mainAgoMillis = (System.nanoTime() - mainStarted) / 1_000_000;
+        return (System.currentTimeMillis() - mainAgoMillis - jvmStarted) + "ms";
+    }
+}
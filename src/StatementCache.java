@@ -0,0 +1,69 @@
+// StatementCache.java - LRU cache of prepared statements for one physical connection
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+class StatementCache {
+    private record Key(String sql, int autoGeneratedKeys) {}
+
+    // Pool-wide counters shared by every connection's cache
+    static final class Counters {
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final LongAdder evictions = new LongAdder();
+    }
+
+    private final Connection connection;
+    private final Counters counters;
+    private final LinkedHashMap<Key, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int maxSize, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, PreparedStatement> eldest) {
+                if (size() <= maxSize) {
+                    return false;
+                }
+                counters.evictions.increment();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        PreparedStatement cached = statements.get(key);
+
+        if (cached != null && !cached.isClosed()) {
+            counters.hits.increment();
+            // A borrower that failed between addBatch and executeBatch leaves its rows queued
+            cached.clearParameters();
+            cached.clearBatch();
+            return cached;
+        }
+
+        counters.misses.increment();
+        PreparedStatement pstmt = connection.prepareStatement(sql, autoGeneratedKeys);
+        statements.put(key, pstmt);
+        return pstmt;
+    }
+
+    void clear() {
+        statements.values().forEach(StatementCache::closeQuietly);
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement pstmt) {
+        try {
+            pstmt.close();
+        } catch (SQLException e) {
+            // Nothing useful to do with a failed close of a cached statement
+        }
+    }
+}
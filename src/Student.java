@@ -5,6 +5,7 @@ class Student {
     private String email;
     private int age;
     private String course;
+    private int version;
 
     // Constructors
     public Student() {}
@@ -37,6 +38,10 @@ class Student {
     public String getCourse() { return course; }
     public void setCourse(String course) { this.course = course; }
 
+    // Row version, bumped by every update; optimistic updates compare it
+    public int getVersion() { return version; }
+    public void setVersion(int version) { this.version = version; }
+
     @Override
     public String toString() {
         return String.format("Student{id=%d, name='%s', email='%s', age=%d, course='%s'}",
@@ -0,0 +1,151 @@
+// StudentCache.java - Bounded read-through id -> Student cache with TTL and negative entries
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+class StudentCache {
+    @FunctionalInterface
+    interface Loader {
+        Student load(int id) throws SQLException;
+    }
+
+    record Stats(int size, long hits, long negativeHits, long misses, long evictions, long expirations,
+                 long loads, double averageLoadMillis) {
+
+        double hitRatio() {
+            long lookups = hits + negativeHits + misses;
+            return lookups == 0 ? 0.0 : (double) (hits + negativeHits) / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d, hitRatio=%.1f%%, hits=%d, negativeHits=%d, misses=%d, evictions=%d, "
+                            + "expirations=%d, loads=%d, avgLoad=%.3fms",
+                    size, hitRatio() * 100, hits, negativeHits, misses, evictions, expirations, loads,
+                    averageLoadMillis);
+        }
+    }
+
+    // student == null marks a cached "no such id"
+    private record Entry(Student student, long expiresAt) {}
+
+    private final int maxSize;
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final LinkedHashMap<Integer, Entry> entries;
+
+    // Bumped by every write so a load that raced with it does not cache a stale row
+    private final AtomicLong writeGeneration = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadNanos = new LongAdder();
+
+    StudentCache(int maxSize, long ttlMillis, long negativeTtlMillis) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.negativeTtlMillis = negativeTtlMillis;
+        this.entries = new LinkedHashMap<>(Math.min(maxSize, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Entry> eldest) {
+                if (size() > StudentCache.this.maxSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    static StudentCache fromConfig() {
+        return new StudentCache(DatabaseConfig.getCacheMaxSize(), DatabaseConfig.getCacheTtlMillis(),
+                DatabaseConfig.getCacheNegativeTtlMillis());
+    }
+
+    public Student get(int id, Loader loader) throws SQLException {
+        long now = System.currentTimeMillis();
+        synchronized (entries) {
+            Entry entry = entries.get(id);
+            if (entry != null) {
+                if (entry.expiresAt() > now) {
+                    if (entry.student() == null) {
+                        negativeHits.increment();
+                        return null;
+                    }
+                    hits.increment();
+                    return copyOf(entry.student());
+                }
+                entries.remove(id);
+                expirations.increment();
+            }
+        }
+
+        misses.increment();
+        long generation = writeGeneration.get();
+        long started = System.nanoTime();
+        Student loaded = loader.load(id);
+        loadNanos.add(System.nanoTime() - started);
+        loads.increment();
+
+        long ttl = loaded == null ? negativeTtlMillis : ttlMillis;
+        if (ttl > 0) {
+            synchronized (entries) {
+                if (writeGeneration.get() == generation) {
+                    entries.put(id, new Entry(loaded == null ? null : copyOf(loaded), System.currentTimeMillis() + ttl));
+                }
+            }
+        }
+        return loaded;
+    }
+
+    // Write-through after a successful insert/update; a racing writer's older version never replaces a newer one
+    public void put(Student student) {
+        synchronized (entries) {
+            writeGeneration.incrementAndGet();
+            Entry current = entries.get(student.getId());
+            if (current != null && current.student() != null && current.student().getVersion() > student.getVersion()) {
+                return;
+            }
+            entries.put(student.getId(), new Entry(copyOf(student), System.currentTimeMillis() + ttlMillis));
+        }
+    }
+
+    public void invalidate(int id) {
+        synchronized (entries) {
+            writeGeneration.incrementAndGet();
+            entries.remove(id);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            writeGeneration.incrementAndGet();
+            entries.clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long loadCount = loads.sum();
+        double averageLoadMillis = loadCount == 0 ? 0.0 : loadNanos.sum() / 1e6 / loadCount;
+        return new Stats(size, hits.sum(), negativeHits.sum(), misses.sum(), evictions.sum(), expirations.sum(),
+                loadCount, averageLoadMillis);
+    }
+
+    // Student is mutable, so callers never share the cached instance
+    private static Student copyOf(Student student) {
+        Student copy = new Student(student.getId(), student.getName(), student.getEmail(), student.getAge(),
+                student.getCourse());
+        copy.setVersion(student.getVersion());
+        return copy;
+    }
+}
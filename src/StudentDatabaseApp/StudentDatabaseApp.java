@@ -1,15 +1,28 @@
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.List;
 import java.util.Scanner;
 
 public class StudentDatabaseApp {
-    private DatabaseManager dbManager;
+    private static final int PAGE_SIZE = 20;
+
+    private StudentStore store;
     private Scanner scanner;
 
     public StudentDatabaseApp() throws SQLException {
-        this.dbManager = new DatabaseManager();
+        this.store = StudentStore.open();
         this.scanner = new Scanner(System.in);
+        // Connect and check the schema up front so a bad configuration is reported before the menu
+        try {
+            store.warmUp();
+        } catch (SQLException e) {
+            store.close();
+            throw e;
+        }
     }
 
     public void run() {
@@ -27,7 +40,10 @@ public class StudentDatabaseApp {
                     case 4 -> updateStudent();
                     case 5 -> deleteStudent();
                     case 6 -> viewStudentDetails();
-                    case 7 -> {
+                    case 7 -> bulkImport();
+                    case 8 -> exportStudents();
+                    case 9 -> showStatistics();
+                    case 10 -> {
                         System.out.println("Thank you for using Student Database System!");
                         return;
                     }
@@ -39,7 +55,7 @@ public class StudentDatabaseApp {
             }
         } finally {
             try {
-                dbManager.close();
+                store.close();
                 scanner.close();
             } catch (SQLException e) {
                 System.err.println("Error closing database connection: " + e.getMessage());
@@ -55,7 +71,10 @@ public class StudentDatabaseApp {
         System.out.println("4. Update Student Information");
         System.out.println("5. Delete Student");
         System.out.println("6. View Student Details");
-        System.out.println("7. Exit");
+        System.out.println("7. Bulk Import from File");
+        System.out.println("8. Export to File");
+        System.out.println("9. Show Statistics");
+        System.out.println("10. Exit");
         System.out.println("=".repeat(50));
     }
 
@@ -70,7 +89,7 @@ public class StudentDatabaseApp {
 
             Student student = new Student(name, email, age, course);
 
-            if (dbManager.addStudent(student)) {
+            if (store.addStudent(student)) {
                 System.out.println("✓ Student added successfully with ID: " + student.getId());
             } else {
                 System.out.println("✗ Failed to add student.");
@@ -85,12 +104,28 @@ public class StudentDatabaseApp {
         System.out.println("\n--- All Students ---");
 
         try {
-            List<Student> students = dbManager.getAllStudents();
+            StudentPage page = store.getStudentsPage(null, PAGE_SIZE);
 
-            if (students.isEmpty()) {
+            if (page.getStudents().isEmpty()) {
                 System.out.println("No students found in the database.");
-            } else {
-                displayStudentTable(students);
+                return;
+            }
+
+            int shown = 0;
+            while (true) {
+                displayStudentTable(page.getStudents(),
+                        "Showing students " + (shown + 1) + "-" + (shown + page.getStudents().size()));
+                shown += page.getStudents().size();
+
+                if (!page.hasNext()) {
+                    System.out.println("End of list.");
+                    return;
+                }
+                String answer = getStringInput("Press Enter for the next page or 'q' to stop: ");
+                if ("q".equalsIgnoreCase(answer)) {
+                    return;
+                }
+                page = store.getStudentsPage(page.getNextPageToken(), PAGE_SIZE);
             }
 
         } catch (SQLException e) {
@@ -103,7 +138,7 @@ public class StudentDatabaseApp {
 
         try {
             String searchName = getStringInput("Enter name to search: ");
-            List<Student> students = dbManager.searchStudentsByName(searchName);
+            List<Student> students = store.searchStudentsByName(searchName);
 
             if (students.isEmpty()) {
                 System.out.println("No students found matching: " + searchName);
@@ -121,7 +156,7 @@ public class StudentDatabaseApp {
 
         try {
             int id = getIntInput("Enter student ID to update: ");
-            Student existingStudent = dbManager.getStudentById(id);
+            Student existingStudent = store.getStudentById(id);
 
             if (existingStudent == null) {
                 System.out.println("Student with ID " + id + " not found.");
@@ -138,10 +173,17 @@ public class StudentDatabaseApp {
 
             Student updatedStudent = new Student(id, name, email, age, course);
 
-            if (dbManager.updateStudent(updatedStudent)) {
-                System.out.println("✓ Student updated successfully.");
-            } else {
-                System.out.println("✗ Failed to update student.");
+            // Only the edited fields are written, and only if nobody changed the row meanwhile
+            switch (store.updateChangedFields(existingStudent, updatedStudent)) {
+                case UPDATED -> System.out.println("✓ Student updated successfully.");
+                case CONFLICT -> {
+                    System.out.println("✗ Student was changed by someone else while you were editing; nothing was saved.");
+                    Student current = store.getStudentById(id);
+                    if (current != null) {
+                        System.out.println("Current details: " + current);
+                    }
+                }
+                case NOT_FOUND -> System.out.println("✗ Student with ID " + id + " no longer exists.");
             }
 
         } catch (SQLException e) {
@@ -154,7 +196,7 @@ public class StudentDatabaseApp {
 
         try {
             int id = getIntInput("Enter student ID to delete: ");
-            Student student = dbManager.getStudentById(id);
+            Student student = store.getStudentById(id);
 
             if (student == null) {
                 System.out.println("Student with ID " + id + " not found.");
@@ -165,7 +207,7 @@ public class StudentDatabaseApp {
             String confirmation = getStringInput("Are you sure? (yes/no): ");
 
             if ("yes".equalsIgnoreCase(confirmation)) {
-                if (dbManager.deleteStudent(id)) {
+                if (store.deleteStudent(id)) {
                     System.out.println("✓ Student deleted successfully.");
                 } else {
                     System.out.println("✗ Failed to delete student.");
@@ -184,7 +226,7 @@ public class StudentDatabaseApp {
 
         try {
             int id = getIntInput("Enter student ID: ");
-            Student student = dbManager.getStudentById(id);
+            Student student = store.getStudentById(id);
 
             if (student == null) {
                 System.out.println("Student with ID " + id + " not found.");
@@ -197,6 +239,55 @@ public class StudentDatabaseApp {
         }
     }
 
+    private void bulkImport() {
+        System.out.println("\n--- Bulk Import ---");
+
+        Path file = Path.of(getStringInput("Enter path to a CSV or JSON-lines file: "));
+        if (!Files.isRegularFile(file)) {
+            System.out.println("File not found: " + file);
+            return;
+        }
+
+        boolean resume = false;
+        if (Files.exists(BulkImporter.checkpointFile(file))) {
+            resume = "yes".equalsIgnoreCase(getStringInput("An interrupted import was found. Resume it? (yes/no): "));
+        }
+
+        try {
+            BulkImporter importer = new BulkImporter(store, System.out);
+            importer.report(file, importer.importFile(file, resume));
+        } catch (SQLException e) {
+            handleSQLException("importing students", e);
+        } catch (IOException e) {
+            System.err.println("✗ Import failed: " + e.getMessage());
+        }
+    }
+
+    private void exportStudents() {
+        System.out.println("\n--- Export ---");
+
+        if (!(store instanceof DatabaseManager dbManager)) {
+            System.out.println("Export reads from MySQL and is not available with storage.engine="
+                    + DatabaseConfig.getStorageEngine() + ".");
+            return;
+        }
+        Path file = Path.of(getStringInput("Enter output file (.csv, .jsonl or .stuc, optionally .gz): "));
+        try {
+            StudentExporter exporter = new StudentExporter(dbManager, System.out);
+            exporter.report(file, exporter.exportTo(file, StudentExporter.detectFormat(file),
+                    StudentExporter.detectCompression(file)));
+        } catch (SQLException e) {
+            handleSQLException("exporting students", e);
+        } catch (IOException e) {
+            System.err.println("✗ Export failed: " + e.getMessage());
+        }
+    }
+
+    private void showStatistics() {
+        System.out.println("\n--- Database Statistics ---");
+        System.out.print(store.getStatistics());
+    }
+
     // Input helper methods with validation
     private String getValidName() {
         while (true) {
@@ -291,23 +382,16 @@ public class StudentDatabaseApp {
         }
     }
 
-    private void displayStudentTable(List<Student> students) {
-        System.out.println("\n" + "=".repeat(80));
-        System.out.printf("%-5s %-20s %-25s %-5s %-20s%n",
-                "ID", "Name", "Email", "Age", "Course");
-        System.out.println("=".repeat(80));
-
-        for (Student student : students) {
-            System.out.printf("%-5d %-20s %-25s %-5d %-20s%n",
-                    student.getId(),
-                    truncate(student.getName(), 20),
-                    truncate(student.getEmail(), 25),
-                    student.getAge(),
-                    truncate(student.getCourse(), 20));
-        }
+    static void displayStudentTable(List<Student> students) {
+        displayStudentTable(students, "Total students: " + students.size());
+    }
 
-        System.out.println("=".repeat(80));
-        System.out.println("Total students: " + students.size());
+    static void displayStudentTable(List<Student> students, String footer) {
+        try {
+            StudentTableRenderer.forSystemOut(StudentTableRenderer.Mode.TABLE, students.size()).render(students, footer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     private void displayStudentDetails(Student student) {
@@ -322,10 +406,6 @@ public class StudentDatabaseApp {
         System.out.println("=".repeat(40));
     }
 
-    private String truncate(String str, int maxLength) {
-        return str.length() <= maxLength ? str : str.substring(0, maxLength - 3) + "...";
-    }
-
     private void handleSQLException(String operation, SQLException e) {
         System.err.println("Database error while " + operation + ":");
 
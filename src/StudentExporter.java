@@ -0,0 +1,425 @@
+// StudentExporter.java - Parallel, chunked export of the students table to CSV / JSON-lines / columnar files
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Splits the id range into chunks that are read over separate pooled connections and encoded
+ * in parallel, then written to the file strictly in chunk order, so the output is the same for
+ * every run over the same data. At most two chunks per reader are in flight, which bounds memory
+ * regardless of table size. Chunks are read one after another, not from a single transaction,
+ * so rows changed during the export may appear in either state.
+ *
+ * With gzip, each chunk is compressed on its reader thread as its own gzip member; the
+ * concatenated members form a valid gzip file.
+ */
+class StudentExporter {
+    private static final byte[] COLUMNAR_MAGIC = {'S', 'T', 'U', 'C'};
+    private static final int COLUMNAR_VERSION = 1;
+    private static final long PROGRESS_INTERVAL_NANOS = 2_000_000_000L;
+
+    enum Format { CSV, JSON_LINES, COLUMNAR }
+
+    enum Compression { NONE, GZIP }
+
+    record Summary(long rows, long bytesWritten, long elapsedMillis, double rowsPerSecond, double megabytesPerSecond) {}
+
+    private record EncodedChunk(int rows, byte[] bytes) {}
+
+    private final DatabaseManager dbManager;
+    private final PrintStream out;
+    private final int chunkSize;
+    private final int readerThreads;
+
+    public StudentExporter(DatabaseManager dbManager, PrintStream out) {
+        this(dbManager, out, DatabaseConfig.getExportChunkSize(), DatabaseConfig.getExportThreads());
+    }
+
+    StudentExporter(DatabaseManager dbManager, PrintStream out, int chunkSize, int readerThreads) {
+        this.dbManager = dbManager;
+        this.out = out;
+        this.chunkSize = Math.max(1, chunkSize);
+        // Leave one pooled connection for the rest of the application
+        this.readerThreads = readerThreads > 0 ? readerThreads
+                : Math.max(1, Math.min(dbManager.getMaxConnections() - 1, Runtime.getRuntime().availableProcessors()));
+    }
+
+    // students.csv, students.jsonl, students.stuc, each optionally followed by .gz
+    public static Format detectFormat(Path file) {
+        String name = stripGzip(file.getFileName().toString().toLowerCase(Locale.ROOT));
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        return name.endsWith(".stuc") ? Format.COLUMNAR : Format.JSON_LINES;
+    }
+
+    public static Compression detectCompression(Path file) {
+        return file.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".gz") ? Compression.GZIP : Compression.NONE;
+    }
+
+    /**
+     * Writes the whole table to file. The data goes to a ".part" file that replaces the target
+     * only once everything has been written.
+     */
+    public Summary exportTo(Path file, Format format, Compression compression) throws IOException, SQLException {
+        Path partial = file.resolveSibling(file.getFileName() + ".part");
+        long started = System.nanoTime();
+        long lastProgress = started;
+        long rows = 0;
+        long bytes = 0;
+
+        int[] range = dbManager.getIdRange();
+        long firstId = range == null ? 0 : range[0];
+        long endId = range == null ? 0 : range[1] + 1L;
+
+        ExecutorService readers = Executors.newFixedThreadPool(readerThreads, r -> {
+            Thread thread = new Thread(r, "export-reader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Chunks are submitted ahead in id order and written in the same order
+        ArrayDeque<Future<EncodedChunk>> window = new ArrayDeque<>();
+        long nextChunkStart = firstId;
+
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            bytes += write(channel, compress(header(format), compression));
+
+            while (nextChunkStart < endId || !window.isEmpty()) {
+                while (nextChunkStart < endId && window.size() < readerThreads * 2) {
+                    int from = (int) nextChunkStart;
+                    int to = (int) Math.min(endId, nextChunkStart + chunkSize);
+                    window.add(readers.submit(() -> encodeChunk(from, to, format, compression)));
+                    nextChunkStart = to;
+                }
+
+                EncodedChunk chunk = await(window.poll());
+                rows += chunk.rows();
+                bytes += write(channel, chunk.bytes());
+
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    out.printf("  ... %d rows, %.1f MB written (%.0f rows/s)%n",
+                            rows, bytes / 1e6, rows * 1e9 / (now - started));
+                }
+            }
+
+            bytes += write(channel, compress(trailer(format, rows), compression));
+            channel.force(true);
+        } catch (IOException | SQLException | RuntimeException e) {
+            Files.deleteIfExists(partial);
+            throw e;
+        } finally {
+            readers.shutdownNow();
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        long elapsedNanos = Math.max(1, System.nanoTime() - started);
+        return new Summary(rows, bytes, elapsedNanos / 1_000_000, rows * 1e9 / elapsedNanos,
+                bytes / 1e6 / (elapsedNanos / 1e9));
+    }
+
+    public void report(Path file, Summary summary) {
+        out.printf("Exported %d students to %s (%.1f MB) in %.1fs, %.0f rows/s, %.1f MB/s%n",
+                summary.rows(), file, summary.bytesWritten() / 1e6, summary.elapsedMillis() / 1000.0,
+                summary.rowsPerSecond(), summary.megabytesPerSecond());
+    }
+
+    private EncodedChunk encodeChunk(int fromId, int toId, Format format, Compression compression)
+            throws SQLException, IOException {
+        byte[] encoded;
+        int[] rows = {0};
+        if (format == Format.COLUMNAR) {
+            ColumnarChunk columns = new ColumnarChunk();
+            dbManager.scanStudentsInIdRange(fromId, toId, columns::add);
+            rows[0] = columns.rows;
+            encoded = columns.rows == 0 ? new byte[0] : columns.encode();
+        } else {
+            StringBuilder sb = new StringBuilder(8192);
+            dbManager.scanStudentsInIdRange(fromId, toId, student -> {
+                if (format == Format.CSV) {
+                    appendCsv(sb, student);
+                } else {
+                    StudentJson.appendTo(sb, student);
+                    sb.append('\n');
+                }
+                rows[0]++;
+            });
+            encoded = sb.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        return new EncodedChunk(rows[0], compress(encoded, compression));
+    }
+
+    private static byte[] header(Format format) {
+        return switch (format) {
+            case CSV -> "id,name,email,age,course\n".getBytes(StandardCharsets.UTF_8);
+            case JSON_LINES -> new byte[0];
+            case COLUMNAR -> {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.put(COLUMNAR_MAGIC).putInt(COLUMNAR_VERSION);
+                yield header.array();
+            }
+        };
+    }
+
+    // The columnar format ends with an empty row group followed by the total row count
+    private static byte[] trailer(Format format, long rows) {
+        if (format != Format.COLUMNAR) {
+            return new byte[0];
+        }
+        return ByteBuffer.allocate(16).putInt(0).putInt(0).putLong(rows).array();
+    }
+
+    private static byte[] compress(byte[] data, Compression compression) throws IOException {
+        if (compression == Compression.NONE || data.length == 0) {
+            return data;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8192)) {
+            gzip.write(data);
+        }
+        return compressed.toByteArray();
+    }
+
+    private static long write(FileChannel channel, byte[] data) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        return data.length;
+    }
+
+    private static EncodedChunk await(Future<EncodedChunk> future) throws IOException, SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sql) {
+                throw sql;
+            }
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw new IOException("Export failed", e.getCause());
+        }
+    }
+
+    private static void appendCsv(StringBuilder sb, Student student) {
+        sb.append(student.getId()).append(',');
+        appendCsvField(sb, student.getName());
+        sb.append(',');
+        appendCsvField(sb, student.getEmail());
+        sb.append(',').append(student.getAge()).append(',');
+        appendCsvField(sb, student.getCourse());
+        sb.append('\n');
+    }
+
+    // Quoted only when needed, in the form BulkImporter.parseCsvLine reads back
+    private static void appendCsvField(StringBuilder sb, String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            sb.append(value);
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                sb.append('"');
+            }
+            sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static String stripGzip(String name) {
+        return name.endsWith(".gz") ? name.substring(0, name.length() - 3) : name;
+    }
+
+    /**
+     * One row group of the columnar format:
+     *
+     *   int rowCount, int payloadLength, then the payload column by column -
+     *   ids as varint deltas, ages as varints, the course dictionary (varint count + strings)
+     *   followed by one varint code per row, then all names and all emails
+     *
+     * Strings are a varint byte length followed by UTF-8.
+     */
+    private static final class ColumnarChunk {
+        int rows;
+        int[] ids = new int[1024];
+        int[] ages = new int[1024];
+        int[] courseCodes = new int[1024];
+        final List<String> names = new ArrayList<>();
+        final List<String> emails = new ArrayList<>();
+        final List<String> courses = new ArrayList<>();
+        final Map<String, Integer> courseCodeByName = new HashMap<>();
+
+        void add(Student student) {
+            if (rows == ids.length) {
+                ids = Arrays.copyOf(ids, rows * 2);
+                ages = Arrays.copyOf(ages, rows * 2);
+                courseCodes = Arrays.copyOf(courseCodes, rows * 2);
+            }
+            ids[rows] = student.getId();
+            ages[rows] = student.getAge();
+            courseCodes[rows] = courseCodeByName.computeIfAbsent(student.getCourse(), course -> {
+                courses.add(course);
+                return courses.size() - 1;
+            });
+            names.add(student.getName());
+            emails.add(student.getEmail());
+            rows++;
+        }
+
+        byte[] encode() {
+            ByteArrayOutputStream payload = new ByteArrayOutputStream(rows * 48);
+            int previous = 0;
+            for (int i = 0; i < rows; i++) {
+                writeVarint(payload, ids[i] - previous);
+                previous = ids[i];
+            }
+            for (int i = 0; i < rows; i++) {
+                writeVarint(payload, ages[i]);
+            }
+            writeVarint(payload, courses.size());
+            courses.forEach(course -> writeString(payload, course));
+            for (int i = 0; i < rows; i++) {
+                writeVarint(payload, courseCodes[i]);
+            }
+            names.forEach(name -> writeString(payload, name));
+            emails.forEach(email -> writeString(payload, email));
+
+            return ByteBuffer.allocate(8 + payload.size())
+                    .putInt(rows)
+                    .putInt(payload.size())
+                    .put(payload.toByteArray())
+                    .array();
+        }
+    }
+
+    /**
+     * Reads a file written in the columnar format (gzip or not) back as students, in id order.
+     * Returns the number of rows read.
+     */
+    public static long readColumnar(Path file, Consumer<Student> action) throws IOException {
+        try (InputStream raw = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(
+                     detectCompression(file) == Compression.GZIP ? new GZIPInputStream(raw, 65536) : raw, 65536))) {
+            byte[] magic = new byte[4];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, COLUMNAR_MAGIC) || in.readInt() != COLUMNAR_VERSION) {
+                throw new IOException(file + " is not a columnar student export");
+            }
+
+            long total = 0;
+            while (true) {
+                int rows = in.readInt();
+                int length = in.readInt();
+                if (rows == 0) {
+                    long expected = in.readLong();
+                    if (expected != total) {
+                        throw new IOException("Export is incomplete: expected " + expected + " rows, read " + total);
+                    }
+                    return total;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                ByteBuffer group = ByteBuffer.wrap(payload);
+
+                int[] ids = new int[rows];
+                int previous = 0;
+                for (int i = 0; i < rows; i++) {
+                    ids[i] = previous += readVarint(group);
+                }
+                int[] ages = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    ages[i] = readVarint(group);
+                }
+                String[] courses = new String[readVarint(group)];
+                for (int i = 0; i < courses.length; i++) {
+                    courses[i] = readString(group);
+                }
+                int[] courseCodes = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    courseCodes[i] = readVarint(group);
+                }
+                String[] names = new String[rows];
+                for (int i = 0; i < rows; i++) {
+                    names[i] = readString(group);
+                }
+                for (int i = 0; i < rows; i++) {
+                    action.accept(new Student(ids[i], names[i], readString(group), ages[i], courses[courseCodes[i]]));
+                }
+                total += rows;
+            }
+        } catch (EOFException e) {
+            throw new IOException("Export is truncated: " + file, e);
+        }
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarint(in);
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+}
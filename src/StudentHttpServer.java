@@ -0,0 +1,531 @@
+// StudentHttpServer.java - Embedded HTTP/JSON interface to DatabaseManager
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * JSON endpoints over the JDK's built-in HTTP server:
+ *
+ *   GET    /students?pageSize=50&pageToken=..   one keyset page, ordered by (name, id)
+ *   GET    /students/{id}
+ *   POST   /students                            body: one student object; 201 with the new id
+ *   PUT    /students/{id}                       body: the full student object
+ *   DELETE /students/{id}
+ *   POST   /students/_bulk                      body: JSON lines, inserted in db.batch.size batches
+ *   GET    /students/_search?q=..[&prefix=true]
+ *   GET    /_metrics                            plain-text latency report
+ *
+ * Every exchange runs on its own virtual thread. Database calls are gated by a semaphore sized
+ * to the connection pool, so a burst of requests parks cheaply instead of timing out on pool
+ * acquire. Responses always carry a Content-Length, which keeps HTTP/1.1 connections alive.
+ *
+ * With read replicas, a response to a client that has written carries an X-Consistency-Token
+ * header. Requests that send it back read from the primary until the write has had time to
+ * replicate (see ReadSession).
+ */
+class StudentHttpServer implements AutoCloseable {
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String JSON = "application/json; charset=utf-8";
+
+    @FunctionalInterface
+    private interface SqlCall<T> {
+        T call() throws SQLException;
+    }
+
+    // Turns into an error response with the given status
+    private static final class HttpError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static final class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder clientErrors = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    private final DatabaseManager dbManager;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore permits;
+    private final int maxBodyBytes;
+    private final int batchSize;
+    // Null unless db.writeBehind.enabled; single-record writes then commit in groups
+    private final WriteBehindQueue writeBehind;
+    private final Map<String, EndpointStats> endpoints = new ConcurrentHashMap<>();
+
+    public StudentHttpServer(DatabaseManager dbManager, int port) throws IOException {
+        this(dbManager, new InetSocketAddress(port), DatabaseConfig.getHttpMaxBodyBytes());
+    }
+
+    StudentHttpServer(DatabaseManager dbManager, InetSocketAddress address, int maxBodyBytes) throws IOException {
+        this.dbManager = dbManager;
+        this.permits = new Semaphore(Math.max(1, dbManager.getMaxConnections()), true);
+        this.maxBodyBytes = maxBodyBytes;
+        this.batchSize = Math.max(1, DatabaseConfig.getBatchSize());
+        this.writeBehind = DatabaseConfig.isWriteBehindEnabled() ? new WriteBehindQueue(dbManager) : null;
+        // Headers and body go out as separate writes; with Nagle on, every keep-alive request
+        // after the first waits for the client's delayed ACK (~40 ms). Read once per JVM.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/students", this::handleStudents);
+        server.createContext("/_metrics", this::handleMetrics);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // Stops accepting connections and gives in-flight exchanges up to a second to finish
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.close();
+        if (writeBehind != null) {
+            writeBehind.close();
+        }
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-28s %9s %7s %7s %10s %10s %10s %10s%n",
+                "Endpoint", "Requests", "4xx", "5xx", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+        for (Map.Entry<String, EndpointStats> entry : new TreeMap<>(endpoints).entrySet()) {
+            EndpointStats stats = entry.getValue();
+            sb.append(String.format("%-28s %9d %7d %7d %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(),
+                    stats.requests.sum(), stats.clientErrors.sum(), stats.serverErrors.sum(),
+                    stats.latency.getPercentileNanos(50) / 1e6, stats.latency.getPercentileNanos(99) / 1e6,
+                    stats.latency.getPercentileNanos(99.9) / 1e6, stats.latency.getMaxNanos() / 1e6));
+        }
+        return sb.toString();
+    }
+
+    private void handleStudents(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String path = exchange.getRequestURI().getPath();
+        String rest = path.startsWith("/students/") ? path.substring("/students/".length()) : "";
+        String route = switch (rest) {
+            case "" -> "/students";
+            case "_bulk" -> "/students/_bulk";
+            case "_search" -> "/students/_search";
+            default -> "/students/{id}";
+        };
+        String endpoint = exchange.getRequestMethod() + " " + route;
+
+        int status;
+        // Clients send back the token from their last write so their reads see it (read-your-writes)
+        ReadSession session = ReadSession.fromToken(exchange.getRequestHeaders().getFirst(ReadSession.HEADER));
+        ReadSession.Scope scope = session.enter();
+        try {
+            if (!path.equals("/students") && !path.startsWith("/students/")) {
+                throw new HttpError(404, "Not found");
+            }
+            status = switch (endpoint) {
+                case "GET /students" -> listStudents(exchange);
+                case "POST /students" -> createStudent(exchange);
+                case "POST /students/_bulk" -> bulkCreate(exchange);
+                case "GET /students/_search" -> search(exchange);
+                case "GET /students/{id}" -> getStudent(exchange, parseId(rest));
+                case "PUT /students/{id}" -> updateStudent(exchange, parseId(rest));
+                case "DELETE /students/{id}" -> deleteStudent(exchange, parseId(rest));
+                default -> throw new HttpError(405, "Method not allowed");
+            };
+        } catch (HttpError e) {
+            // Arbitrary methods and paths share one entry so they cannot grow the stats map
+            if (e.status == 404 || e.status == 405) {
+                endpoint = "unrouted";
+            }
+            status = sendError(exchange, e.status, e.getMessage(), 0);
+        } catch (IllegalArgumentException e) {
+            status = sendError(exchange, 400, e.getMessage(), 0);
+        } catch (SQLException e) {
+            status = e.getErrorCode() == 1062
+                    ? sendError(exchange, 409, "Duplicate entry - Email already exists", e.getErrorCode())
+                    : sendError(exchange, 500, "Database error: " + e.getMessage(), e.getErrorCode());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = sendError(exchange, 503, "Interrupted", 0);
+        } finally {
+            scope.close();
+        }
+        record(endpoint, status, System.nanoTime() - started);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        long started = System.nanoTime();
+        String text = "HTTP endpoints\n" + report() + "\nDatabase operations\n" + dbManager.getMetrics().report();
+        if (writeBehind != null) {
+            text += "\nWrite-behind: " + writeBehind.getStats() + "\n";
+        }
+        String routing = dbManager.getReadRoutingReport();
+        if (routing != null) {
+            text += "\nRead routing\n" + routing;
+        }
+        send(exchange, 200, "text/plain; charset=utf-8", text.getBytes(StandardCharsets.UTF_8));
+        record("GET /_metrics", 200, System.nanoTime() - started);
+    }
+
+    private int listStudents(HttpExchange exchange) throws IOException, SQLException, InterruptedException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        int pageSize = query.containsKey("pageSize") ? parseInt(query.get("pageSize"), "pageSize") : DEFAULT_PAGE_SIZE;
+        if (pageSize < 1 || pageSize > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("pageSize must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        String token = query.get("pageToken");
+        StudentPage page = call(() -> dbManager.getStudentsPage(token, pageSize));
+
+        StringBuilder sb = new StringBuilder(64 + page.getStudents().size() * 112);
+        sb.append("{\"students\":");
+        appendStudents(sb, page.getStudents());
+        sb.append(",\"nextPageToken\":");
+        StudentJson.appendString(sb, page.getNextPageToken());
+        sb.append('}');
+        return sendJson(exchange, 200, sb);
+    }
+
+    private int getStudent(HttpExchange exchange, int id) throws IOException, SQLException, InterruptedException {
+        Student student = call(() -> dbManager.getStudentById(id));
+        if (student == null) {
+            return sendError(exchange, 404, "Student not found", 0);
+        }
+        return sendJson(exchange, 200, new StringBuilder(StudentJson.toJson(student)));
+    }
+
+    private int createStudent(HttpExchange exchange) throws IOException, HttpError, SQLException, InterruptedException {
+        Student student = parseStudent(StudentJson.parseObject(readBody(exchange)));
+        if (!write(() -> dbManager.addStudent(student), queue -> queue.addStudent(student))) {
+            return sendError(exchange, 500, "Student was not added", 0);
+        }
+        return sendJson(exchange, 201, new StringBuilder(StudentJson.toJson(student)));
+    }
+
+    // A body carrying "version" only applies if the row still has that version, otherwise 409
+    private int updateStudent(HttpExchange exchange, int id) throws IOException, HttpError, SQLException, InterruptedException {
+        Map<String, String> fields = StudentJson.parseObject(readBody(exchange));
+        Student student = parseStudent(fields);
+        student.setId(id);
+        String version = fields.get("version");
+        if (version == null) {
+            if (!write(() -> dbManager.updateStudent(student), queue -> queue.updateStudent(student))) {
+                return sendError(exchange, 404, "Student not found", 0);
+            }
+            // The blind update bumps a version it never read, so report the row as stored
+            Student updated = call(() -> dbManager.getStudentById(id));
+            if (updated == null) {
+                return sendError(exchange, 404, "Student not found", 0);
+            }
+            return sendJson(exchange, 200, new StringBuilder(StudentJson.toJson(updated)));
+        }
+
+        int expectedVersion;
+        try {
+            expectedVersion = Integer.parseInt(version.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid version");
+        }
+        return switch (call(() -> dbManager.updateStudentIfVersion(student, expectedVersion))) {
+            case UPDATED -> sendJson(exchange, 200, new StringBuilder(StudentJson.toJson(student)));
+            case CONFLICT -> sendError(exchange, 409, "Student was changed by another writer", 0);
+            case NOT_FOUND -> sendError(exchange, 404, "Student not found", 0);
+        };
+    }
+
+    private int deleteStudent(HttpExchange exchange, int id) throws IOException, SQLException, InterruptedException {
+        if (!write(() -> dbManager.deleteStudent(id), queue -> queue.deleteStudent(id))) {
+            return sendError(exchange, 404, "Student not found", 0);
+        }
+        return send(exchange, 204, JSON, new byte[0]);
+    }
+
+    private int search(HttpExchange exchange) throws IOException, SQLException, InterruptedException {
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+        String term = query.get("q");
+        if (term == null || term.isBlank()) {
+            throw new IllegalArgumentException("Missing search term q");
+        }
+        boolean prefix = Boolean.parseBoolean(query.get("prefix"));
+        List<Student> students = call(() -> prefix
+                ? dbManager.searchStudentsByNamePrefix(term)
+                : dbManager.searchStudentsByName(term));
+
+        StringBuilder sb = new StringBuilder(32 + students.size() * 112);
+        sb.append("{\"count\":").append(students.size()).append(",\"students\":");
+        appendStudents(sb, students);
+        sb.append('}');
+        return sendJson(exchange, 200, sb);
+    }
+
+    /**
+     * Reads one student object per line and inserts them through addStudents, db.batch.size
+     * rows at a time, while the body is still streaming in. The response lists the new id for
+     * each line in order (null where it failed) plus the reason for every failed line. If a
+     * batch fails as a whole its lines report that error, and the lines after it are read but
+     * not inserted. Resending those lines is safe: any row that did commit fails on its email.
+     */
+    private int bulkCreate(HttpExchange exchange) throws IOException, InterruptedException {
+        List<Integer> ids = new ArrayList<>();
+        StringBuilder errors = new StringBuilder();
+        List<Student> batch = new ArrayList<>(batchSize);
+        List<Integer> batchSlots = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        int created = 0;
+        SQLException aborted = null;
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(exchange.getRequestBody(), StandardCharsets.UTF_8))) {
+            long lineNumber = 0;
+            String line;
+            while (true) {
+                line = reader.readLine();
+                if (line != null) {
+                    lineNumber++;
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    try {
+                        batch.add(parseStudent(StudentJson.parseObject(line)));
+                        batchSlots.add(ids.size());
+                        batchLines.add(lineNumber);
+                        ids.add(null);
+                    } catch (IllegalArgumentException e) {
+                        ids.add(null);
+                        appendError(errors, lineNumber, e.getMessage(), 0);
+                    }
+                }
+                if (batch.size() == batchSize || (line == null && !batch.isEmpty())) {
+                    if (aborted != null) {
+                        for (long batchLine : batchLines) {
+                            appendError(errors, batchLine, "Not inserted after an earlier batch failed", 0);
+                        }
+                    } else {
+                        try {
+                            BatchResult result = call(() -> dbManager.addStudents(batch));
+                            boolean[] failed = new boolean[batch.size()];
+                            for (BatchResult.Failure failure : result.getFailures()) {
+                                failed[failure.index()] = true;
+                                SQLException error = failure.error();
+                                appendError(errors, batchLines.get(failure.index()),
+                                        error.getErrorCode() == 1062 ? "Duplicate entry - Email already exists" : error.getMessage(),
+                                        error.getErrorCode());
+                            }
+                            for (int i = 0; i < batch.size(); i++) {
+                                if (!failed[i]) {
+                                    ids.set(batchSlots.get(i), batch.get(i).getId());
+                                    created++;
+                                }
+                            }
+                        } catch (SQLException e) {
+                            aborted = e;
+                            for (long batchLine : batchLines) {
+                                appendError(errors, batchLine, e.getMessage(), e.getErrorCode());
+                            }
+                        }
+                    }
+                    batch.clear();
+                    batchSlots.clear();
+                    batchLines.clear();
+                }
+                if (line == null) {
+                    break;
+                }
+            }
+        }
+
+        StringBuilder sb = new StringBuilder(64 + ids.size() * 8 + errors.length());
+        sb.append("{\"submitted\":").append(ids.size()).append(",\"created\":").append(created).append(",\"ids\":[");
+        for (int i = 0; i < ids.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(ids.get(i));
+        }
+        sb.append("],\"errors\":[").append(errors).append("]}");
+        return sendJson(exchange, 200, sb);
+    }
+
+    // line is the 1-based line number in the request body
+    private static void appendError(StringBuilder errors, long line, String message, int code) {
+        if (!errors.isEmpty()) {
+            errors.append(',');
+        }
+        errors.append("{\"line\":").append(line).append(",\"error\":");
+        StudentJson.appendString(errors, message);
+        if (code != 0) {
+            errors.append(",\"code\":").append(code);
+        }
+        errors.append('}');
+    }
+
+    private <T> T call(SqlCall<T> call) throws SQLException, InterruptedException {
+        permits.acquire();
+        try {
+            return call.call();
+        } finally {
+            permits.release();
+        }
+    }
+
+    // Through the write-behind queue when it is on, still answering only once the write is committed
+    private boolean write(SqlCall<Boolean> direct, Function<WriteBehindQueue, CompletableFuture<Boolean>> queued)
+            throws SQLException, InterruptedException {
+        if (writeBehind == null) {
+            return call(direct);
+        }
+        try {
+            return queued.apply(writeBehind).get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SQLException sqlError) {
+                throw sqlError;
+            }
+            throw new SQLException("Write-behind write failed", e.getCause());
+        }
+    }
+
+    // Same rules and normalisation as the menu, the bulk importer and batch mode
+    private static Student parseStudent(Map<String, String> fields) {
+        String name = fields.get("name");
+        String email = fields.get("email");
+        String course = fields.get("course");
+        int age;
+        try {
+            age = fields.get("age") == null ? -1 : Integer.parseInt(fields.get("age").trim());
+        } catch (NumberFormatException e) {
+            age = -1;
+        }
+        String problem = InputValidator.describeInvalid(name, email, age, course);
+        if (problem != null) {
+            throw new IllegalArgumentException(problem);
+        }
+        return new Student(name.trim(), email.trim().toLowerCase(), age, course.trim());
+    }
+
+    private static int parseId(String text) throws HttpError {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new HttpError(404, "Not found");
+        }
+    }
+
+    private static int parseInt(String text, String name) {
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + text);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private String readBody(HttpExchange exchange) throws IOException, HttpError {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(maxBodyBytes + 1);
+            if (body.length > maxBodyBytes) {
+                throw new HttpError(413, "Request body exceeds " + maxBodyBytes + " bytes");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void appendStudents(StringBuilder sb, List<Student> students) {
+        sb.append('[');
+        for (int i = 0; i < students.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            StudentJson.appendTo(sb, students.get(i));
+        }
+        sb.append(']');
+    }
+
+    private static int sendError(HttpExchange exchange, int status, String message, int code) throws IOException {
+        StringBuilder sb = new StringBuilder(64 + message.length());
+        sb.append("{\"error\":");
+        StudentJson.appendString(sb, message);
+        if (code != 0) {
+            sb.append(",\"code\":").append(code);
+        }
+        sb.append('}');
+        return sendJson(exchange, status, sb);
+    }
+
+    private static int sendJson(HttpExchange exchange, int status, StringBuilder json) throws IOException {
+        return send(exchange, status, JSON, json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static int send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        String token = ReadSession.current().token();
+        if (token != null) {
+            exchange.getResponseHeaders().set(ReadSession.HEADER, token);
+        }
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        return status;
+    }
+
+    private void record(String endpoint, int status, long nanos) {
+        EndpointStats stats = endpoints.get(endpoint);
+        if (stats == null) {
+            stats = endpoints.computeIfAbsent(endpoint, e -> new EndpointStats());
+        }
+        stats.requests.increment();
+        if (status >= 500) {
+            stats.serverErrors.increment();
+        } else if (status >= 400) {
+            stats.clientErrors.increment();
+        }
+        stats.latency.record(nanos);
+    }
+}
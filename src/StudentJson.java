@@ -0,0 +1,212 @@
+// StudentJson.java - Hand-rolled JSON encoding/decoding for flat student records
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+class StudentJson {
+    private StudentJson() {}
+
+    public static String toJson(Student student) {
+        StringBuilder sb = new StringBuilder(128);
+        appendTo(sb, student);
+        return sb.toString();
+    }
+
+    public static void appendTo(StringBuilder sb, Student student) {
+        sb.append("{\"id\":").append(student.getId());
+        sb.append(",\"name\":");
+        appendString(sb, student.getName());
+        sb.append(",\"email\":");
+        appendString(sb, student.getEmail());
+        sb.append(",\"age\":").append(student.getAge());
+        sb.append(",\"course\":");
+        appendString(sb, student.getCourse());
+        sb.append(",\"version\":").append(student.getVersion());
+        sb.append('}');
+    }
+
+    public static void appendString(StringBuilder sb, String value) {
+        if (value == null) {
+            sb.append("null");
+            return;
+        }
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+                }
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Parses a single flat JSON object ({"name":"..","age":20,...}) into field -> raw value.
+     * Nested objects and arrays are not supported; null values map to null.
+     */
+    public static Map<String, String> parseObject(String json) {
+        Parser parser = new Parser(json);
+        Map<String, String> fields = parser.readObject();
+        parser.skipWhitespace();
+        if (!parser.atEnd()) {
+            throw new IllegalArgumentException("Unexpected content after JSON object at position " + parser.pos);
+        }
+        return fields;
+    }
+
+    public static Student toStudent(Map<String, String> fields) {
+        Student student = new Student();
+        String id = fields.get("id");
+        if (id != null) {
+            student.setId(Integer.parseInt(id));
+        }
+        student.setName(fields.get("name"));
+        student.setEmail(fields.get("email"));
+        String age = fields.get("age");
+        if (age != null) {
+            student.setAge(Integer.parseInt(age));
+        }
+        student.setCourse(fields.get("course"));
+        String version = fields.get("version");
+        if (version != null) {
+            student.setVersion(Integer.parseInt(version));
+        }
+        return student;
+    }
+
+    private static final class Parser {
+        private final String text;
+        private int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        Map<String, String> readObject() {
+            Map<String, String> fields = new LinkedHashMap<>();
+            expect('{');
+            skipWhitespace();
+            if (peek() == '}') {
+                pos++;
+                return fields;
+            }
+            while (true) {
+                skipWhitespace();
+                String key = readString();
+                skipWhitespace();
+                expect(':');
+                skipWhitespace();
+                fields.put(key, readValue());
+                skipWhitespace();
+                char c = next();
+                if (c == '}') {
+                    return fields;
+                }
+                if (c != ',') {
+                    throw error("Expected ',' or '}'");
+                }
+            }
+        }
+
+        private String readValue() {
+            char c = peek();
+            if (c == '"') {
+                return readString();
+            }
+            if (c == '{' || c == '[') {
+                throw error("Nested values are not supported");
+            }
+            int start = pos;
+            while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+                pos++;
+            }
+            String literal = text.substring(start, pos);
+            if (literal.isEmpty()) {
+                throw error("Expected a value");
+            }
+            return "null".equals(literal) ? null : literal;
+        }
+
+        private String readString() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                if (pos >= text.length()) {
+                    throw error("Unterminated string");
+                }
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return sb == null ? text.substring(start, pos - 1) : sb.toString();
+                }
+                if (c == '\\') {
+                    if (sb == null) {
+                        sb = new StringBuilder(text.substring(start, pos - 1));
+                    }
+                    char escaped = next();
+                    switch (escaped) {
+                        case 'n' -> sb.append('\n');
+                        case 'r' -> sb.append('\r');
+                        case 't' -> sb.append('\t');
+                        case 'b' -> sb.append('\b');
+                        case 'f' -> sb.append('\f');
+                        case 'u' -> {
+                            if (pos + 4 > text.length()) {
+                                throw error("Bad unicode escape");
+                            }
+                            sb.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+                            pos += 4;
+                        }
+                        default -> sb.append(escaped);
+                    }
+                } else if (sb != null) {
+                    sb.append(c);
+                }
+            }
+        }
+
+        void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+
+        boolean atEnd() {
+            return pos >= text.length();
+        }
+
+        private char peek() {
+            if (pos >= text.length()) {
+                throw error("Unexpected end of input");
+            }
+            return text.charAt(pos);
+        }
+
+        private char next() {
+            char c = peek();
+            pos++;
+            return c;
+        }
+
+        private void expect(char expected) {
+            if (next() != expected) {
+                pos--;
+                throw error("Expected '" + expected + "'");
+            }
+        }
+
+        private IllegalArgumentException error(String message) {
+            return new IllegalArgumentException(message + " at position " + pos);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+// StudentPage.java - One page of a keyset-paginated student listing
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+class StudentPage {
+    private final List<Student> students;
+    private final String nextPageToken;
+
+    StudentPage(List<Student> students, String nextPageToken) {
+        this.students = Collections.unmodifiableList(students);
+        this.nextPageToken = nextPageToken;
+    }
+
+    public List<Student> getStudents() { return students; }
+
+    // Opaque token for the following page, or null when this is the last page
+    public String getNextPageToken() { return nextPageToken; }
+    public boolean hasNext() { return nextPageToken != null; }
+
+    // The token is the (name, id) of the last row, so the next page seeks past it via the index
+    static String encodeToken(Student last) {
+        String raw = last.getId() + ":" + last.getName();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static Student decodeToken(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf(':');
+            Student position = new Student();
+            position.setId(Integer.parseInt(raw.substring(0, separator)));
+            position.setName(raw.substring(separator + 1));
+            return position;
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid page token: " + token, e);
+        }
+    }
+}
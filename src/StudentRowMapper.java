@@ -0,0 +1,60 @@
+// StudentRowMapper.java - Maps students rows to Student objects by column index
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Queries select COLUMNS instead of "*", and a mapper resolves each column's index once per
+ * ResultSet, so reading a row costs six indexed getters and no label lookups.
+ */
+final class StudentRowMapper {
+    static final String COLUMNS = "id, name, email, age, course, version";
+
+    private final int idColumn;
+    private final int nameColumn;
+    private final int emailColumn;
+    private final int ageColumn;
+    private final int courseColumn;
+    private final int versionColumn;
+
+    private StudentRowMapper(ResultSet rs) throws SQLException {
+        this.idColumn = rs.findColumn("id");
+        this.nameColumn = rs.findColumn("name");
+        this.emailColumn = rs.findColumn("email");
+        this.ageColumn = rs.findColumn("age");
+        this.courseColumn = rs.findColumn("course");
+        this.versionColumn = rs.findColumn("version");
+    }
+
+    static StudentRowMapper of(ResultSet rs) throws SQLException {
+        return new StudentRowMapper(rs);
+    }
+
+    Student map(ResultSet rs) throws SQLException {
+        Student student = new Student(rs.getInt(idColumn), rs.getString(nameColumn), rs.getString(emailColumn),
+                rs.getInt(ageColumn), rs.getString(courseColumn));
+        student.setVersion(rs.getInt(versionColumn));
+        return student;
+    }
+
+    // Overwrites target with the current row; used by scans that hand the same instance to every row
+    Student mapInto(ResultSet rs, Student target) throws SQLException {
+        target.setId(rs.getInt(idColumn));
+        target.setName(rs.getString(nameColumn));
+        target.setEmail(rs.getString(emailColumn));
+        target.setAge(rs.getInt(ageColumn));
+        target.setCourse(rs.getString(courseColumn));
+        target.setVersion(rs.getInt(versionColumn));
+        return target;
+    }
+
+    // Maps the remaining rows into a list; returns the number of rows added
+    int mapAll(ResultSet rs, List<Student> into) throws SQLException {
+        int added = 0;
+        while (rs.next()) {
+            into.add(map(rs));
+            added++;
+        }
+        return added;
+    }
+}
@@ -0,0 +1,309 @@
+// StudentSnapshot.java - Columnar in-memory copy of the students table for reports
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Holds the students table column by column: ids, ages and dictionary-encoded course codes as
+ * int arrays, names and emails as UTF-8 bytes packed into one array each. Aggregates scan the
+ * primitive columns in parallel on the common fork-join pool and never touch a Student.
+ *
+ * refresh() only fetches rows past the id and updated_at high-water marks and upserts them, so
+ * inserts and edits are cheap to pick up. Deletes leave no trace to scan for; refresh() falls
+ * back to a reload when the snapshot holds more rows than the table.
+ */
+class StudentSnapshot {
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private final DatabaseManager dbManager;
+
+    // Replaced wholesale on refresh, so a query sees one consistent version
+    private volatile Columns columns = new Columns(16);
+
+    StudentSnapshot(DatabaseManager dbManager) {
+        this.dbManager = dbManager;
+    }
+
+    static StudentSnapshot load(DatabaseManager dbManager) throws SQLException {
+        StudentSnapshot snapshot = new StudentSnapshot(dbManager);
+        snapshot.reload();
+        return snapshot;
+    }
+
+    public synchronized void reload() throws SQLException {
+        Columns fresh = new Columns(Math.max(16, columns.rows));
+        dbManager.scanStudentsChangedSince(Integer.MIN_VALUE, null, fresh::upsert);
+        columns = fresh;
+    }
+
+    // Returns the number of rows fetched, or the new size when it had to reload
+    public synchronized int refresh() throws SQLException {
+        Columns current = columns;
+        Columns[] next = {null};
+        int[] fetched = {0};
+        dbManager.scanStudentsChangedSince(current.maxId, current.maxChangedAt, (student, changedAt) -> {
+            // updated_at >= the mark re-reads the newest millisecond's rows; skip those already held
+            int existing = current.rowById.get(student.getId());
+            if (existing >= 0 && current.matches(existing, student)) {
+                return;
+            }
+            if (next[0] == null) {
+                next[0] = current.copy();
+            }
+            next[0].upsert(student, changedAt);
+            fetched[0]++;
+        });
+
+        int snapshotRows = next[0] != null ? next[0].rows : current.rows;
+        if (snapshotRows > dbManager.countStudents()) {
+            reload();
+            return columns.rows;
+        }
+        if (next[0] != null) {
+            columns = next[0];
+        }
+        return fetched[0];
+    }
+
+    public int size() {
+        return columns.rows;
+    }
+
+    public Student getStudent(int id) {
+        Columns c = columns;
+        int row = c.rowById.get(id);
+        return row < 0 ? null : c.student(row);
+    }
+
+    public Map<String, Long> countByCourse() {
+        Columns c = columns;
+        long[] totals = aggregate(c, c.courses.size(), row -> c.courseCodes[row], row -> 0);
+        Map<String, Long> counts = new TreeMap<>();
+        for (int code = 0; code < c.courses.size(); code++) {
+            if (totals[code] > 0) {
+                counts.put(c.courses.get(code), totals[code]);
+            }
+        }
+        return counts;
+    }
+
+    public Map<String, Double> averageAgeByCourse() {
+        Columns c = columns;
+        int groups = c.courses.size();
+        long[] totals = aggregate(c, groups, row -> c.courseCodes[row], row -> c.ages[row]);
+        Map<String, Double> averages = new TreeMap<>();
+        for (int code = 0; code < groups; code++) {
+            if (totals[code] > 0) {
+                averages.put(c.courses.get(code), (double) totals[groups + code] / totals[code]);
+            }
+        }
+        return averages;
+    }
+
+    public double averageAge() {
+        Columns c = columns;
+        long[] totals = aggregate(c, 1, row -> 0, row -> c.ages[row]);
+        return totals[0] == 0 ? 0.0 : (double) totals[1] / totals[0];
+    }
+
+    // Bucket start age -> count, for buckets of bucketWidth years; empty buckets are left out
+    public SortedMap<Integer, Long> ageHistogram(int bucketWidth) {
+        if (bucketWidth <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        Columns c = columns;
+        int groups = Math.max(0, c.maxAge) / bucketWidth + 1;
+        long[] totals = aggregate(c, groups, row -> Math.max(0, c.ages[row]) / bucketWidth, row -> 0);
+        SortedMap<Integer, Long> histogram = new TreeMap<>();
+        for (int bucket = 0; bucket < groups; bucket++) {
+            if (totals[bucket] > 0) {
+                histogram.put(bucket * bucketWidth, totals[bucket]);
+            }
+        }
+        return histogram;
+    }
+
+    // Counts per group in [0, groups) followed by the value sums per group
+    private static long[] aggregate(Columns c, int groups, IntUnaryOperator groupOf, IntUnaryOperator valueOf) {
+        AggregateTask task = new AggregateTask(0, c.rows, groups, groupOf, valueOf);
+        return c.rows < PARALLEL_THRESHOLD ? task.compute() : ForkJoinPool.commonPool().invoke(task);
+    }
+
+    // Serializable only because ForkJoinTask is; never actually serialized
+    private static final class AggregateTask extends RecursiveTask<long[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int groups;
+        private final transient IntUnaryOperator groupOf;
+        private final transient IntUnaryOperator valueOf;
+
+        AggregateTask(int from, int to, int groups, IntUnaryOperator groupOf, IntUnaryOperator valueOf) {
+            this.from = from;
+            this.to = to;
+            this.groups = groups;
+            this.groupOf = groupOf;
+            this.valueOf = valueOf;
+        }
+
+        @Override
+        protected long[] compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                long[] totals = new long[groups * 2];
+                for (int row = from; row < to; row++) {
+                    int group = groupOf.applyAsInt(row);
+                    totals[group]++;
+                    totals[groups + group] += valueOf.applyAsInt(row);
+                }
+                return totals;
+            }
+
+            int middle = (from + to) >>> 1;
+            AggregateTask left = new AggregateTask(from, middle, groups, groupOf, valueOf);
+            left.fork();
+            long[] totals = new AggregateTask(middle, to, groups, groupOf, valueOf).compute();
+            long[] leftTotals = left.join();
+            for (int i = 0; i < totals.length; i++) {
+                totals[i] += leftTotals[i];
+            }
+            return totals;
+        }
+    }
+
+    private static final class Columns {
+        int rows;
+        int[] ids;
+        int[] ages;
+        int[] courseCodes;
+        int[] nameOffsets;
+        int[] nameLengths;
+        int[] emailOffsets;
+        int[] emailLengths;
+        byte[] nameBytes;
+        int nameBytesUsed;
+        byte[] emailBytes;
+        int emailBytesUsed;
+
+        List<String> courses = new ArrayList<>();
+        Map<String, Integer> courseCodeByName = new HashMap<>();
+        IntIntHashMap rowById;
+
+        int maxId = Integer.MIN_VALUE;
+        int maxAge;
+        Timestamp maxChangedAt;
+
+        Columns(int capacity) {
+            ids = new int[capacity];
+            ages = new int[capacity];
+            courseCodes = new int[capacity];
+            nameOffsets = new int[capacity];
+            nameLengths = new int[capacity];
+            emailOffsets = new int[capacity];
+            emailLengths = new int[capacity];
+            nameBytes = new byte[capacity * 16];
+            emailBytes = new byte[capacity * 24];
+            rowById = new IntIntHashMap(capacity);
+        }
+
+        Columns copy() {
+            Columns c = new Columns(0);
+            c.rows = rows;
+            c.ids = ids.clone();
+            c.ages = ages.clone();
+            c.courseCodes = courseCodes.clone();
+            c.nameOffsets = nameOffsets.clone();
+            c.nameLengths = nameLengths.clone();
+            c.emailOffsets = emailOffsets.clone();
+            c.emailLengths = emailLengths.clone();
+            c.nameBytes = nameBytes.clone();
+            c.nameBytesUsed = nameBytesUsed;
+            c.emailBytes = emailBytes.clone();
+            c.emailBytesUsed = emailBytesUsed;
+            c.courses = new ArrayList<>(courses);
+            c.courseCodeByName = new HashMap<>(courseCodeByName);
+            c.rowById = rowById.copy();
+            c.maxId = maxId;
+            c.maxAge = maxAge;
+            c.maxChangedAt = maxChangedAt;
+            return c;
+        }
+
+        // An updated row gets its new name/email appended; the old bytes stay until the next reload
+        void upsert(Student student, Timestamp changedAt) {
+            int row = rowById.get(student.getId());
+            if (row < 0) {
+                row = rows++;
+                if (row == ids.length) {
+                    grow();
+                }
+                ids[row] = student.getId();
+                rowById.put(student.getId(), row);
+            }
+
+            ages[row] = student.getAge();
+            courseCodes[row] = courseCodeByName.computeIfAbsent(student.getCourse(), course -> {
+                courses.add(course);
+                return courses.size() - 1;
+            });
+
+            byte[] name = student.getName().getBytes(StandardCharsets.UTF_8);
+            if (nameBytesUsed + name.length > nameBytes.length) {
+                nameBytes = Arrays.copyOf(nameBytes, Math.max(nameBytes.length * 2, nameBytesUsed + name.length));
+            }
+            System.arraycopy(name, 0, nameBytes, nameBytesUsed, name.length);
+            nameOffsets[row] = nameBytesUsed;
+            nameLengths[row] = name.length;
+            nameBytesUsed += name.length;
+
+            byte[] email = student.getEmail().getBytes(StandardCharsets.UTF_8);
+            if (emailBytesUsed + email.length > emailBytes.length) {
+                emailBytes = Arrays.copyOf(emailBytes, Math.max(emailBytes.length * 2, emailBytesUsed + email.length));
+            }
+            System.arraycopy(email, 0, emailBytes, emailBytesUsed, email.length);
+            emailOffsets[row] = emailBytesUsed;
+            emailLengths[row] = email.length;
+            emailBytesUsed += email.length;
+
+            maxId = Math.max(maxId, student.getId());
+            maxAge = Math.max(maxAge, student.getAge());
+            if (changedAt != null && (maxChangedAt == null || changedAt.after(maxChangedAt))) {
+                maxChangedAt = changedAt;
+            }
+        }
+
+        boolean matches(int row, Student student) {
+            Student held = student(row);
+            return held.getAge() == student.getAge() && held.getName().equals(student.getName())
+                    && held.getEmail().equals(student.getEmail()) && held.getCourse().equals(student.getCourse());
+        }
+
+        Student student(int row) {
+            return new Student(ids[row],
+                    new String(nameBytes, nameOffsets[row], nameLengths[row], StandardCharsets.UTF_8),
+                    new String(emailBytes, emailOffsets[row], emailLengths[row], StandardCharsets.UTF_8),
+                    ages[row], courses.get(courseCodes[row]));
+        }
+
+        private void grow() {
+            int capacity = Math.max(16, ids.length * 2);
+            ids = Arrays.copyOf(ids, capacity);
+            ages = Arrays.copyOf(ages, capacity);
+            courseCodes = Arrays.copyOf(courseCodes, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            emailOffsets = Arrays.copyOf(emailOffsets, capacity);
+            emailLengths = Arrays.copyOf(emailLengths, capacity);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+// StudentStore.java - Storage engine interface behind the application's CRUD and search calls
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What the interactive application and the bulk importer need from a storage engine.
+ * DatabaseManager implements it over MySQL, ShardedStudentStore over several MySQL servers,
+ * and InMemoryStudentStore is the embedded engine. storage.engine picks one (mysql by default).
+ *
+ * Engines report failures as SQLException with MySQL's error codes (1062 for a duplicate
+ * email, 1406 for an over-long value, 3819 for the age check) so callers handle both alike.
+ */
+interface StudentStore extends AutoCloseable {
+    // MySQL orders and compares names case-insensitively; id breaks ties like ORDER BY name, id
+    Comparator<Student> NAME_ORDER =
+            Comparator.comparing(Student::getName, String.CASE_INSENSITIVE_ORDER).thenComparingInt(Student::getId);
+
+    static StudentStore open() throws SQLException {
+        String engine = DatabaseConfig.getStorageEngine().toLowerCase(Locale.ROOT);
+        return switch (engine) {
+            case "mysql" -> new DatabaseManager();
+            case "memory" -> InMemoryStudentStore.fromConfig();
+            case "sharded" -> ShardedStudentStore.fromConfig();
+            default -> throw new SQLException("Unknown storage.engine: " + engine);
+        };
+    }
+
+    /**
+     * For the modes that use MySQL directly (export, --list, --batch, --serve). Refuses to
+     * start under another engine rather than quietly working on db.url instead of its data.
+     */
+    static DatabaseManager openMySql(String mode) throws SQLException {
+        String engine = DatabaseConfig.getStorageEngine().toLowerCase(Locale.ROOT);
+        if (!"mysql".equals(engine)) {
+            throw new SQLException(mode + " works on MySQL only and is not available with storage.engine=" + engine);
+        }
+        return new DatabaseManager();
+    }
+
+    boolean addStudent(Student student) throws SQLException;
+
+    BatchResult addStudents(Collection<Student> students) throws SQLException;
+
+    Student getStudentById(int id) throws SQLException;
+
+    List<Student> getAllStudents() throws SQLException;
+
+    // Keyset pages in (name, id) order; see DatabaseManager.getStudentsPage
+    StudentPage getStudentsPage(String pageToken, int pageSize) throws SQLException;
+
+    List<Student> searchStudentsByName(String name) throws SQLException;
+
+    int countStudents() throws SQLException;
+
+    boolean updateStudent(Student student) throws SQLException;
+
+    UpdateResult updateStudentIfVersion(Student student, int expectedVersion) throws SQLException;
+
+    UpdateResult updateChangedFields(Student original, Student updated) throws SQLException;
+
+    boolean deleteStudent(int id) throws SQLException;
+
+    // Connects and prepares ahead of the first call; engines with nothing to prepare do nothing
+    default void warmUp() throws SQLException {
+    }
+
+    // Human-readable counters for the statistics screen
+    String getStatistics();
+
+    @Override
+    void close() throws SQLException;
+}
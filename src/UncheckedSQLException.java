@@ -0,0 +1,15 @@
+// UncheckedSQLException.java - Carries a SQLException out of lambdas and streams
+import java.sql.SQLException;
+
+class UncheckedSQLException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public UncheckedSQLException(SQLException cause) {
+        super(cause.getMessage(), cause);
+    }
+
+    @Override
+    public synchronized SQLException getCause() {
+        return (SQLException) super.getCause();
+    }
+}
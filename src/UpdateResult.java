@@ -0,0 +1,7 @@
+// UpdateResult.java - Outcome of an optimistic (version-checked) update
+enum UpdateResult {
+    UPDATED,
+    // The row exists but its version moved on since it was read
+    CONFLICT,
+    NOT_FOUND
+}
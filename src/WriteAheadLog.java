@@ -0,0 +1,312 @@
+// WriteAheadLog.java - Append-only, checksummed log segments with group commit
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+/**
+ * Records are framed as [int payload length][int CRC32C of payload][payload] and appended to
+ * numbered segment files (wal-0000000000000001.log, ...). append() only copies the record
+ * into a memory buffer; sync() makes it durable. Whichever caller of sync() finds no write in
+ * progress becomes the leader and writes and fsyncs everything buffered so far, so writers
+ * that arrive during an fsync share the next one instead of each paying their own.
+ *
+ * rotate() starts a new segment; once a snapshot covers every older segment they can be
+ * deleted with deleteSegmentsBefore(). replay() stops at the first torn or corrupt record,
+ * which is where a crash mid-write leaves the tail.
+ */
+class WriteAheadLog implements AutoCloseable {
+    private static final int HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+
+    private final Path directory;
+    private final boolean fsync;
+
+    private FileChannel channel;
+    private long segment;
+    private long segmentBytes;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer writing = ByteBuffer.allocate(64 * 1024);
+    private long appended;
+    private long durable;
+    private boolean flushing;
+    private volatile IOException failure;
+    private boolean closed;
+
+    private final LongAdder syncs = new LongAdder();
+    private final LongAdder records = new LongAdder();
+    private final CRC32C crc = new CRC32C();
+
+    // Opens a new segment after every existing one; replay() first if the old ones matter
+    WriteAheadLog(Path directory, boolean fsync) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.fsync = fsync;
+        List<Long> existing = segments(directory);
+        openSegment(existing.isEmpty() ? 1 : existing.get(existing.size() - 1) + 1);
+    }
+
+    /**
+     * Feeds every intact record in segments numbered fromSegment and up to consumer, oldest
+     * first, and returns how many were read. A damaged tail is cut off so later appends are
+     * never hidden behind it.
+     */
+    static long replay(Path directory, long fromSegment, Consumer<ByteBuffer> consumer) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        long count = 0;
+        CRC32C crc = new CRC32C();
+        for (long number : segments(directory)) {
+            if (number < fromSegment) {
+                continue;
+            }
+            Path file = segmentFile(directory, number);
+            try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.allocate((int) in.size());
+                while (data.hasRemaining() && in.read(data) >= 0) {
+                    // keep reading
+                }
+                data.flip();
+                while (data.remaining() >= HEADER_BYTES) {
+                    int start = data.position();
+                    int length = data.getInt();
+                    int checksum = data.getInt();
+                    if (length < 0 || length > MAX_RECORD_BYTES || length > data.remaining()) {
+                        data.position(start);
+                        break;
+                    }
+                    ByteBuffer payload = data.slice(data.position(), length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    if ((int) crc.getValue() != checksum) {
+                        data.position(start);
+                        break;
+                    }
+                    data.position(data.position() + length);
+                    consumer.accept(payload);
+                    count++;
+                }
+                if (data.position() < in.size()) {
+                    in.truncate(data.position());
+                }
+            }
+        }
+        return count;
+    }
+
+    // Buffers one record and returns the position sync() must reach for it to be durable
+    public synchronized long append(ByteBuffer payload) throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log failed earlier", failure);
+        }
+        if (closed) {
+            throw new IOException("Write-ahead log is closed");
+        }
+        int length = payload.remaining();
+        if (length > MAX_RECORD_BYTES) {
+            throw new IllegalArgumentException("Log record too large: " + length + " bytes");
+        }
+        if (pending.remaining() < HEADER_BYTES + length) {
+            pending = grow(pending, HEADER_BYTES + length);
+        }
+        crc.reset();
+        crc.update(payload.duplicate());
+        pending.putInt(length).putInt((int) crc.getValue()).put(payload);
+        appended += HEADER_BYTES + length;
+        records.increment();
+        return appended;
+    }
+
+    // Returns once everything up to position is on disk (or written, with fsync off)
+    public void sync(long position) throws IOException {
+        ByteBuffer batch;
+        long target;
+        synchronized (this) {
+            while (true) {
+                if (failure != null) {
+                    throw new IOException("Write-ahead log write failed", failure);
+                }
+                if (durable >= position) {
+                    return;
+                }
+                if (!flushing) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the write-ahead log", e);
+                }
+            }
+            flushing = true;
+            batch = swapBuffers();
+            target = appended;
+        }
+        IOException error = null;
+        try {
+            write(batch);
+        } catch (IOException e) {
+            error = e;
+        }
+        finish(target, error);
+    }
+
+    /**
+     * Writes out everything buffered, then continues in a new segment and returns its number.
+     * Callers hold off appends (the store's write lock) so the old segments end exactly where
+     * a snapshot taken under the same lock begins.
+     */
+    public long rotate() throws IOException {
+        ByteBuffer batch;
+        long target;
+        synchronized (this) {
+            while (flushing) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted waiting for the write-ahead log", e);
+                }
+            }
+            if (failure != null) {
+                throw new IOException("Write-ahead log failed earlier", failure);
+            }
+            flushing = true;
+            batch = swapBuffers();
+            target = appended;
+        }
+        // Still the only writer while flushing is set, so the channel can be swapped safely
+        IOException error = null;
+        long next = segment + 1;
+        try {
+            write(batch);
+            channel.close();
+            openSegment(next);
+        } catch (IOException e) {
+            error = e;
+        }
+        finish(target, error);
+        return next;
+    }
+
+    public void deleteSegmentsBefore(long number) throws IOException {
+        for (long existing : segments(directory)) {
+            if (existing < number) {
+                Files.deleteIfExists(segmentFile(directory, existing));
+            }
+        }
+    }
+
+    // Sticky: once a write fails, every later append, sync and rotate fails as well
+    public boolean hasFailed() { return failure != null; }
+
+    public synchronized long getSegmentBytes() { return segmentBytes; }
+
+    public long getSyncs() { return syncs.sum(); }
+
+    public long getRecords() { return records.sum(); }
+
+    @Override
+    public void close() throws IOException {
+        long position;
+        synchronized (this) {
+            closed = true;
+            position = appended;
+        }
+        try {
+            sync(position);
+        } finally {
+            synchronized (this) {
+                channel.close();
+            }
+        }
+    }
+
+    private ByteBuffer swapBuffers() {
+        ByteBuffer batch = pending;
+        pending = writing;
+        pending.clear();
+        writing = batch;
+        batch.flip();
+        return batch;
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        if (!batch.hasRemaining()) {
+            return;
+        }
+        int bytes = batch.remaining();
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        syncs.increment();
+        synchronized (this) {
+            segmentBytes += bytes;
+        }
+    }
+
+    // Publishes the outcome of a write and hands leadership to the next waiter
+    private void finish(long target, IOException error) throws IOException {
+        synchronized (this) {
+            if (error != null) {
+                failure = error;
+            } else {
+                durable = target;
+            }
+            flushing = false;
+            notifyAll();
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private synchronized void openSegment(long number) throws IOException {
+        segment = number;
+        channel = FileChannel.open(segmentFile(directory, number), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        segmentBytes = channel.size();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int needed) {
+        int capacity = buffer.capacity();
+        while (capacity - buffer.position() < needed) {
+            capacity *= 2;
+        }
+        ByteBuffer larger = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        return larger.put(buffer);
+    }
+
+    private static Path segmentFile(Path directory, long number) {
+        return directory.resolve(String.format("wal-%016d.log", number));
+    }
+
+    private static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(4, name.length() - 4)));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
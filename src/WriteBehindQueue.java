@@ -0,0 +1,511 @@
+// WriteBehindQueue.java - Coalescing write-behind buffer that commits student writes in groups
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Takes adds, updates and deletes without waiting for the database and commits them from a
+ * background thread, up to db.writeBehind.batchSize writes per transaction, so a burst pays
+ * for one commit (one log flush on the server) per group instead of one per write. Every call
+ * returns a future that completes once the write is committed, or fails with that record's
+ * SQLException (a duplicate email is still error 1062).
+ *
+ * While writes wait they coalesce per id: repeated updates collapse into the latest, an update
+ * or delete of a waiting add folds into the add, and an add followed by its delete cancels out
+ * without reaching the database. A folded write keeps its place, so writes commit in the order
+ * of their first call. Folding is skipped, and the call queued as a write of its own, when a
+ * write queued since could then succeed or fail differently: a later update or delete (which
+ * may free an email the queue cannot see), or a later add using either email. Calls folded
+ * together share one outcome, and collapsed updates bump the row version once.
+ *
+ * addStudent gives the student a provisional negative id at once, so it can be updated or
+ * deleted before it is committed; the commit replaces it with the real id, after which the
+ * provisional id matches nothing. A group is flushed when it is full, when its oldest call has
+ * waited db.writeBehind.maxDelayMillis, or on close(). When db.writeBehind.maxPending rows are
+ * waiting, new calls block until a flush makes room.
+ */
+class WriteBehindQueue implements AutoCloseable {
+    record Stats(int pending, long calls, long coalesced, long cancelled, long groups, long written,
+                 long failed, long blocked) {
+
+        double averageGroupSize() {
+            return groups == 0 ? 0.0 : (double) written / groups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("pending=%d, calls=%d, coalesced=%d, cancelled=%d, groups=%d, written=%d, "
+                            + "avgGroup=%.1f, failed=%d, blocked=%d",
+                    pending, calls, coalesced, cancelled, groups, written, averageGroupSize(), failed, blocked);
+        }
+    }
+
+    // A call waiting on a write; a call that cannot match once the write runs (e.g. an update behind a delete) gets false
+    // session is the caller's, so a committed write starts its read-your-writes window, not the flusher's
+    private record Waiter(CompletableFuture<Boolean> future, boolean alwaysFalse, ReadSession session) {
+        Waiter(CompletableFuture<Boolean> future, boolean alwaysFalse) {
+            this(future, alwaysFalse, ReadSession.current());
+        }
+    }
+
+    private static final class Pending {
+        int id;
+        DatabaseManager.WriteKind kind;
+        Student values;
+        // The caller's Student for an add, which receives the real id on commit
+        Student origin;
+        final long firstCallNanos = System.nanoTime();
+        final List<Waiter> waiters = new ArrayList<>(1);
+    }
+
+    private final DatabaseManager dbManager;
+    private final int batchSize;
+    private final long maxDelayNanos;
+    private final int maxPending;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    // Waiting writes in commit order
+    private final ArrayDeque<Pending> pending = new ArrayDeque<>();
+    // The last waiting write for each id, which later calls to that id may fold into
+    private final Map<Integer, Pending> latest = new HashMap<>();
+    // Adds in the group being committed, by provisional id
+    private final Map<Integer, Pending> inFlight = new LinkedHashMap<>();
+    private int nextProvisionalId = -1;
+    private boolean closing;
+    private final Thread flusher;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder cancelled = new LongAdder();
+    private final LongAdder groups = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+
+    public WriteBehindQueue(DatabaseManager dbManager) {
+        this(dbManager, DatabaseConfig.getWriteBehindBatchSize(), DatabaseConfig.getWriteBehindMaxDelayMillis(),
+                DatabaseConfig.getWriteBehindMaxPending());
+    }
+
+    WriteBehindQueue(DatabaseManager dbManager, int batchSize, long maxDelayMillis, int maxPending) {
+        if (batchSize < 1 || maxPending < 1) {
+            throw new IllegalArgumentException("Write-behind batch size and max pending must be at least 1");
+        }
+        this.dbManager = dbManager;
+        this.batchSize = batchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.maxPending = maxPending;
+        this.flusher = new Thread(this::runFlusher, "write-behind-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    public CompletableFuture<Boolean> addStudent(Student student) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        lock.lock();
+        try {
+            if (!awaitRoom(future)) {
+                return future;
+            }
+            int id = nextProvisionalId;
+            nextProvisionalId = id == Integer.MIN_VALUE + 1 ? -1 : id - 1;
+            student.setId(id);
+            Pending write = new Pending();
+            write.id = id;
+            write.kind = DatabaseManager.WriteKind.INSERT;
+            write.values = copyOf(student);
+            write.origin = student;
+            write.waiters.add(new Waiter(future, false));
+            enqueue(id, write);
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    // Blind update like DatabaseManager.updateStudent; completes false if no row has the id
+    public CompletableFuture<Boolean> updateStudent(Student student) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        int id = student.getId();
+        lock.lock();
+        try {
+            if (!awaitRoom(future)) {
+                return future;
+            }
+            Pending write = latest.get(id);
+            if (write != null && write.kind == DatabaseManager.WriteKind.DELETE) {
+                coalesced.increment();
+                write.waiters.add(new Waiter(future, true));
+            } else if (write != null && canFold(write, student.getEmail())) {
+                coalesced.increment();
+                write.values = copyOf(student);
+                write.values.setId(write.id);
+                write.waiters.add(new Waiter(future, false));
+            } else if (write == null && id < 0 && !inFlight.containsKey(id)) {
+                // A provisional id whose add already committed, failed or never existed
+                future.complete(false);
+            } else {
+                write = new Pending();
+                write.id = id;
+                write.kind = DatabaseManager.WriteKind.UPDATE;
+                write.values = copyOf(student);
+                write.waiters.add(new Waiter(future, false));
+                enqueue(id, write);
+            }
+        } finally {
+            lock.unlock();
+        }
+        return future;
+    }
+
+    public CompletableFuture<Boolean> deleteStudent(int id) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        List<Waiter> settled = null;
+        lock.lock();
+        try {
+            if (!awaitRoom(future)) {
+                return future;
+            }
+            Pending write = latest.get(id);
+            if (write != null && write.kind == DatabaseManager.WriteKind.DELETE) {
+                coalesced.increment();
+                write.waiters.add(new Waiter(future, true));
+            } else if (write != null && canFold(write, null)) {
+                coalesced.increment();
+                if (write.kind == DatabaseManager.WriteKind.INSERT) {
+                    // Never written, so nothing to delete either
+                    pending.remove(write);
+                    latest.remove(id);
+                    cancelled.increment();
+                    notFull.signalAll();
+                    settled = write.waiters;
+                    future.complete(true);
+                } else {
+                    write.kind = DatabaseManager.WriteKind.DELETE;
+                    write.values = new Student();
+                    write.values.setId(write.id);
+                    write.waiters.add(new Waiter(future, false));
+                }
+            } else if (write == null && id < 0 && !inFlight.containsKey(id)) {
+                future.complete(false);
+            } else {
+                write = new Pending();
+                write.id = id;
+                write.kind = DatabaseManager.WriteKind.DELETE;
+                write.values = new Student();
+                write.values.setId(id);
+                write.waiters.add(new Waiter(future, false));
+                enqueue(id, write);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (settled != null) {
+            complete(settled, true);
+        }
+        return future;
+    }
+
+    public Stats getStats() {
+        int waiting;
+        lock.lock();
+        try {
+            waiting = pending.size();
+        } finally {
+            lock.unlock();
+        }
+        return new Stats(waiting, calls.sum(), coalesced.sum(), cancelled.sum(), groups.sum(), written.sum(),
+                failed.sum(), blocked.sum());
+    }
+
+    // Commits everything still waiting, then stops the flusher; the DatabaseManager stays open
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closing = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Normally empty by now; not if the flusher died or the join was interrupted
+        failRemaining();
+    }
+
+    /**
+     * Caller holds the lock. Blocks while the queue is full, before the caller looks at the
+     * queue, since waiting releases the lock. Fails the future if closed or interrupted.
+     */
+    private boolean awaitRoom(CompletableFuture<Boolean> future) {
+        calls.increment();
+        if (pending.size() >= maxPending && !closing) {
+            blocked.increment();
+        }
+        try {
+            while (pending.size() >= maxPending && !closing) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new CancellationException("Interrupted while waiting for room in the write-behind queue"));
+            return false;
+        }
+        if (closing) {
+            future.completeExceptionally(new SQLException("Write-behind queue is closed"));
+            return false;
+        }
+        return true;
+    }
+
+    private void enqueue(int key, Pending write) {
+        pending.addLast(write);
+        latest.put(key, write);
+        if (pending.size() == 1 || pending.size() == batchSize) {
+            notEmpty.signal();
+        }
+    }
+
+    /**
+     * Caller holds the lock. Whether a call with newEmail (null for a delete) can fold into
+     * write, which then applies it at write's place in the queue. Adds queued since are safe
+     * unless they use write's email or newEmail; any later update or delete is not, since the
+     * email it frees is only known to the database.
+     */
+    private boolean canFold(Pending write, String newEmail) {
+        String email = write.values.getEmail();
+        Iterator<Pending> it = pending.descendingIterator();
+        while (it.hasNext()) {
+            Pending later = it.next();
+            if (later == write) {
+                return true;
+            }
+            if (later.kind != DatabaseManager.WriteKind.INSERT) {
+                return false;
+            }
+            String claimed = later.values.getEmail();
+            if (claimed != null && (claimed.equalsIgnoreCase(email) || claimed.equalsIgnoreCase(newEmail))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void runFlusher() {
+        try {
+            while (true) {
+                List<Pending> group;
+                lock.lock();
+                try {
+                    while (!isDue()) {
+                        if (pending.isEmpty()) {
+                            notEmpty.await();
+                        } else {
+                            notEmpty.awaitNanos(oldestCallNanos() + maxDelayNanos - System.nanoTime());
+                        }
+                    }
+                    if (pending.isEmpty()) {
+                        return;
+                    }
+                    group = drain();
+                    notFull.signalAll();
+                } catch (InterruptedException e) {
+                    // Only close() stops the flusher, and it waits for the queue to empty
+                    continue;
+                } finally {
+                    lock.unlock();
+                }
+                try {
+                    flush(group);
+                } catch (Throwable e) {
+                    // Fail this group and keep going; a dead flusher would leave every caller waiting
+                    failGroup(group, e);
+                }
+            }
+        } finally {
+            failRemaining();
+        }
+    }
+
+    private void failGroup(List<Pending> group, Throwable error) {
+        lock.lock();
+        try {
+            for (Pending write : group) {
+                inFlight.remove(write.id);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (Pending write : group) {
+            failed.increment();
+            for (Waiter waiter : write.waiters) {
+                waiter.future().completeExceptionally(error);
+            }
+        }
+    }
+
+    // Once the flusher is gone nothing will commit, so fail whatever is still waiting and refuse new calls
+    private void failRemaining() {
+        List<Pending> left;
+        lock.lock();
+        try {
+            closing = true;
+            left = new ArrayList<>(pending);
+            pending.clear();
+            latest.clear();
+            inFlight.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        if (!left.isEmpty()) {
+            failGroup(left, new SQLException("Write-behind flusher stopped before committing this write"));
+        }
+    }
+
+    // Caller holds the lock
+    private boolean isDue() {
+        if (pending.isEmpty()) {
+            return closing;
+        }
+        return closing || pending.size() >= batchSize || System.nanoTime() - oldestCallNanos() >= maxDelayNanos;
+    }
+
+    // Writes never move once queued, so the head was called first
+    private long oldestCallNanos() {
+        return pending.getFirst().firstCallNanos;
+    }
+
+    // Caller holds the lock; takes up to batchSize writes in order, settling any that can no longer match
+    private List<Pending> drain() {
+        List<Pending> group = new ArrayList<>(Math.min(batchSize, pending.size()));
+        while (!pending.isEmpty() && group.size() < batchSize) {
+            Pending write = pending.getFirst();
+            if (write.id < 0 && write.kind != DatabaseManager.WriteKind.INSERT && inFlight.containsKey(write.id)) {
+                // Its add is in this group, so it waits for the real id
+                break;
+            }
+            pending.removeFirst();
+            latest.remove(write.id, write);
+            if (write.id < 0 && write.kind != DatabaseManager.WriteKind.INSERT) {
+                // Aimed at an add whose commit failed
+                write.values = null;
+            } else if (write.kind == DatabaseManager.WriteKind.INSERT) {
+                inFlight.put(write.id, write);
+            }
+            group.add(write);
+        }
+        return group;
+    }
+
+    private void flush(List<Pending> group) {
+        List<DatabaseManager.Write> writes = new ArrayList<>(group.size());
+        List<Pending> sent = new ArrayList<>(group.size());
+        for (Pending write : group) {
+            if (write.values == null) {
+                complete(write.waiters, false);
+            } else {
+                writes.add(new DatabaseManager.Write(write.kind, write.values));
+                sent.add(write);
+            }
+        }
+
+        BatchResult result = null;
+        Exception groupError = null;
+        if (!writes.isEmpty()) {
+            try {
+                result = dbManager.applyWrites(writes);
+                groups.increment();
+            } catch (SQLException | RuntimeException e) {
+                // A RuntimeException (say a null field reaching a binder) fails the group like a SQL error
+                groupError = e;
+            }
+        }
+
+        boolean[] unmatched = new boolean[sent.size()];
+        SQLException[] errors = new SQLException[sent.size()];
+        if (result != null) {
+            for (int index : result.getUnmatchedRows()) {
+                unmatched[index] = true;
+            }
+            for (BatchResult.Failure failure : result.getFailures()) {
+                errors[failure.index()] = failure.error();
+            }
+        }
+
+        lock.lock();
+        try {
+            for (int i = 0; i < sent.size(); i++) {
+                Pending write = sent.get(i);
+                if (write.kind != DatabaseManager.WriteKind.INSERT) {
+                    continue;
+                }
+                inFlight.remove(write.id);
+                if (groupError == null && errors[i] == null) {
+                    int realId = write.values.getId();
+                    write.origin.setId(realId);
+                    write.origin.setVersion(0);
+                    // Calls made with the provisional id while the add was being committed
+                    Pending last = latest.remove(write.id);
+                    if (last != null) {
+                        for (Pending later : pending) {
+                            if (later.id == write.id) {
+                                later.id = realId;
+                                later.values.setId(realId);
+                            }
+                        }
+                        latest.put(realId, last);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (int i = 0; i < sent.size(); i++) {
+            Pending write = sent.get(i);
+            Exception error = groupError != null ? groupError : errors[i];
+            if (error != null) {
+                failed.increment();
+                for (Waiter waiter : write.waiters) {
+                    waiter.future().completeExceptionally(error);
+                }
+            } else {
+                written.increment();
+                write.waiters.forEach(waiter -> waiter.session().noteWrite());
+                complete(write.waiters, !unmatched[i]);
+            }
+        }
+    }
+
+    private static void complete(List<Waiter> waiters, boolean matched) {
+        for (Waiter waiter : waiters) {
+            waiter.future().complete(matched && !waiter.alwaysFalse());
+        }
+    }
+
+    private static Student copyOf(Student student) {
+        Student copy = new Student(student.getId(), student.getName(), student.getEmail(), student.getAge(),
+                student.getCourse());
+        copy.setVersion(student.getVersion());
+        return copy;
+    }
+}